@@ -0,0 +1,62 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Piece;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for converting between a board's stored FEN and its Piece[][]
+ * view: Board.getBoardArray (FEN parsing) and Board.updateBoardState
+ * (writing the FEN back), over the middlegame corpus. The updateBoardState
+ * boards do not change between calls, so it measures writing and comparing
+ * the FEN without replacing the stored string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BoardStateBenchmark {
+
+    private Board parseBoard;
+    private Board[] viewBoards;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        int n = MiddlegamePositions.FENS.length;
+        viewBoards = new Board[n];
+        for (int i = 0; i < n; i++) {
+            String fen = MiddlegamePositions.FENS[i];
+            viewBoards[i] = MiddlegamePositions.board(fen);
+            viewBoards[i].getBoardArray();
+        }
+        parseBoard = new Board();
+    }
+
+    @Benchmark
+    public Piece[][] getBoardArray() {
+        parseBoard.setBoardState(MiddlegamePositions.FENS[nextIndex()]);
+        return parseBoard.getBoardArray();
+    }
+
+    @Benchmark
+    public String updateBoardState() {
+        Board board = viewBoards[nextIndex()];
+        board.updateBoardState();
+        return board.getBoardState();
+    }
+
+    private int nextIndex() {
+        if (next >= MiddlegamePositions.FENS.length) {
+            next = 0;
+        }
+        return next++;
+    }
+}
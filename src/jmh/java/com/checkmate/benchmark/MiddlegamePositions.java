@@ -0,0 +1,87 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.model.Board;
+import com.checkmate.utils.Bitboards;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.Moves;
+
+import java.util.Arrays;
+
+/**
+ * Corpus of middlegame positions shared by the benchmarks, plus the move
+ * queries run against them.
+ */
+final class MiddlegamePositions {
+
+    static final String[] FENS = {
+        // Closed Ruy Lopez after 9.h3
+        "r1bq1rk1/2p1bppp/p1np1n2/1p2p3/4P3/1BP2N1P/PP1P1PP1/RNBQR1K1 b - - 0 9",
+        // Queen's Gambit Declined after 9.Bxc4
+        "r1bq1rk1/pp1nbppp/2p1pn2/6B1/2BP4/2N1PN2/PP3PPP/2RQK2R b K - 0 9",
+        // Najdorf English Attack after 10.O-O-O
+        "rn1q1rk1/1p2bppp/p2pbn2/4p3/4P3/1NN1BP2/PPPQ2PP/2KR1B1R b - - 2 10",
+        // Italian-style symmetrical middlegame (perft position 6)
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        // "Kiwipete" (perft position 2)
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        // Perft position 4
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        // Perft position 5
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+    };
+
+    private MiddlegamePositions() {
+    }
+
+    /**
+     * Gets the side to move of a corpus position in Board's "WHITE"/"BLACK" form
+     */
+    static String turn(String fen) {
+        return fen.charAt(fen.indexOf(' ') + 1) == 'b' ? "BLACK" : "WHITE";
+    }
+
+    /**
+     * Creates a board holding a corpus position, the same way a persisted
+     * board is loaded (board state plus current turn)
+     */
+    static Board board(String fen) {
+        Board board = new Board();
+        board.setBoardState(fen);
+        board.setCurrentTurn(turn(fen));
+        return board;
+    }
+
+    /**
+     * Builds the move queries for the corpus: every legal move of the side to
+     * move, each followed by a probe from the same piece to a square nine
+     * squares further on, which is almost always illegal. Each query is packed
+     * as board index (bits 16+), from square (bits 8-13) and to square (bits 0-5),
+     * with squares in row/column order (row * 8 + col).
+     *
+     * @param boards The boards built from {@link #FENS}
+     * @param legalOnly true to leave out the probes
+     * @return The packed queries
+     */
+    static int[] queries(Board[] boards, boolean legalOnly) {
+        int[] queries = new int[1024];
+        int count = 0;
+        for (int b = 0; b < boards.length; b++) {
+            for (int move : ChessUtils.generateLegalMoves(boards[b])) {
+                int from = toRowCol(Moves.from(move));
+                int to = toRowCol(Moves.to(move));
+                if (count + 2 > queries.length) {
+                    queries = Arrays.copyOf(queries, queries.length * 2);
+                }
+                queries[count++] = b << 16 | from << 8 | to;
+                if (!legalOnly) {
+                    queries[count++] = b << 16 | from << 8 | (to + 9) & 63;
+                }
+            }
+        }
+        return Arrays.copyOf(queries, count);
+    }
+
+    private static int toRowCol(int square) {
+        return Bitboards.row(square) * 8 + Bitboards.col(square);
+    }
+}
@@ -0,0 +1,102 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.model.Board;
+import com.checkmate.utils.ChessUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the move validation path used by GameService.makeMove:
+ * ChessUtils.isValidMove, isPathClear and applyMove over the middlegame corpus.
+ * Each invocation handles one query and steps on to the next, so the scores
+ * are operations (single moves) per second averaged across the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MoveValidationBenchmark {
+
+    private Board[] boards;
+    private String[] fens;
+    private String[] turns;
+    private int[] queries;
+    private int[] legalQueries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        int n = MiddlegamePositions.FENS.length;
+        boards = new Board[n];
+        fens = new String[n];
+        turns = new String[n];
+        for (int i = 0; i < n; i++) {
+            String fen = MiddlegamePositions.FENS[i];
+            boards[i] = MiddlegamePositions.board(fen);
+            fens[i] = fen;
+            turns[i] = MiddlegamePositions.turn(fen);
+        }
+        queries = MiddlegamePositions.queries(boards, false);
+        legalQueries = MiddlegamePositions.queries(boards, true);
+    }
+
+    @Benchmark
+    public boolean isValidMove() {
+        int query = nextQuery(queries);
+        int from = query >>> 8 & 63;
+        int to = query & 63;
+        return ChessUtils.isValidMove(boards[query >>> 16], from >>> 3, from & 7, to >>> 3, to & 7);
+    }
+
+    @Benchmark
+    public boolean isPathClear() {
+        int query = nextQuery(queries);
+        int from = query >>> 8 & 63;
+        int to = query & 63;
+        return ChessUtils.isPathClear(boards[query >>> 16], from >>> 3, from & 7, to >>> 3, to & 7);
+    }
+
+    /**
+     * Applies a legal move and then puts the board back by reloading its
+     * stored state, so the score includes one reload; compare with
+     * {@link #reloadBoard()} to see the cost of the move itself.
+     */
+    @Benchmark
+    public Board applyMove() {
+        int query = nextQuery(legalQueries);
+        int b = query >>> 16;
+        int from = query >>> 8 & 63;
+        int to = query & 63;
+        Board board = boards[b];
+        ChessUtils.applyMove(board, from >>> 3, from & 7, to >>> 3, to & 7);
+        reload(b);
+        return board;
+    }
+
+    @Benchmark
+    public Board reloadBoard() {
+        int b = nextQuery(legalQueries) >>> 16;
+        reload(b);
+        // Force the lazy parse that applyMove would trigger
+        boards[b].getPosition();
+        return boards[b];
+    }
+
+    private void reload(int b) {
+        boards[b].setBoardState(fens[b]);
+        boards[b].setCurrentTurn(turns[b]);
+    }
+
+    private int nextQuery(int[] list) {
+        if (next >= list.length) {
+            next = 0;
+        }
+        return list[next++];
+    }
+}
@@ -0,0 +1,96 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.engine.Engine;
+import com.checkmate.engine.SearchConfig;
+import com.checkmate.engine.SearchLimits;
+import com.checkmate.engine.SearchResult;
+import com.checkmate.model.Position;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Depth reached in a fixed time for the selective search techniques: gives
+ * every middlegame corpus position the same move time on one thread, with
+ * everything on, everything off, or one technique at a time switched off.
+ * The score is just the suite's total move time; the "depth" counter is the
+ * sum of the depths completed over the suite and "nodes" the nodes searched.
+ * Whether the extra depth costs playing strength is what {@link SelfPlay}
+ * checks.
+ *
+ * Run on its own with ./gradlew jmh -PjmhInclude=SearchPruningBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchPruningBenchmark {
+
+    private static final String SELECTIVE = "pvs,aspiration,null-move,lmr,futility";
+
+    @Param({"none", "no-pvs", "no-aspiration", "no-null-move", "no-lmr", "no-futility", "all"})
+    public String pruning;
+
+    @Param({"100"})
+    public long moveTimeMillis;
+
+    private Engine engine;
+    private Position[] positions;
+    private SearchLimits limits;
+
+    /**
+     * Depth and nodes summed over the suite, reported by JMH next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class DepthCounter {
+        public long depth;
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            depth = 0;
+            nodes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SearchConfig config = pruning.equals("all") ? SearchConfig.DEFAULT
+                : pruning.equals("none") ? SearchConfig.DEFAULT.withDisabled(SELECTIVE)
+                : SearchConfig.DEFAULT.withDisabled(pruning.substring("no-".length()));
+        engine = new Engine(64, 1, config);
+        limits = SearchLimits.moveTime(moveTimeMillis);
+        positions = new Position[MiddlegamePositions.FENS.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = Position.fromFen(MiddlegamePositions.FENS[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public int searchForMoveTime(DepthCounter counter) {
+        int moves = 0;
+        for (Position position : positions) {
+            engine.clear();
+            SearchResult result = engine.search(position, limits);
+            counter.depth += result.getDepth();
+            counter.nodes += result.getNodes();
+            moves ^= result.getBestMove();
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,91 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.engine.Engine;
+import com.checkmate.engine.SearchLimits;
+import com.checkmate.engine.SearchResult;
+import com.checkmate.model.Position;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lazy SMP scaling: searches every middlegame corpus position to a fixed
+ * depth with 1 to 32 threads. The score is suite searches per second, so
+ * time-to-depth for the suite is its inverse; the "nodes" counter is the
+ * nodes per second of all threads together, as reported by the engine. The
+ * transposition table is cleared before each invocation so every run starts
+ * cold.
+ *
+ * Run on its own with ./gradlew jmh -PjmhInclude=SearchScalingBenchmark, and
+ * pick other settings with JMH's -p option (e.g. -p depth=8).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SearchScalingBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param({"7"})
+    public int depth;
+
+    private Engine engine;
+    private Position[] positions;
+    private SearchLimits limits;
+
+    /**
+     * Nodes searched by all threads, reported by JMH as a rate next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class NodeCounter {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new Engine(64, threads);
+        limits = SearchLimits.depth(depth);
+        positions = new Position[MiddlegamePositions.FENS.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = Position.fromFen(MiddlegamePositions.FENS[i]);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        engine.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public int searchToDepth(NodeCounter counter) {
+        int moves = 0;
+        for (Position position : positions) {
+            SearchResult result = engine.search(position, limits);
+            counter.nodes += result.getNodes();
+            moves ^= result.getBestMove();
+        }
+        return moves;
+    }
+}
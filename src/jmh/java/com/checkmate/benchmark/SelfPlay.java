@@ -0,0 +1,140 @@
+package com.checkmate.benchmark;
+
+import com.checkmate.engine.Engine;
+import com.checkmate.engine.SearchConfig;
+import com.checkmate.engine.SearchLimits;
+import com.checkmate.engine.SearchResult;
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+import java.util.Arrays;
+
+/**
+ * Plays the engine against itself with two search configurations, to check
+ * that a change which makes the search faster does not make it weaker.
+ * Every middlegame corpus position is played twice, once with each engine
+ * as white, at a fixed time per move. Games end by the rules (mate,
+ * stalemate, fifty moves, repetition, insufficient material) or are called
+ * a draw after {@link #MAX_PLIES} plies. The report gives the score of the
+ * first configuration, an Elo difference estimated from it, and the average
+ * depth each side reached.
+ *
+ * Run with ./gradlew selfPlay, optionally with
+ * -PselfPlayArgs="moveTimeMillis rounds disabledInBaseline", e.g.
+ * -PselfPlayArgs="100 2 lmr,futility" to measure what late move reductions
+ * and futility pruning are worth at 100 ms a move.
+ */
+public final class SelfPlay {
+
+    private static final int MAX_PLIES = 300;
+
+    private SelfPlay() {
+    }
+
+    public static void main(String[] args) {
+        long moveTime = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        String disabled = args.length > 2 ? args[2] : "pvs,aspiration,null-move,lmr,futility";
+
+        SearchConfig candidate = SearchConfig.DEFAULT;
+        SearchConfig baseline = SearchConfig.DEFAULT.withDisabled(disabled);
+        System.out.println("candidate: " + candidate);
+        System.out.println("baseline:  " + baseline);
+        System.out.println(moveTime + " ms a move, " + rounds * MiddlegamePositions.FENS.length * 2 + " games");
+
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+        long[] depthSums = new long[2];
+        long[] moveCounts = new long[2];
+        try (Engine first = new Engine(64, 1, candidate); Engine second = new Engine(64, 1, baseline)) {
+            for (int round = 0; round < rounds; round++) {
+                for (String fen : MiddlegamePositions.FENS) {
+                    for (int candidateColour = 0; candidateColour < 2; candidateColour++) {
+                        first.clear();
+                        second.clear();
+                        Engine[] engines = candidateColour == Position.WHITE
+                                ? new Engine[] {first, second} : new Engine[] {second, first};
+                        int result = play(fen, engines, SearchLimits.moveTime(moveTime), candidateColour,
+                                depthSums, moveCounts);
+                        int candidateResult = candidateColour == Position.WHITE ? result : -result;
+                        if (candidateResult > 0) {
+                            wins++;
+                        } else if (candidateResult < 0) {
+                            losses++;
+                        } else {
+                            draws++;
+                        }
+                        System.out.printf("%s candidate %s: %s%n", fen,
+                                candidateColour == Position.WHITE ? "white" : "black",
+                                candidateResult > 0 ? "win" : candidateResult < 0 ? "loss" : "draw");
+                    }
+                }
+            }
+        }
+
+        int games = wins + draws + losses;
+        double score = (wins + draws / 2.0) / games;
+        System.out.printf("candidate +%d =%d -%d, score %.1f%%, Elo %+.0f%n",
+                wins, draws, losses, score * 100, elo(score));
+        System.out.printf("average depth: candidate %.2f, baseline %.2f%n",
+                depthSums[0] / (double) moveCounts[0], depthSums[1] / (double) moveCounts[1]);
+    }
+
+    /**
+     * Plays one game
+     *
+     * @return 1 if white wins, -1 if black wins, 0 for a draw
+     */
+    private static int play(String fen, Engine[] engines, SearchLimits limits, int candidateColour,
+                            long[] depthSums, long[] moveCounts) {
+        Position position = Position.fromFen(fen);
+        long[] history = new long[MAX_PLIES + 1];
+        int historyLength = 0;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            int side = position.getSideToMove();
+            if (MoveGenerator.generateLegalMoves(position, moves) == 0) {
+                if (!ChessUtils.isInCheck(position, side)) {
+                    return 0;
+                }
+                return side == Position.WHITE ? -1 : 1;
+            }
+            if (position.getHalfmoveClock() >= 100 || ChessUtils.isInsufficientMaterial(position)
+                    || repetitions(history, historyLength, position.getHash()) >= 2) {
+                return 0;
+            }
+
+            SearchResult result = engines[side].search(position, limits, Arrays.copyOf(history, historyLength));
+            int player = side == candidateColour ? 0 : 1;
+            depthSums[player] += result.getDepth();
+            moveCounts[player]++;
+
+            int move = result.getBestMove();
+            if (Moves.isCapture(move) || Position.typeOf(position.pieceAt(Moves.from(move))) == Position.PAWN) {
+                historyLength = 0;
+            } else {
+                history[historyLength++] = position.getHash();
+            }
+            position.makeMove(move);
+        }
+        return 0;
+    }
+
+    private static int repetitions(long[] history, int length, long hash) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (history[i] == hash) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double elo(double score) {
+        double clamped = Math.min(Math.max(score, 0.001), 0.999);
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+}
@@ -89,14 +89,18 @@ public class WebController {
     }
     /**
      * Method to display the game page.
+     * @param computer whether the computer should play black.
      * @param session the HTTP session to store game data.
      * @return the name of the Thymeleaf template.
      */
     @PostMapping("/start-game")
-    public String startGame(HttpSession session) {
+    public String startGame(@RequestParam(defaultValue = "false") boolean computer, HttpSession session) {
         User user = (User) session.getAttribute("user");
         if (user != null) {
             Game game = new Game(user.getId());
+            if (computer) {
+                game.setBlackPlayerId(Game.COMPUTER_PLAYER);
+            }
             Game createdGame = gameService.saveGame(game);
             session.setAttribute("game", createdGame);
             return "redirect:/game?userId=" + user.getId() + "&gameId=" + createdGame.getId();
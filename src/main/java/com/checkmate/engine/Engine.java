@@ -0,0 +1,357 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+import com.checkmate.utils.Moves;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Entry point for the computer opponent. Holds what lives longer than one
+ * search (the transposition table, the evaluator and the helper threads) and
+ * runs each search on copies of the position, so the caller's board is never
+ * touched.
+ *
+ * With more than one thread the engine uses Lazy SMP: the calling thread runs
+ * the main search while helper threads search the same position
+ * independently, all sharing the transposition table. The helpers' results
+ * are ignored; they help by filling the table, so the main search reaches
+ * each depth sooner. When the main search finishes the helpers are stopped,
+ * and the result is returned without waiting for them: helpers still queued
+ * behind another search's are cancelled. Every thread adds its nodes to a
+ * counter shared by the search as it goes, so the reported node count covers
+ * all threads without joining them; it leaves out at most the last 1024 or so
+ * nodes of each helper.
+ *
+ * Searches may also run concurrently from different callers; they share the
+ * transposition table, which tolerates racing writes, and the helper pool.
+ * Every search for a move starts a new table generation and pondering does
+ * not (see {@link TranspositionTable#newSearch()}).
+ *
+ * {@link #searchAsync(Position, SearchLimits, long[])} runs the main search on
+ * the engine's own search threads instead of the caller's and hands back a
+ * {@link SearchTask}, so a caller such as a web request thread can wait with
+ * its own deadline and abort the search to take the best move found so far.
+ * {@link #ponder(Position, SearchLimits, long[], long)} starts the same kind
+ * of task on the opponent's time. The search threads are a fixed pool, so
+ * only so many background searches run at once; the rest wait in a bounded
+ * queue, and a search that finds the queue full fails at once with a
+ * {@link RejectedExecutionException} rather than piling up.
+ *
+ * An engine can be given an {@link OpeningBook}; while the position is in the
+ * book, searches return a book move at once instead of searching.
+ */
+public class Engine implements AutoCloseable {
+
+    public static final int DEFAULT_TABLE_MEGABYTES = 16;
+    // Background searches that may wait for a search thread, per search thread
+    private static final int QUEUED_SEARCHES_PER_THREAD = 4;
+
+    private final TranspositionTable table;
+    private final Evaluator evaluator = new Evaluator();
+    private final int threads;
+    private final SearchConfig config;
+    private final OpeningBook book;
+    private final ExecutorService helpers;
+    private final ExecutorService searchers;
+
+    public Engine() {
+        this(DEFAULT_TABLE_MEGABYTES, 1);
+    }
+
+    /**
+     * Creates an engine
+     *
+     * @param tableMegabytes Size of the transposition table in megabytes
+     *                       (1 to {@link TranspositionTable#MAX_MEGABYTES})
+     * @param threads Number of threads per search, including the caller's
+     */
+    public Engine(int tableMegabytes, int threads) {
+        this(tableMegabytes, threads, SearchConfig.DEFAULT);
+    }
+
+    /**
+     * Creates an engine with some search techniques switched off, e.g. to
+     * measure what they are worth
+     *
+     * @param tableMegabytes Size of the transposition table in megabytes
+     * @param threads Number of threads per search, including the caller's
+     * @param config Which optional search techniques to use
+     */
+    public Engine(int tableMegabytes, int threads, SearchConfig config) {
+        this(tableMegabytes, threads, config, null);
+    }
+
+    /**
+     * Creates an engine that plays from an opening book while it can
+     *
+     * @param tableMegabytes Size of the transposition table in megabytes
+     * @param threads Number of threads per search, including the caller's
+     * @param config Which optional search techniques to use
+     * @param book The opening book to consult before searching, or null for none
+     *             (not closed by the engine)
+     */
+    public Engine(int tableMegabytes, int threads, SearchConfig config, OpeningBook book) {
+        this(tableMegabytes, threads, config, book, threads + 1);
+    }
+
+    /**
+     * Creates an engine with a given number of search threads, the threads
+     * that run background searches and ponders (see {@link #searchAsync})
+     *
+     * @param tableMegabytes Size of the transposition table in megabytes
+     * @param threads Number of threads per search, including the caller's
+     * @param config Which optional search techniques to use
+     * @param book The opening book to consult before searching, or null for none
+     *             (not closed by the engine)
+     * @param searchThreads How many background searches may run at once; up to
+     *                      four times as many more may wait
+     */
+    public Engine(int tableMegabytes, int threads, SearchConfig config, OpeningBook book, int searchThreads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one thread, not " + threads);
+        }
+        if (searchThreads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one search thread, not " + searchThreads);
+        }
+        this.table = new TranspositionTable(tableMegabytes);
+        this.threads = threads;
+        this.config = config;
+        this.book = book;
+        this.helpers = threads > 1 ? Executors.newFixedThreadPool(threads - 1, daemonThreads("engine-helper-")) : null;
+        this.searchers = new ThreadPoolExecutor(searchThreads, searchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(searchThreads * QUEUED_SEARCHES_PER_THREAD), daemonThreads("engine-search-"));
+    }
+
+    /**
+     * Finds the best move for the side to move on a board, treating a
+     * repetition of the game's earlier positions as a draw
+     *
+     * @param board The board
+     * @param limits The search budget
+     * @return The search result
+     */
+    public SearchResult search(Board board, SearchLimits limits) {
+        return search(board.getPosition(), limits, board.getPositionHistory());
+    }
+
+    /**
+     * Finds the best move for the side to move
+     *
+     * @param position The position (not modified)
+     * @param limits The search budget
+     * @return The search result
+     */
+    public SearchResult search(Position position, SearchLimits limits) {
+        return search(position, limits, new long[0]);
+    }
+
+    /**
+     * Finds the best move for the side to move
+     *
+     * @param position The position (not modified)
+     * @param limits The search budget
+     * @param history Hashes of the earlier positions since the last capture
+     *                or pawn move, oldest first
+     * @return The search result, with the node count summed over all threads
+     *         (see the class description)
+     */
+    public SearchResult search(Position position, SearchLimits limits, long[] history) {
+        SearchResult bookMove = bookMove(position);
+        if (bookMove != null) {
+            return bookMove;
+        }
+        return run(new Search(position.copy(), table, evaluator, limits, history, config, 0), position, limits, history);
+    }
+
+    /**
+     * Starts a search for the best move on a board in the background,
+     * treating a repetition of the game's earlier positions as a draw. The
+     * board is read before this returns, so it may be changed afterwards.
+     *
+     * @param board The board
+     * @param limits The search budget
+     * @return The running search
+     */
+    public SearchTask searchAsync(Board board, SearchLimits limits) {
+        return searchAsync(board.getPosition(), limits, board.getPositionHistory());
+    }
+
+    /**
+     * Starts a search in the background on one of the engine's search
+     * threads. The position is copied before this returns.
+     *
+     * @param position The position (not modified)
+     * @param limits The search budget
+     * @param history Hashes of the earlier positions since the last capture
+     *                or pawn move, oldest first
+     * @return The running search, which completes with its result
+     */
+    public SearchTask searchAsync(Position position, SearchLimits limits, long[] history) {
+        SearchResult bookMove = bookMove(position);
+        if (bookMove != null) {
+            SearchTask task = new SearchTask(null);
+            task.complete(bookMove);
+            return task;
+        }
+        Position snapshot = position.copy();
+        long[] historyCopy = history.clone();
+        Search main = new Search(snapshot.copy(), table, evaluator, limits, historyCopy, config, 0);
+        return start(new SearchTask(main), () -> run(main, snapshot, limits, historyCopy));
+    }
+
+    /**
+     * Starts pondering in the background: searching the position expected
+     * after the opponent's reply while the opponent thinks. The search
+     * ignores its time limits until {@link SearchTask#ponderHit()} is called
+     * (the opponent played the expected move), then carries on with the
+     * table and iterations it has built up and completes within the limits
+     * as an ordinary search would. If the opponent plays something else,
+     * cancel the task. Pondering uses one thread, whatever the engine's
+     * thread count, so it competes as little as possible with real searches.
+     * It does not start a new table generation: it belongs to the move the
+     * engine just played, and on a hit it goes on as the search for the next
+     * one, so each move the engine plays costs the table one generation.
+     *
+     * @param position The position after the expected reply (not modified)
+     * @param limits The budget once the expected reply is played
+     * @param history Hashes of the earlier positions since the last capture
+     *                or pawn move, oldest first
+     * @param maxPonderMillis How long to ponder at most if no move comes (0 for no limit)
+     * @return The pondering search
+     */
+    public SearchTask ponder(Position position, SearchLimits limits, long[] history, long maxPonderMillis) {
+        Search search = new Search(position.copy(), table, evaluator, limits, history, config, 0);
+        search.ponder(maxPonderMillis);
+        return start(new SearchTask(search), search::run);
+    }
+
+    /**
+     * Runs a search on one of the search threads, completing its task with
+     * the result or the failure. A task cancelled while it waits for a
+     * thread is dropped; one that finds the queue full completes at once
+     * with a RejectedExecutionException.
+     */
+    private SearchTask start(SearchTask task, Supplier<SearchResult> search) {
+        try {
+            searchers.execute(() -> {
+                if (task.isDone()) {
+                    return;
+                }
+                try {
+                    task.complete(search.get());
+                } catch (RuntimeException | Error e) {
+                    task.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.completeExceptionally(searchers.isShutdown() ? new IllegalStateException("Engine is closed", e) : e);
+        }
+        return task;
+    }
+
+    /**
+     * Looks the position up in the opening book, choosing among its moves at
+     * random by weight
+     *
+     * @return A result holding the book move (with depth 0 and no nodes), or
+     *         null if there is no book or the position is not in it
+     */
+    private SearchResult bookMove(Position position) {
+        if (book == null) {
+            return null;
+        }
+        int move = book.pick(position, ThreadLocalRandom.current());
+        return move == Moves.NONE ? null : new SearchResult(move, 0, 0, 0, 0, new int[] {move});
+    }
+
+    /**
+     * Runs a main search on the calling thread, with helper searches
+     * alongside it when the engine has more than one thread
+     */
+    private SearchResult run(Search main, Position position, SearchLimits limits, long[] history) {
+        table.newSearch();
+        if (helpers == null) {
+            return main.run();
+        }
+
+        LongAdder nodes = new LongAdder();
+        main.countNodesIn(nodes);
+        List<Search> helperSearches = new ArrayList<>(threads - 1);
+        List<Future<SearchResult>> futures = new ArrayList<>(threads - 1);
+        for (int id = 1; id < threads; id++) {
+            Search helper = new Search(position.copy(), table, evaluator, limits, history, config, id);
+            helper.countNodesIn(nodes);
+            helperSearches.add(helper);
+            futures.add(helpers.submit(helper::run));
+        }
+
+        SearchResult result = main.run();
+
+        // Running helpers notice the stop at their next node; queued ones never start
+        helperSearches.forEach(Search::stop);
+        for (Future<SearchResult> future : futures) {
+            future.cancel(false);
+        }
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getDepth(), nodes.sum(),
+                result.getTimeMillis(), result.getPrincipalVariation());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the opening book the engine plays from, or null if it has none
+     */
+    public OpeningBook getBook() {
+        return book;
+    }
+
+    /**
+     * Gets the transposition table, e.g. to read its hit and collision counters
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Forgets everything learned in earlier searches
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Stops the helper and search threads
+     */
+    @Override
+    public void close() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+        searchers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.PieceSquare;
+
+/**
+ * Static evaluation: material plus piece-square values, tapered between a
+ * midgame and an endgame score by the game phase, in centipawns from the
+ * point of view of the side to move.
+ *
+ * Position keeps the material and piece-square sums and the phase up to date
+ * as moves are made and taken back (see {@link PieceSquare}), so evaluating
+ * a node costs the same few operations however many pieces are on the
+ * board. {@link #evaluateFromScratch(Position)} recomputes the same score
+ * from the pieces; with assertions enabled (as in the tests) every call to
+ * {@link #evaluate(Position)} checks the two agree.
+ */
+public class Evaluator {
+
+    /**
+     * Scores a position from its incrementally kept sums
+     *
+     * @param position The position
+     * @return The score in centipawns, positive when the side to move is better
+     */
+    public int evaluate(Position position) {
+        assert position.getPieceSquareScore() == PieceSquare.compute(position)
+                : "incremental evaluation out of step in " + position.toFen();
+        return taper(position.getPieceSquareScore(), position.getPhase(), position.getSideToMove());
+    }
+
+    /**
+     * Scores a position by visiting every piece. Gives the same result as
+     * {@link #evaluate(Position)} and is only meant for checking it.
+     *
+     * @param position The position
+     * @return The score in centipawns, positive when the side to move is better
+     */
+    public int evaluateFromScratch(Position position) {
+        int phase = 0;
+        for (int piece = 0; piece < 12; piece++) {
+            phase += PieceSquare.phase(piece)
+                    * Long.bitCount(position.pieces(Position.colourOf(piece), Position.typeOf(piece)));
+        }
+        return taper(PieceSquare.compute(position), phase, position.getSideToMove());
+    }
+
+    private static int taper(int score, int phase, int sideToMove) {
+        int midgamePhase = Math.min(phase, PieceSquare.MAX_PHASE);
+        int tapered = (PieceSquare.midgame(score) * midgamePhase
+                + PieceSquare.endgame(score) * (PieceSquare.MAX_PHASE - midgamePhase)) / PieceSquare.MAX_PHASE;
+        return sideToMove == Position.WHITE ? tapered : -tapered;
+    }
+}
@@ -0,0 +1,221 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+import com.checkmate.utils.PieceSquare;
+import com.checkmate.utils.StaticExchange;
+
+/**
+ * Hands out the legal moves of a position one at a time, most promising
+ * first, generating them in stages so that a node which cuts off early never
+ * pays for the rest:
+ *
+ * <ol>
+ *   <li>the transposition table move, checked for legality but not generated;</li>
+ *   <li>captures and promotions, most valuable victim / least valuable attacker first,
+ *       holding back any that lose material by static exchange evaluation;</li>
+ *   <li>the two killer moves for this ply (quiet moves that recently cut off a sibling);</li>
+ *   <li>the remaining quiet moves, ordered by the history table;</li>
+ *   <li>the losing captures held back earlier.</li>
+ * </ol>
+ *
+ * Moves handed out in an earlier stage are skipped when they come up again
+ * in a later one. For the quiescence search the picker can instead hand out
+ * just the captures and promotions that do not lose material. One picker is
+ * kept per ply and reused.
+ */
+final class MovePicker {
+
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_NOISY = 1;
+    private static final int NOISY = 2;
+    private static final int FIRST_KILLER = 3;
+    private static final int SECOND_KILLER = 4;
+    private static final int GENERATE_QUIET = 5;
+    private static final int QUIET = 6;
+    private static final int BAD_NOISY = 7;
+    private static final int DONE = 8;
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] scores = new int[MoveGenerator.MAX_MOVES];
+    private final int[] badMoves = new int[MoveGenerator.MAX_MOVES];
+
+    private Position position;
+    private int[][] history;
+    private int hashMove;
+    private int firstKiller;
+    private int secondKiller;
+    private boolean noisyOnly;
+    private int stage;
+    private int count;
+    private int index;
+    private int badCount;
+    private int badIndex;
+
+    /**
+     * Starts picking moves for a position
+     *
+     * @param position The position, which must not change until the picker is done
+     * @param hashMove The transposition table move, or Moves.NONE
+     * @param firstKiller The most recent killer move for this ply, or Moves.NONE
+     * @param secondKiller The older killer move, or Moves.NONE
+     * @param history History scores indexed by piece code and destination,
+     *                or null to leave quiet moves in generation order
+     */
+    void init(Position position, int hashMove, int firstKiller, int secondKiller, int[][] history) {
+        this.position = position;
+        this.hashMove = hashMove;
+        this.firstKiller = firstKiller;
+        this.secondKiller = secondKiller;
+        this.history = history;
+        this.noisyOnly = false;
+        this.stage = HASH_MOVE;
+        this.badCount = 0;
+        this.badIndex = 0;
+    }
+
+    /**
+     * Starts picking only the captures and promotions of a position that do
+     * not lose material, for the quiescence search
+     *
+     * @param position The position, which must not change until the picker is done
+     */
+    void initNoisy(Position position) {
+        init(position, Moves.NONE, Moves.NONE, Moves.NONE, null);
+        this.noisyOnly = true;
+        this.stage = GENERATE_NOISY;
+    }
+
+    /**
+     * Gets the next move to search
+     *
+     * @return The encoded move, or Moves.NONE when every legal move has been returned
+     */
+    int next() {
+        switch (stage) {
+            case HASH_MOVE:
+                stage = GENERATE_NOISY;
+                if (hashMove != Moves.NONE && ChessUtils.isLegalMove(position, hashMove)) {
+                    return hashMove;
+                }
+                hashMove = Moves.NONE;
+                // fall through
+            case GENERATE_NOISY:
+                count = MoveGenerator.generateNoisyMoves(position, moves);
+                index = 0;
+                scoreNoisy();
+                stage = NOISY;
+                // fall through
+            case NOISY:
+                while (index < count) {
+                    int move = pickBest();
+                    if (move == hashMove) {
+                        continue;
+                    }
+                    if (!StaticExchange.isAtLeast(position, move, 0)) {
+                        if (!noisyOnly) {
+                            badMoves[badCount++] = move;
+                        }
+                        continue;
+                    }
+                    return move;
+                }
+                if (noisyOnly) {
+                    stage = DONE;
+                    return Moves.NONE;
+                }
+                stage = FIRST_KILLER;
+                // fall through
+            case FIRST_KILLER:
+                stage = SECOND_KILLER;
+                if (isUsableKiller(firstKiller)) {
+                    return firstKiller;
+                }
+                firstKiller = Moves.NONE;
+                // fall through
+            case SECOND_KILLER:
+                stage = GENERATE_QUIET;
+                if (secondKiller != firstKiller && isUsableKiller(secondKiller)) {
+                    return secondKiller;
+                }
+                secondKiller = Moves.NONE;
+                // fall through
+            case GENERATE_QUIET:
+                count = MoveGenerator.generateQuietMoves(position, moves);
+                index = 0;
+                scoreQuiet();
+                stage = QUIET;
+                // fall through
+            case QUIET:
+                while (index < count) {
+                    int move = history != null ? pickBest() : moves[index++];
+                    if (move != hashMove && move != firstKiller && move != secondKiller) {
+                        return move;
+                    }
+                }
+                stage = BAD_NOISY;
+                // fall through
+            case BAD_NOISY:
+                if (badIndex < badCount) {
+                    return badMoves[badIndex++];
+                }
+                stage = DONE;
+                // fall through
+            default:
+                return Moves.NONE;
+        }
+    }
+
+    private boolean isUsableKiller(int killer) {
+        return killer != Moves.NONE && killer != hashMove
+                && !Moves.isCapture(killer) && !Moves.isPromotion(killer)
+                && ChessUtils.isLegalMove(position, killer);
+    }
+
+    private void scoreNoisy() {
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int victim = Moves.flags(move) == Moves.EN_PASSANT ? Position.PAWN
+                    : Moves.isCapture(move) ? Position.typeOf(position.pieceAt(Moves.to(move))) : -1;
+            int attacker = Position.typeOf(position.pieceAt(Moves.from(move)));
+            int score = victim < 0 ? 0 : PieceSquare.materialValue(victim) * 8 - attacker;
+            if (Moves.isPromotion(move)) {
+                score += PieceSquare.materialValue(Moves.promotionType(move));
+            }
+            scores[i] = score;
+        }
+    }
+
+    private void scoreQuiet() {
+        if (history == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            scores[i] = history[position.pieceAt(Moves.from(move))][Moves.to(move)];
+        }
+    }
+
+    /**
+     * Swaps the best remaining move to the front of what is left and returns
+     * it. A selection sort is enough since a cutoff usually comes within the
+     * first few moves.
+     */
+    private int pickBest() {
+        int best = index;
+        for (int j = index + 1; j < count; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[index];
+        moves[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index++] = score;
+        return move;
+    }
+}
@@ -0,0 +1,247 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.Moves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Opening book in the Polyglot .bin layout, read straight from a
+ * memory-mapped file so the book never has to be copied onto the heap.
+ *
+ * The file is a sequence of 16-byte big-endian entries sorted by key (as an
+ * unsigned number): the position key (8 bytes), the move (2 bytes), its
+ * weight (2 bytes) and 4 bytes of learning data that are ignored. Entries
+ * for a position are found by binary search on the key. Keys are Polyglot
+ * keys (see {@link PolyglotKeys}), so books made by other Polyglot tools
+ * can be used as they are. Moves use the Polyglot encoding: to square in
+ * bits 0-5, from square in bits 6-11 and the promotion piece (1 knight to 4
+ * queen) in bits 12-14, with castling written as the king taking its own
+ * rook.
+ *
+ * The mapping is read-only and safe to share between threads.
+ */
+public final class OpeningBook implements AutoCloseable {
+
+    static final int ENTRY_BYTES = 16;
+
+    /**
+     * How a book keys its positions. Books are Polyglot books; keying by
+     * this project's {@link com.checkmate.utils.Zobrist} hashes saves
+     * computing a second key per position, but such a book can only be
+     * read back here and must be opened with the same keys it was built with.
+     */
+    enum Keys {
+        POLYGLOT {
+            @Override
+            long of(Position position) {
+                return PolyglotKeys.compute(position);
+            }
+        },
+        ZOBRIST {
+            @Override
+            long of(Position position) {
+                return position.getHash();
+            }
+        };
+
+        abstract long of(Position position);
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer entries;
+    private final int count;
+    private final Keys keys;
+
+    private OpeningBook(FileChannel channel, ByteBuffer entries, Keys keys) {
+        this.channel = channel;
+        this.entries = entries;
+        this.count = entries.capacity() / ENTRY_BYTES;
+        this.keys = keys;
+    }
+
+    /**
+     * Maps a book file into memory
+     *
+     * @param file The .bin file
+     * @return The book
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file is not a whole number of entries or is over 2 GB
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        return open(file, Keys.POLYGLOT);
+    }
+
+    /**
+     * Maps a book file into memory
+     *
+     * @param file The .bin file
+     * @param keys How the book's positions are keyed
+     * @return The book
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file is not a whole number of entries or is over 2 GB
+     */
+    static OpeningBook open(Path file, Keys keys) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size % ENTRY_BYTES != 0 || size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Not a Polyglot book: " + file + " is " + size + " bytes");
+            }
+            // Big-endian, as Polyglot files are
+            return new OpeningBook(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, size), keys);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of entries in the book
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Picks a book move for a position at random, each move being chosen in
+     * proportion to its weight
+     *
+     * @param position The position
+     * @param random The source of randomness
+     * @return A legal encoded move, or Moves.NONE if the position is not in the book
+     */
+    public int pick(Position position, RandomGenerator random) {
+        long key = keys.of(position);
+        int first = firstIndex(key);
+        long total = 0;
+        for (int i = first; i < count && key(i) == key; i++) {
+            if (toMove(position, polyglotMove(i)) != Moves.NONE) {
+                total += weight(i);
+            }
+        }
+        if (total == 0) {
+            return Moves.NONE;
+        }
+        long choice = random.nextLong(total);
+        for (int i = first; i < count && key(i) == key; i++) {
+            int move = toMove(position, polyglotMove(i));
+            if (move != Moves.NONE) {
+                choice -= weight(i);
+                if (choice < 0) {
+                    return move;
+                }
+            }
+        }
+        return Moves.NONE;
+    }
+
+    /**
+     * Gets every book move for a position with its weight
+     *
+     * @param position The position
+     * @return Pairs of (encoded move, weight), packed as move << 16 | weight
+     *         in book order; empty if the position is not in the book
+     */
+    public int[] moves(Position position) {
+        long key = keys.of(position);
+        int first = firstIndex(key);
+        int last = first;
+        while (last < count && key(last) == key) {
+            last++;
+        }
+        int[] result = new int[last - first];
+        int n = 0;
+        for (int i = first; i < last; i++) {
+            int move = toMove(position, polyglotMove(i));
+            if (move != Moves.NONE) {
+                result[n++] = move << 16 | weight(i);
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Closes the file. The mapping itself is released when it is garbage
+     * collected, so the book must not be used after this.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Encodes a move in the Polyglot format
+     *
+     * @param move An encoded move (see {@link Moves})
+     * @return The 16-bit Polyglot move
+     */
+    static int toPolyglot(int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        if (Moves.flags(move) == Moves.KING_CASTLE) {
+            to = from + 3;
+        } else if (Moves.flags(move) == Moves.QUEEN_CASTLE) {
+            to = from - 4;
+        }
+        int promotion = Moves.isPromotion(move) ? Moves.promotionType(move) : 0;
+        return promotion << 12 | from << 6 | to;
+    }
+
+    /**
+     * Turns a Polyglot move into a legal move in a position
+     *
+     * @return The encoded move, or Moves.NONE if it is not legal there
+     */
+    private static int toMove(Position position, int polyglot) {
+        int to = polyglot & 63;
+        int from = polyglot >>> 6 & 63;
+        int promotion = polyglot >>> 12 & 7;
+        int piece = position.pieceAt(from);
+        if (piece != Position.NO_PIECE && Position.typeOf(piece) == Position.KING
+                && position.pieceAt(to) == Position.pieceCode(Position.colourOf(piece), Position.ROOK)) {
+            // King takes own rook: castling towards that rook
+            to = to > from ? from + 2 : from - 2;
+        }
+        int move = Moves.infer(position, from, to, promotion == 0 ? Position.QUEEN : promotion);
+        if (move == Moves.NONE || (Moves.isPromotion(move) && promotion == 0)
+                || !ChessUtils.isLegalMove(position, move)) {
+            return Moves.NONE;
+        }
+        return move;
+    }
+
+    // Index of the first entry whose key is not below the given key
+    private int firstIndex(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long key(int index) {
+        return entries.getLong(index * ENTRY_BYTES);
+    }
+
+    private int polyglotMove(int index) {
+        return entries.getShort(index * ENTRY_BYTES + 8) & 0xFFFF;
+    }
+
+    private int weight(int index) {
+        return entries.getShort(index * ENTRY_BYTES + 10) & 0xFFFF;
+    }
+}
@@ -0,0 +1,148 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.Moves;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link OpeningBook} from finished games. Every move played in
+ * the first plies of a game is credited to the position it was played in:
+ * two points if the side that played it went on to win, one for a draw and
+ * none for a loss, so moves that did well come up more often. Moves that
+ * never scored are left out.
+ *
+ * The book is a Polyglot book, keyed by Polyglot keys, so other Polyglot
+ * tools can read it too. Weights are scaled down to fit Polyglot's 16 bits
+ * if needed.
+ */
+public final class OpeningBookBuilder {
+
+    /** Plies of each game that go into the book unless set otherwise */
+    public static final int DEFAULT_MAX_PLY = 20;
+
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    private final int maxPly;
+    private final OpeningBook.Keys keys;
+    // Points per position key and Polyglot move
+    private final Map<Long, Map<Integer, Long>> points = new HashMap<>();
+    private int games;
+
+    public OpeningBookBuilder() {
+        this(DEFAULT_MAX_PLY);
+    }
+
+    /**
+     * Creates a builder
+     *
+     * @param maxPly How many plies from the start of each game to use
+     */
+    public OpeningBookBuilder(int maxPly) {
+        this(maxPly, OpeningBook.Keys.POLYGLOT);
+    }
+
+    /**
+     * Creates a builder
+     *
+     * @param maxPly How many plies from the start of each game to use
+     * @param keys How to key positions (the book must be opened with the same)
+     */
+    OpeningBookBuilder(int maxPly, OpeningBook.Keys keys) {
+        this.maxPly = maxPly;
+        this.keys = keys;
+    }
+
+    /**
+     * Adds a finished game
+     *
+     * @param start The position the game started from (not modified)
+     * @param moves The encoded moves in the order they were played
+     * @param whitePoints 2 if white won, 1 for a draw, 0 if black won
+     * @return This builder
+     * @throws IllegalArgumentException If whitePoints is not 0, 1 or 2
+     */
+    public OpeningBookBuilder addGame(Position start, int[] moves, int whitePoints) {
+        if (whitePoints < 0 || whitePoints > 2) {
+            throw new IllegalArgumentException("A game scores 0, 1 or 2 points for white, not " + whitePoints);
+        }
+        Position position = start.copy();
+        int plies = Math.min(moves.length, maxPly);
+        for (int ply = 0; ply < plies; ply++) {
+            int move = moves[ply];
+            if (move == Moves.NONE) {
+                break;
+            }
+            int score = position.getSideToMove() == Position.WHITE ? whitePoints : 2 - whitePoints;
+            if (score > 0) {
+                points.computeIfAbsent(keys.of(position), key -> new HashMap<>())
+                        .merge(OpeningBook.toPolyglot(move), (long) score, Long::sum);
+            }
+            position.makeMove(move);
+        }
+        games++;
+        return this;
+    }
+
+    /**
+     * Gets the number of games added
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Writes the book
+     *
+     * @param file The .bin file to create or replace
+     * @return The number of entries written
+     * @throws IOException If the file cannot be written
+     */
+    public int write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Writes the book to a stream, entries sorted by key and then by weight
+     * (heaviest first)
+     *
+     * @param out The stream (not closed)
+     * @return The number of entries written
+     * @throws IOException If the stream fails
+     */
+    public int write(OutputStream out) throws IOException {
+        long maxPoints = 1;
+        for (Map<Integer, Long> moves : points.values()) {
+            for (long value : moves.values()) {
+                maxPoints = Math.max(maxPoints, value);
+            }
+        }
+        double scale = maxPoints > MAX_WEIGHT ? (double) MAX_WEIGHT / maxPoints : 1.0;
+
+        List<long[]> entries = new ArrayList<>();
+        points.forEach((key, moves) -> moves.forEach((move, value) ->
+                entries.add(new long[] {key, move, Math.max(1, Math.round(value * scale))})));
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(b[2], a[2]));
+
+        DataOutputStream data = new DataOutputStream(out);
+        for (long[] entry : entries) {
+            data.writeLong(entry[0]);
+            data.writeShort((int) entry[1]);
+            data.writeShort((int) entry[2]);
+            data.writeInt(0);
+        }
+        data.flush();
+        return entries.size();
+    }
+}
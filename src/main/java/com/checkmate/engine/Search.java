@@ -0,0 +1,619 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+import com.checkmate.utils.StaticExchange;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One run of the engine's search: iterative deepening over a negamax
+ * alpha-beta search.
+ *
+ * Each iteration searches one ply deeper than the last, using the
+ * transposition table to try the previous best move first, which is what
+ * makes the repeated iterations cheap. Moves come from a staged
+ * {@link MovePicker}; quiet moves that cause a cutoff are remembered as
+ * killer moves for their ply and credited in a history table, so similar
+ * moves are tried early elsewhere in the tree. At the leaves a quiescence
+ * search plays out captures and promotions until the position is quiet, so a
+ * line is never scored in the middle of an exchange; captures that lose
+ * material by static exchange evaluation, and captures that could not lift
+ * the score to alpha even if nothing were lost in return, are left out.
+ *
+ * The tree is kept small with the usual selective techniques, each of which
+ * can be switched off in {@link SearchConfig}: principal variation search
+ * (null windows for every move after the first), aspiration windows around
+ * the previous iteration's score, null-move pruning (skipped in check,
+ * without pieces and twice in a row, and verified at high depth, to guard
+ * against zugzwang), late move reductions for quiet moves far down the move
+ * order, and futility pruning of quiet moves one or two plies from the leaves.
+ * The search stops when the depth, time
+ * or node budget in {@link SearchLimits} runs out; an unfinished iteration is
+ * thrown away and the result of the last complete one is returned. The
+ * principal variation is collected in a triangular table as the search
+ * unwinds.
+ *
+ * A search can also ponder: search the position expected after the
+ * opponent's reply while the opponent thinks, with its clock only starting
+ * when that reply is played ({@link #ponderHit()}).
+ *
+ * Several Searches can run on the same position at once, each on its own
+ * copy and thread, sharing one transposition table (Lazy SMP). The main
+ * search owns the limits; helper searches just keep deepening, filling the
+ * table with results the main search then finds, until {@link #stop()} is
+ * called. Odd-numbered helpers start one ply deeper so the threads do not all
+ * work on the same iteration.
+ *
+ * A Search works on its own position and move buffers and allocates nothing
+ * per node. Apart from {@link #stop()} and {@link #ponderHit()} it is not
+ * thread safe; create one per search and thread.
+ */
+public final class Search {
+
+    public static final int MAX_PLY = 64;
+    public static final int INFINITE = 32_000;
+    /** Score for being mated at the root; mate in n plies scores MATE - n */
+    public static final int MATE = 31_000;
+    public static final int DRAW = 0;
+
+    private static final int MATE_BOUND = MATE - MAX_PLY;
+    private static final int CHECK_INTERVAL = 1023;
+    private static final int HISTORY_LIMIT = 1 << 20;
+    // Positional slack for delta pruning in the quiescence search
+    private static final int DELTA_MARGIN = 200;
+    // Half-width of the first aspiration window, in centipawns
+    private static final int ASPIRATION_WINDOW = 25;
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int NULL_MOVE_VERIFY_DEPTH = 8;
+    // How far below alpha the static evaluation may be, by remaining depth,
+    // before quiet moves are not worth searching
+    private static final int[] FUTILITY_MARGINS = {0, 150, 300};
+    private static final int LMR_MIN_DEPTH = 3;
+    private static final int LMR_MIN_MOVES = 3;
+    // Late move reductions by remaining depth and number of moves already searched
+    private static final int[][] LMR_REDUCTIONS = new int[MAX_PLY][64];
+
+    static {
+        for (int depth = 1; depth < MAX_PLY; depth++) {
+            for (int moves = 1; moves < 64; moves++) {
+                LMR_REDUCTIONS[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+            }
+        }
+    }
+
+    private final Position position;
+    private final TranspositionTable table;
+    private final Evaluator evaluator;
+    private final SearchLimits limits;
+    private final SearchConfig config;
+    private final int helperId;
+
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final int[][] killers = new int[MAX_PLY][2];
+    // History scores by piece code and destination square
+    private final int[][] history = new int[12][64];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    // Hashes of the game's earlier positions followed by those on the current search path
+    private final long[] hashes;
+    private final int historyLength;
+
+    private long nodes;
+    // Shared with the other threads of a search, which read it without waiting for this one
+    private LongAdder nodeCounter;
+    private long countedNodes;
+    // Set from run() and from ponderHit() on another thread
+    private volatile long deadline;
+    private volatile long softDeadline;
+    private boolean pondering;
+    private long maxPonderMillis;
+    private int rootDepth;
+    private boolean stopped;
+    private volatile boolean stopRequested;
+    // Best move of the last iteration completed, for readers on other threads
+    private volatile int completedMove = Moves.NONE;
+
+    /**
+     * Creates a search. The position is changed during the search and put
+     * back as it was when the search ends.
+     *
+     * @param position The position to search
+     * @param table The transposition table (may be shared between searches)
+     * @param evaluator The static evaluation
+     * @param limits The depth, time and node budget
+     * @param history Hashes of the positions played before this one since the
+     *                last capture or pawn move, oldest first, so repeating one
+     *                of them is scored as a draw
+     */
+    public Search(Position position, TranspositionTable table, Evaluator evaluator, SearchLimits limits, long[] history) {
+        this(position, table, evaluator, limits, history, SearchConfig.DEFAULT, 0);
+    }
+
+    /**
+     * Creates a main search (helperId 0) or a helper search
+     *
+     * @param position The position to search
+     * @param table The transposition table shared by all threads
+     * @param evaluator The static evaluation
+     * @param limits The depth, time and node budget (helpers only use the depth)
+     * @param history Hashes of the earlier positions, oldest first
+     * @param config Which optional techniques to use
+     * @param helperId 0 for the main search, 1 and up for helpers
+     */
+    public Search(Position position, TranspositionTable table, Evaluator evaluator, SearchLimits limits, long[] history,
+                  SearchConfig config, int helperId) {
+        this.position = position;
+        this.table = table;
+        this.evaluator = evaluator;
+        this.limits = limits;
+        this.config = config;
+        this.helperId = helperId;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker();
+        }
+        this.historyLength = history.length;
+        this.hashes = Arrays.copyOf(history, history.length + MAX_PLY + 1);
+    }
+
+    /**
+     * Runs the search
+     *
+     * @return The best move found with its score and principal variation
+     */
+    public SearchResult run() {
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (pondering) {
+                deadline = maxPonderMillis > 0 ? start + maxPonderMillis * 1_000_000L : Long.MAX_VALUE;
+                softDeadline = Long.MAX_VALUE;
+            } else {
+                startClock(start);
+            }
+        }
+
+        int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+        int legalMoves = MoveGenerator.generateLegalMoves(position, rootMoves);
+        if (legalMoves == 0) {
+            int score = ChessUtils.isInCheck(position, position.getSideToMove()) ? -MATE : DRAW;
+            return new SearchResult(Moves.NONE, score, 0, 0, elapsedMillis(start), new int[0]);
+        }
+
+        SearchResult result = null;
+        for (rootDepth = 1 + (helperId & 1); rootDepth <= limits.getMaxDepth(); rootDepth++) {
+            int score = result != null && config.isAspirationWindows() && rootDepth >= ASPIRATION_MIN_DEPTH
+                    ? aspirationSearch(result.getScore())
+                    : negamax(rootDepth, -INFINITE, INFINITE, 0, true);
+            if (stopped) {
+                break;
+            }
+            result = new SearchResult(pv[0][0], score, rootDepth, nodes, elapsedMillis(start),
+                    Arrays.copyOf(pv[0], pvLength[0]));
+            completedMove = result.getBestMove();
+
+            // A forced mate will not get any shorter, and with one legal move
+            // there is nothing to choose between
+            if (helperId == 0 && (Math.abs(score) >= MATE_BOUND || (legalMoves == 1 && limits.getTimeMillis() > 0))) {
+                break;
+            }
+            // Past the soft limit a new iteration would most likely not finish
+            if (stopRequested || (helperId == 0 && softDeadline != Long.MAX_VALUE && System.nanoTime() > softDeadline)) {
+                break;
+            }
+        }
+        countNodes();
+        if (result == null) {
+            // A helper stopped before finishing its first iteration
+            return new SearchResult(rootMoves[0], 0, 0, nodes, elapsedMillis(start), new int[] {rootMoves[0]});
+        }
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getDepth(), nodes,
+                elapsedMillis(start), result.getPrincipalVariation());
+    }
+
+    /**
+     * Adds this search's nodes to a counter as it goes: every 1024 nodes,
+     * when it notices a stop and when it returns. Must be called before
+     * {@link #run()}.
+     *
+     * @param counter The counter shared by the threads of one search
+     */
+    void countNodesIn(LongAdder counter) {
+        this.nodeCounter = counter;
+    }
+
+    /**
+     * Searches the root with a narrow window around the previous iteration's
+     * score, widening the side that failed until the score falls inside
+     */
+    private int aspirationSearch(int previousScore) {
+        if (Math.abs(previousScore) >= MATE_BOUND) {
+            return negamax(rootDepth, -INFINITE, INFINITE, 0, true);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = Math.max(previousScore - delta, -INFINITE);
+        int beta = Math.min(previousScore + delta, INFINITE);
+        while (true) {
+            int score = negamax(rootDepth, alpha, beta, 0, true);
+            if (stopped) {
+                return 0;
+            }
+            if (score <= alpha && alpha > -INFINITE) {
+                alpha = Math.max(score - delta, -INFINITE);
+            } else if (score >= beta && beta < INFINITE) {
+                beta = Math.min(score + delta, INFINITE);
+            } else {
+                return score;
+            }
+            delta *= 2;
+        }
+    }
+
+    /**
+     * Makes the search ponder: it searches the position expected after the
+     * opponent's next move on the opponent's time, ignoring its time limits
+     * until {@link #ponderHit()}. Must be called before {@link #run()}.
+     *
+     * @param maxPonderMillis How long to ponder at most if the opponent does
+     *                        not move (0 for no limit)
+     */
+    void ponder(long maxPonderMillis) {
+        this.pondering = true;
+        this.maxPonderMillis = maxPonderMillis;
+    }
+
+    /**
+     * Tells a pondering search that the opponent played the expected move:
+     * the search carries on where it is, with its time limits counted from
+     * now. Safe to call from any thread, before or during the search.
+     */
+    public synchronized void ponderHit() {
+        if (pondering) {
+            pondering = false;
+            startClock(System.nanoTime());
+        }
+    }
+
+    private void startClock(long start) {
+        deadline = limits.getTimeMillis() > 0 ? start + limits.getTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+        softDeadline = limits.getSoftTimeMillis() > 0 ? start + limits.getSoftTimeMillis() * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Asks the search to stop as soon as possible. Safe to call from any
+     * thread; the search notices at its next node.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Gets the best move of the last iteration that finished. Safe to call
+     * from any thread while the search runs.
+     *
+     * @return The move, or Moves.NONE before the first iteration finishes
+     */
+    public int getCompletedMove() {
+        return completedMove;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int ply, boolean nullAllowed) {
+        if (depth <= 0) {
+            return quiesce(alpha, beta, ply);
+        }
+        pvLength[ply] = ply;
+        nodes++;
+        if ((nodes & CHECK_INTERVAL) == 0 || stopRequested) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        long hash = position.getHash();
+        hashes[historyLength + ply] = hash;
+
+        if (ply > 0 && isDraw(ply)) {
+            return DRAW;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluator.evaluate(position);
+        }
+
+        int ttMove = Moves.NONE;
+        long entry = table.probe(hash);
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int side = position.getSideToMove();
+        boolean pvNode = beta - alpha > 1;
+        boolean inCheck = ChessUtils.isInCheck(position, side);
+        int staticEval = inCheck ? -INFINITE : evaluator.evaluate(position);
+
+        // Null move: if passing still beats beta, a real move surely would.
+        // Not in check, not twice in a row, and not without pieces, where
+        // zugzwang makes passing better than any move
+        if (config.isNullMove() && nullAllowed && !pvNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH
+                && staticEval >= beta && Math.abs(beta) < MATE_BOUND && hasPieces(side)) {
+            int reduction = depth >= 6 ? 3 : 2;
+            position.makeNullMove();
+            int score = -negamax(depth - 1 - reduction, -beta, -beta + 1, ply + 1, false);
+            position.unmakeNullMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                // Deep cutoffs are checked with a reduced search of the real moves
+                if (depth < NULL_MOVE_VERIFY_DEPTH
+                        || negamax(depth - 1 - reduction, beta - 1, beta, ply, false) >= beta) {
+                    return score >= MATE_BOUND ? beta : score;
+                }
+            }
+        }
+
+        // Futility: near the leaves, quiet moves cannot make up a large deficit
+        boolean futile = config.isFutilityPruning() && !pvNode && !inCheck && depth <= FUTILITY_MARGINS.length - 1
+                && Math.abs(alpha) < MATE_BOUND && staticEval + FUTILITY_MARGINS[depth] <= alpha;
+
+        MovePicker picker = pickers[ply];
+        int firstKiller = config.isKillerMoves() ? killers[ply][0] : Moves.NONE;
+        int secondKiller = config.isKillerMoves() ? killers[ply][1] : Moves.NONE;
+        picker.init(position, ttMove, firstKiller, secondKiller, config.isHistoryHeuristic() ? history : null);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITE;
+        int bestMove = Moves.NONE;
+        int movesSearched = 0;
+        boolean pruned = false;
+        int move;
+        while ((move = picker.next()) != Moves.NONE) {
+            boolean quiet = !Moves.isCapture(move) && !Moves.isPromotion(move);
+            position.makeMove(move);
+            boolean givesCheck = ChessUtils.isInCheck(position, side ^ 1);
+
+            if (futile && quiet && !givesCheck && movesSearched > 0) {
+                position.unmakeMove(move);
+                pruned = true;
+                continue;
+            }
+
+            int score;
+            if (movesSearched == 0) {
+                score = -negamax(depth - 1, -beta, -alpha, ply + 1, true);
+            } else {
+                // Late quiet moves are searched less deeply first
+                int reduction = 0;
+                if (config.isLateMoveReductions() && depth >= LMR_MIN_DEPTH && movesSearched >= LMR_MIN_MOVES
+                        && quiet && !inCheck && !givesCheck && move != firstKiller && move != secondKiller) {
+                    reduction = Math.min(LMR_REDUCTIONS[Math.min(depth, MAX_PLY - 1)][Math.min(movesSearched, 63)],
+                            depth - 2);
+                }
+                int windowAlpha = config.isPrincipalVariationSearch() ? -alpha - 1 : -beta;
+                score = -negamax(depth - 1 - reduction, windowAlpha, -alpha, ply + 1, true);
+                if (score > alpha && reduction > 0) {
+                    score = -negamax(depth - 1, windowAlpha, -alpha, ply + 1, true);
+                }
+                if (score > alpha && score < beta && windowAlpha != -beta) {
+                    score = -negamax(depth - 1, -beta, -alpha, ply + 1, true);
+                }
+            }
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            movesSearched++;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        if (quiet) {
+                            rememberCutoff(move, ply, depth);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (bestMove == Moves.NONE) {
+            return inCheck ? -MATE + ply : DRAW;
+        }
+        if (pruned && bestScore < alpha) {
+            // The pruned moves were judged unable to reach alpha, not searched
+            bestScore = alpha;
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > originalAlpha ? TranspositionTable.EXACT
+                : TranspositionTable.UPPER;
+        table.store(hash, bestMove, toTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    private boolean hasPieces(int side) {
+        return (position.pieces(side, Position.KNIGHT) | position.pieces(side, Position.BISHOP)
+                | position.pieces(side, Position.ROOK) | position.pieces(side, Position.QUEEN)) != 0;
+    }
+
+    /**
+     * Searches captures and promotions until the position is quiet. The side
+     * to move may also stand pat on the static evaluation, since it is not
+     * forced to capture. In check every evasion is searched instead, so
+     * mates at the horizon are still found.
+     */
+    private int quiesce(int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+        nodes++;
+        if ((nodes & CHECK_INTERVAL) == 0 || stopRequested) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+
+        hashes[historyLength + ply] = position.getHash();
+        if (isDraw(ply)) {
+            return DRAW;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluator.evaluate(position);
+        }
+
+        boolean inCheck = ChessUtils.isInCheck(position, position.getSideToMove());
+        MovePicker picker = pickers[ply];
+        int standPat = -INFINITE;
+        if (inCheck) {
+            picker.init(position, Moves.NONE, Moves.NONE, Moves.NONE, null);
+        } else {
+            standPat = evaluator.evaluate(position);
+            if (standPat >= beta) {
+                return standPat;
+            }
+            alpha = Math.max(alpha, standPat);
+            picker.initNoisy(position);
+        }
+
+        int bestScore = standPat;
+        int move;
+        while ((move = picker.next()) != Moves.NONE) {
+            // Delta pruning: even winning the piece for nothing would not reach alpha
+            if (!inCheck && !Moves.isPromotion(move)
+                    && standPat + capturedValue(move) + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            position.makeMove(move);
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (inCheck && bestScore == -INFINITE) {
+            return -MATE + ply;
+        }
+        return bestScore;
+    }
+
+    private int capturedValue(int move) {
+        if (Moves.flags(move) == Moves.EN_PASSANT) {
+            return StaticExchange.value(Position.PAWN);
+        }
+        return Moves.isCapture(move) ? StaticExchange.value(Position.typeOf(position.pieceAt(Moves.to(move)))) : 0;
+    }
+
+    /**
+     * Checks for draws by the fifty-move rule, insufficient material or
+     * repetition. Inside the search a single repetition counts, since the
+     * side that could avoid it would have to choose to.
+     */
+    private boolean isDraw(int ply) {
+        int halfmoves = position.getHalfmoveClock();
+        if (halfmoves >= 100 || ChessUtils.isInsufficientMaterial(position)) {
+            return true;
+        }
+        int current = historyLength + ply;
+        long hash = hashes[current];
+        // Only positions with the same side to move and no irreversible move
+        // in between can repeat
+        for (int i = current - 4; i >= Math.max(0, current - halfmoves); i -= 2) {
+            if (hashes[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a quiet move that caused a beta cutoff: it becomes the first
+     * killer move for its ply and earns a history bonus that grows with the
+     * depth of the cutoff. All history scores are halved when one gets too
+     * large, so old results fade.
+     */
+    private void rememberCutoff(int move, int ply, int depth) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] scores = history[position.pieceAt(Moves.from(move))];
+        int to = Moves.to(move);
+        scores[to] += depth * depth;
+        if (scores[to] > HISTORY_LIMIT) {
+            for (int[] pieceScores : history) {
+                for (int square = 0; square < 64; square++) {
+                    pieceScores[square] >>= 1;
+                }
+            }
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        int childLength = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, childLength - ply - 1);
+        pvLength[ply] = Math.max(childLength, ply + 1);
+    }
+
+    private void checkLimits() {
+        countNodes();
+        if (stopRequested && (helperId > 0 || rootDepth > 1)) {
+            stopped = true;
+        }
+        // The first iteration always completes so there is a move to return
+        if (helperId == 0 && rootDepth > 1 && (System.nanoTime() > deadline
+                || (limits.getMaxNodes() > 0 && nodes >= limits.getMaxNodes()))) {
+            stopped = true;
+        }
+    }
+
+    private void countNodes() {
+        if (nodeCounter != null) {
+            nodeCounter.add(nodes - countedNodes);
+            countedNodes = nodes;
+        }
+    }
+
+    // Mate scores are stored relative to the position rather than the root
+    private static int toTable(int score, int ply) {
+        return score >= MATE_BOUND ? score + ply : score <= -MATE_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= MATE_BOUND ? score - ply : score <= -MATE_BOUND ? score + ply : score;
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+}
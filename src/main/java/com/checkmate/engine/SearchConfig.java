@@ -0,0 +1,174 @@
+package com.checkmate.engine;
+
+/**
+ * Switches for the search's optional techniques, so their effect can be
+ * measured by turning them off one at a time. Everything is on in
+ * {@link #DEFAULT}; the with methods return a changed copy.
+ *
+ * Each switch has a short name, used by {@link #toString()} and by
+ * {@link #withDisabled(String)} so a configuration can be given as text
+ * (for example in application.properties).
+ */
+public final class SearchConfig {
+
+    private static final int KILLER_MOVES = 1;
+    private static final int HISTORY_HEURISTIC = 1 << 1;
+    private static final int PRINCIPAL_VARIATION_SEARCH = 1 << 2;
+    private static final int ASPIRATION_WINDOWS = 1 << 3;
+    private static final int NULL_MOVE = 1 << 4;
+    private static final int LATE_MOVE_REDUCTIONS = 1 << 5;
+    private static final int FUTILITY_PRUNING = 1 << 6;
+
+    private static final String[] NAMES = {"killers", "history", "pvs", "aspiration", "null-move", "lmr", "futility"};
+
+    public static final SearchConfig DEFAULT = new SearchConfig((1 << NAMES.length) - 1);
+
+    private final int enabled;
+
+    private SearchConfig(int enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Try the two most recent quiet moves that caused a cutoff at the same
+     * ply before the other quiet moves
+     */
+    public SearchConfig withKillerMoves(boolean enabled) {
+        return with(KILLER_MOVES, enabled);
+    }
+
+    /**
+     * Order quiet moves by how often they have caused cutoffs elsewhere in
+     * the tree
+     */
+    public SearchConfig withHistoryHeuristic(boolean enabled) {
+        return with(HISTORY_HEURISTIC, enabled);
+    }
+
+    /**
+     * Search every move after the first with a null window, only searching
+     * again with the full window when one turns out better
+     */
+    public SearchConfig withPrincipalVariationSearch(boolean enabled) {
+        return with(PRINCIPAL_VARIATION_SEARCH, enabled);
+    }
+
+    /**
+     * Start each iteration with a narrow window around the previous score,
+     * widening it only if the score falls outside
+     */
+    public SearchConfig withAspirationWindows(boolean enabled) {
+        return with(ASPIRATION_WINDOWS, enabled);
+    }
+
+    /**
+     * Let the opponent move twice in a row at reduced depth; if the score
+     * still beats beta the node is cut off without searching its moves
+     */
+    public SearchConfig withNullMove(boolean enabled) {
+        return with(NULL_MOVE, enabled);
+    }
+
+    /**
+     * Search quiet moves late in the move order to a reduced depth, going to
+     * full depth only if one beats alpha
+     */
+    public SearchConfig withLateMoveReductions(boolean enabled) {
+        return with(LATE_MOVE_REDUCTIONS, enabled);
+    }
+
+    /**
+     * Skip quiet moves near the leaves when the static evaluation is too far
+     * below alpha for them to catch up
+     */
+    public SearchConfig withFutilityPruning(boolean enabled) {
+        return with(FUTILITY_PRUNING, enabled);
+    }
+
+    /**
+     * Turns off the techniques named in a comma-separated list
+     *
+     * @param names Names as printed by {@link #toString()}, e.g. "lmr,futility";
+     *              blank turns nothing off
+     * @return The changed copy
+     * @throws IllegalArgumentException If a name is not known
+     */
+    public SearchConfig withDisabled(String names) {
+        int result = enabled;
+        for (String name : names.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int index = indexOf(trimmed);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown search option: " + trimmed);
+            }
+            result &= ~(1 << index);
+        }
+        return new SearchConfig(result);
+    }
+
+    public boolean isKillerMoves() {
+        return (enabled & KILLER_MOVES) != 0;
+    }
+
+    public boolean isHistoryHeuristic() {
+        return (enabled & HISTORY_HEURISTIC) != 0;
+    }
+
+    public boolean isPrincipalVariationSearch() {
+        return (enabled & PRINCIPAL_VARIATION_SEARCH) != 0;
+    }
+
+    public boolean isAspirationWindows() {
+        return (enabled & ASPIRATION_WINDOWS) != 0;
+    }
+
+    public boolean isNullMove() {
+        return (enabled & NULL_MOVE) != 0;
+    }
+
+    public boolean isLateMoveReductions() {
+        return (enabled & LATE_MOVE_REDUCTIONS) != 0;
+    }
+
+    public boolean isFutilityPruning() {
+        return (enabled & FUTILITY_PRUNING) != 0;
+    }
+
+    private SearchConfig with(int flag, boolean on) {
+        return new SearchConfig(on ? enabled | flag : enabled & ~flag);
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SearchConfig && ((SearchConfig) other).enabled == enabled;
+    }
+
+    @Override
+    public int hashCode() {
+        return enabled;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(NAMES[i]).append('=').append((enabled & 1 << i) != 0);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.checkmate.engine;
+
+/**
+ * Budget for a search: a maximum depth, a time limit and a node limit.
+ * The search stops at whichever runs out first; a zero time or node limit
+ * means no limit of that kind. The first iteration (depth 1) always runs to
+ * completion so there is always a move to play.
+ *
+ * The time limit is hard: the search is cut off when it is reached, even in
+ * the middle of an iteration. A soft time limit can be set below it; once
+ * that much time has gone the search finishes the iteration it is on but
+ * does not start another, since a new iteration started late would most
+ * likely be cut off and wasted.
+ */
+public final class SearchLimits {
+
+    // Part of the remaining clock a move may take when the game has no
+    // move count to divide by, and the reserve kept against lag
+    private static final int EXPECTED_MOVES_LEFT = 40;
+    private static final long CLOCK_RESERVE_MILLIS = 50;
+
+    private final int maxDepth;
+    private final long timeMillis;
+    private final long softTimeMillis;
+    private final long maxNodes;
+
+    public SearchLimits(int maxDepth, long timeMillis, long maxNodes) {
+        this(maxDepth, timeMillis, 0, maxNodes);
+    }
+
+    /**
+     * Creates limits with a soft time limit
+     *
+     * @param maxDepth The depth in plies
+     * @param timeMillis The hard time limit in milliseconds (0 for none)
+     * @param softTimeMillis The time after which no new iteration is started (0 for none)
+     * @param maxNodes The node budget (0 for none)
+     */
+    public SearchLimits(int maxDepth, long timeMillis, long softTimeMillis, long maxNodes) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, Search.MAX_PLY - 1));
+        this.timeMillis = timeMillis;
+        this.softTimeMillis = softTimeMillis;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Searches to a fixed depth with no time or node limit
+     *
+     * @param depth The depth in plies
+     * @return The limits
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+
+    /**
+     * Searches for a fixed amount of time
+     *
+     * @param millis The time budget in milliseconds
+     * @return The limits
+     */
+    public static SearchLimits moveTime(long millis) {
+        return new SearchLimits(Search.MAX_PLY - 1, millis, 0);
+    }
+
+    /**
+     * Aims to search for a target time, letting an iteration that is under
+     * way run on up to a hard limit
+     *
+     * @param targetMillis The soft limit in milliseconds
+     * @param maxMillis The hard limit in milliseconds
+     * @return The limits
+     */
+    public static SearchLimits moveTime(long targetMillis, long maxMillis) {
+        return new SearchLimits(Search.MAX_PLY - 1, maxMillis, Math.min(targetMillis, maxMillis), 0);
+    }
+
+    /**
+     * Works out the time for one move from the side to move's clock. The soft
+     * limit is an even share of the remaining time plus most of the
+     * increment; the hard limit lets an iteration run on to four times that,
+     * but never past a fifth of what is left, and a small reserve is always
+     * kept back.
+     *
+     * @param remainingMillis Time left on the clock
+     * @param incrementMillis Time added after each move
+     * @return The limits
+     */
+    public static SearchLimits forClock(long remainingMillis, long incrementMillis) {
+        long usable = Math.max(1, remainingMillis - CLOCK_RESERVE_MILLIS);
+        long soft = Math.min(usable, usable / EXPECTED_MOVES_LEFT + incrementMillis * 3 / 4);
+        long hard = Math.min(usable, Math.max(soft, Math.min(soft * 4, usable / 5)));
+        return new SearchLimits(Search.MAX_PLY - 1, Math.max(1, hard), Math.max(1, soft), 0);
+    }
+
+    /**
+     * Searches a fixed number of nodes, which gives the same result on any
+     * machine
+     *
+     * @param nodes The node budget
+     * @return The limits
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(Search.MAX_PLY - 1, 0, nodes);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getSoftTimeMillis() {
+        return softTimeMillis;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.checkmate.engine;
+
+import com.checkmate.utils.Moves;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of a search: the best move with its score and principal variation
+ * (the line the engine expects to be played), plus how deep and how many
+ * nodes the search went.
+ */
+public final class SearchResult {
+
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long timeMillis;
+    private final int[] principalVariation;
+
+    public SearchResult(int bestMove, int score, int depth, long nodes, long timeMillis, int[] principalVariation) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.principalVariation = principalVariation;
+    }
+
+    /**
+     * Gets the move to play
+     *
+     * @return The encoded move (see {@link Moves}), or Moves.NONE if the side
+     *         to move is checkmated or stalemated
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Gets the score of the best move in centipawns from the point of view
+     * of the side to move. Mates are scored near +/-{@link Search#MATE}.
+     *
+     * @return The score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Gets the expected line of play, starting with the best move
+     *
+     * @return The encoded moves
+     */
+    public int[] getPrincipalVariation() {
+        return Arrays.copyOf(principalVariation, principalVariation.length);
+    }
+
+    /**
+     * Checks if the score is a forced mate (for either side)
+     *
+     * @return true if the score is a mate score
+     */
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (int move : principalVariation) {
+            line.append(' ').append(Moves.toUci(move));
+        }
+        return "depth " + depth + " score " + score + " nodes " + nodes + " time " + timeMillis + "ms pv" + line;
+    }
+}
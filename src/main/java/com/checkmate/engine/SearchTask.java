@@ -0,0 +1,76 @@
+package com.checkmate.engine;
+
+import com.checkmate.utils.Moves;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A search running in the background, started with
+ * {@link Engine#searchAsync(com.checkmate.model.Position, SearchLimits, long[])}.
+ * It completes with the search's result when the search ends by itself, or
+ * early when {@link #abort()} is called, in which case the result is the
+ * best one found so far.
+ */
+public final class SearchTask extends CompletableFuture<SearchResult> {
+
+    // Null for a task completed without searching (a book move)
+    private final Search search;
+
+    SearchTask(Search search) {
+        this.search = search;
+    }
+
+    /**
+     * Stops the search and lets the task complete with the result of the
+     * last iteration that finished. The search checks for this at every
+     * node, so the task completes well within a millisecond; helper threads
+     * are stopped with it.
+     *
+     * @return This task, to wait on with {@link #join()} if the result is needed
+     */
+    public SearchTask abort() {
+        if (search != null) {
+            search.stop();
+        }
+        return this;
+    }
+
+    /**
+     * Gets the best move of the last iteration the search finished, without
+     * waiting for the task, e.g. when an aborted search fails to complete in
+     * time
+     *
+     * @return The move, or Moves.NONE if there is none yet
+     */
+    public int getCompletedMove() {
+        if (search == null) {
+            // A book move, completed when the task was made
+            return isDone() && !isCompletedExceptionally() ? join().getBestMove() : Moves.NONE;
+        }
+        return search.getCompletedMove();
+    }
+
+    /**
+     * Tells a pondering search (see {@link Engine#ponder}) that the expected
+     * move was played, so its time limits start counting now
+     *
+     * @return This task
+     */
+    public SearchTask ponderHit() {
+        if (search != null) {
+            search.ponderHit();
+        }
+        return this;
+    }
+
+    /**
+     * Cancels the task and stops the search, which then ends without a result
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (search != null) {
+            search.stop();
+        }
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
@@ -0,0 +1,233 @@
+package com.checkmate.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash table of search results keyed by Zobrist hash, so a position reached
+ * again (by transposition or in the next iteration) can reuse what was
+ * learned about it: its best move first of all, and a score when it was
+ * searched deep enough.
+ *
+ * The table lives off the Java heap in one direct ByteBuffer, so even a large
+ * table is a single object to the garbage collector. It is split into
+ * 32-byte buckets of two 16-byte entries. Each entry is a key word and a data
+ * word; the data packs the move, score, depth, bound and the generation
+ * (search number) it was written in, and the key word holds the hash XORed
+ * with the data. Threads read and write entries without locks: an entry torn
+ * by a racing write fails the key check and reads as a miss instead of
+ * handing back another position's data.
+ *
+ * A store goes to the slot already holding the same position if there is
+ * one, otherwise it replaces the less valuable slot of the bucket, where
+ * entries from older searches and shallower entries are worth less.
+ */
+public final class TranspositionTable {
+
+    /** The score is exact */
+    public static final int EXACT = 3;
+    /** The score is a lower bound (the search failed high) */
+    public static final int LOWER = 2;
+    /** The score is an upper bound (the search failed low) */
+    public static final int UPPER = 1;
+
+    /** Largest table a single direct buffer can hold */
+    public static final int MAX_MEGABYTES = 1024;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_BYTES = 2 * ENTRY_BYTES;
+    private static final int GENERATION_MASK = 0x3F;
+
+    private final ByteBuffer buffer;
+    private final long bucketMask;
+    private volatile int generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    /**
+     * Creates a table using about the given amount of memory
+     *
+     * @param megabytes The size in megabytes, from 1 to {@link #MAX_MEGABYTES};
+     *                  rounded down to a power of two
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1 || megabytes > MAX_MEGABYTES) {
+            throw new IllegalArgumentException("Transposition table size must be 1 to " + MAX_MEGABYTES
+                    + " MB, not " + megabytes);
+        }
+        int bytes = Integer.highestOneBit(megabytes) * 1024 * 1024;
+        buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        bucketMask = bytes / BUCKET_BYTES - 1;
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param hash The position's Zobrist hash
+     * @return The packed entry, or 0 if the position is not in the table
+     */
+    public long probe(long hash) {
+        int bucket = bucketOffset(hash);
+        for (int offset = bucket; offset < bucket + BUCKET_BYTES; offset += ENTRY_BYTES) {
+            long entry = buffer.getLong(offset + 8);
+            if ((buffer.getLong(offset) ^ entry) == hash && entry != 0) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        return 0L;
+    }
+
+    /**
+     * Stores a search result for a position
+     *
+     * @param hash The position's Zobrist hash
+     * @param move The best move found, or Moves.NONE
+     * @param score The score, with mate scores relative to this position
+     * @param depth The depth searched
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long hash, int move, int score, int depth, int bound) {
+        int bucket = bucketOffset(hash);
+        int current = generation;
+        int target = bucket;
+        int targetWorth = Integer.MAX_VALUE;
+        long replaced = 0L;
+        for (int offset = bucket; offset < bucket + BUCKET_BYTES; offset += ENTRY_BYTES) {
+            long entry = buffer.getLong(offset + 8);
+            if ((buffer.getLong(offset) ^ entry) == hash) {
+                // Same position: keep its move if this search found none
+                if (move == 0) {
+                    move = move(entry);
+                }
+                target = offset;
+                replaced = 0L;
+                break;
+            }
+            // Each generation of age costs as much as eight plies of depth
+            int age = (current - generation(entry)) & GENERATION_MASK;
+            int worth = entry == 0 ? Integer.MIN_VALUE : depth(entry) - 8 * age;
+            if (worth < targetWorth) {
+                target = offset;
+                targetWorth = worth;
+                replaced = age == 0 ? entry : 0L;
+            }
+        }
+        if (replaced != 0) {
+            collisions.increment();
+        }
+
+        long entry = (move & 0xFFFFL)
+                | (score & 0xFFFFL) << 16
+                | (long) (depth & 0xFF) << 32
+                | (long) bound << 40
+                | (long) current << 42;
+        buffer.putLong(target + 8, entry);
+        buffer.putLong(target, hash ^ entry);
+    }
+
+    /**
+     * Starts a new search generation, so entries from earlier searches give
+     * way to new ones. The engine calls this once per move it searches for;
+     * pondering carries on in the generation of the move before. The
+     * generation has 6 bits, so it comes round again after 64 moves, counted
+     * across all the games sharing the table: an entry that old can then
+     * pass for a current one, which only makes it harder to replace.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    // The current generation, for tests
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * Empties the table and resets the counters, e.g. before a new game
+     */
+    public void clear() {
+        for (int offset = 0; offset < buffer.capacity(); offset += 8) {
+            buffer.putLong(offset, 0L);
+        }
+        resetCounters();
+    }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        collisions.reset();
+    }
+
+    public int capacity() {
+        return buffer.capacity() / ENTRY_BYTES;
+    }
+
+    /**
+     * Gets the number of probes that found their position
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of probes that did not find their position
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of stores that pushed out another position written
+     * during the current search
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * Estimates how full the table is from a sample of its first entries
+     *
+     * @return The share of sampled entries written by the current search, in permille
+     */
+    public int hashfull() {
+        int sample = Math.min(1000, capacity());
+        int current = generation;
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long entry = buffer.getLong(i * ENTRY_BYTES + 8);
+            if (entry != 0 && generation(entry) == current) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    public static int score(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 42) & GENERATION_MASK;
+    }
+
+    private int bucketOffset(long hash) {
+        return (int) (hash & bucketMask) * BUCKET_BYTES;
+    }
+}
@@ -6,18 +6,23 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
 import jakarta.persistence.Transient;
 
+import com.checkmate.utils.Fen;
+
 import java.io.Serializable;
 
 @Entity
 @Table(name = "boards")
 public class Board implements Serializable {
     
+    // Ids come from a sequence handed out in blocks, so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "board_seq")
+    @SequenceGenerator(name = "board_seq", sequenceName = "board_seq", allocationSize = 50)
     private Integer id;
     
     @OneToOne
@@ -30,9 +35,30 @@ public class Board implements Serializable {
     @Column(name = "current_turn")
     private String currentTurn = "WHITE"; // Default to WHITE starting
     
+    // Zobrist hashes of the positions since the last capture or pawn move,
+    // oldest first, 8 bytes each (at most 101 positions before the fifty-move rule)
+    @Column(name = "repetition_keys", length = 1024)
+    private byte[] repetitionKeys;
+    
     @Transient
     private Piece[][] squares;
     
+    @Transient
+    private Position position;
+    
+    // Set when boardState has changed and the position must be parsed again
+    @Transient
+    private boolean positionStale = true;
+    
+    // Set when the Piece[][] view is handed out or replaced, since callers
+    // may edit it; the position is synced with it once, on next use
+    @Transient
+    private boolean squaresEdited;
+    
+    // Reused by updateBoardState so writing the FEN needs no StringBuilder
+    @Transient
+    private char[] fenBuffer;
+    
     // Default constructor required by JPA
     public Board() {
         initializeDefaultBoard();
@@ -45,163 +71,287 @@ public class Board implements Serializable {
     
     private void initializeDefaultBoard() {
         // Initialize with the standard chess starting position
-        // This could be a FEN string representation or your own format
-        this.boardState = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR";
+        this.boardState = Fen.STARTING_POSITION;
+    }
+
+    /**
+     * Gets the bitboard position used by the rules code. The position is parsed
+     * from boardState on first use and then kept in sync by ChessUtils.
+     * boardState holds a full FEN string, so castling rights, the en passant
+     * square and the clocks survive a reload; boards saved with only the piece
+     * placement still load, with castling rights inferred from the kings and
+     * rooks on their starting squares. The side to move always follows
+     * currentTurn. If the Piece[][] view has been handed out or set since the
+     * last call, callers may have edited it, so the position is synced with
+     * it once; edits made later must fetch the view again to be seen.
+     *
+     * @return The current position
+     */
+    public Position getPosition() {
+        if (squares != null && squaresEdited) {
+            position = positionFromSquares();
+            positionStale = false;
+            squaresEdited = false;
+        } else if (position == null || positionStale) {
+            if (position == null) {
+                position = new Position();
+            }
+            Fen.parse(boardState, position);
+            position.setSideToMove(Position.colourOf(currentTurn));
+            positionStale = false;
+        }
+        return position;
     }
 
     public Piece[][] getBoardArray() {
-        if (squares != null) {
-            return squares;
+        if (squares == null) {
+            Position current = getPosition();
+            squares = new Piece[8][8];
+            fillSquares(current);
         }
-        
-        // Initialize 8x8 board
-        squares = new Piece[8][8];
-        
-        // Parse FEN string
-        String[] ranks = boardState.split("/");
-        
-        for (int rank = 0; rank < 8; rank++) {
-            int file = 0;
-            for (int i = 0; i < ranks[rank].length() && file < 8; i++) {
-                char c = ranks[rank].charAt(i);
-                
-                if (Character.isDigit(c)) {
-                    // Skip empty squares
-                    file += Character.getNumericValue(c);
+        squaresEdited = true;
+        return squares;
+    }
+
+    /**
+     * Refreshes the Piece[][] view (if one has been handed out) after the
+     * position has been changed by the rules code
+     */
+    public void refreshSquares() {
+        if (squares != null && position != null) {
+            fillSquares(position);
+        }
+    }
+
+    /**
+     * Fills the Piece[][] view in place from a position. Piece objects already
+     * in the view are kept when the same piece still stands on their square,
+     * so only squares that changed allocate.
+     *
+     * @param current The position to copy
+     */
+    private void fillSquares(Position current) {
+        int castlingRights = current.getCastlingRights();
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int square = (7 - row) * 8 + col;
+                int code = current.pieceAt(square);
+                Piece piece = squares[row][col];
+                if (code == Position.NO_PIECE) {
+                    piece = null;
                 } else {
-                    // Create piece
-                    squares[rank][file] = createPieceFromChar(c);
-                    file++;
+                    if (piece == null || piece.getCode() != code) {
+                        piece = new Piece(code);
+                    }
+                    piece.setHasMoved(hasMoved(code, square, castlingRights));
                 }
+                squares[row][col] = piece;
             }
         }
-        
-        return squares;
     }
-    
+
     /**
-     * Creates a Piece object from a FEN character
-     * 
-     * @param c The FEN character representing a piece
-     * @return A new Piece object
+     * Brings the position in line with the Piece[][] view, touching only the
+     * squares whose piece differs. Castling rights are granted for kings and
+     * rooks on their starting squares that have not moved.
+     *
+     * @return The position described by the view
      */
-    private Piece createPieceFromChar(char c) {
-        String color = Character.isUpperCase(c) ? "white" : "black";
-        char type = Character.toLowerCase(c);
-        
-        String pieceType;
-        String symbol;
+    private Position positionFromSquares() {
+        Position result = position != null ? position : new Position();
+        int rights = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = squares[row][col];
+                int code = piece == null ? Position.NO_PIECE : piece.getCode();
+                int square = (7 - row) * 8 + col;
+                int current = result.pieceAt(square);
+                if (code != current) {
+                    if (current != Position.NO_PIECE) {
+                        result.removePiece(current, square);
+                    }
+                    if (code != Position.NO_PIECE) {
+                        result.putPiece(code, square);
+                    }
+                }
+                if (code != Position.NO_PIECE && !piece.getHasMoved()) {
+                    rights |= unmovedCastlingRights(code, square);
+                }
+            }
+        }
         
-        switch (type) {
-            case 'p':
-                pieceType = "pawn";
-                symbol = color.equals("white") ? "♙" : "♟";
-                break;
-            case 'r':
-                pieceType = "rook";
-                symbol = color.equals("white") ? "♖" : "♜";
-                break;
-            case 'n':
-                pieceType = "knight";
-                symbol = color.equals("white") ? "♘" : "♞";
-                break;
-            case 'b':
-                pieceType = "bishop";
-                symbol = color.equals("white") ? "♗" : "♝";
-                break;
-            case 'q':
-                pieceType = "queen";
-                symbol = color.equals("white") ? "♕" : "♛";
-                break;
-            case 'k':
-                pieceType = "king";
-                symbol = color.equals("white") ? "♔" : "♚";
-                break;
+        // A right needs both the king and the rook to be unmoved
+        int kings = rights >>> 4;
+        result.setCastlingRights(rights & kings & 0xF);
+        result.setSideToMove(Position.colourOf(currentTurn));
+        return result;
+    }
+
+    /**
+     * Gets the castling rights an unmoved king or rook on a square contributes.
+     * Rook rights are returned in the low four bits, king rights shifted left by four.
+     */
+    private static int unmovedCastlingRights(int code, int square) {
+        switch (code) {
+            case 3: // white rook
+                return square == 7 ? Position.WHITE_KINGSIDE : square == 0 ? Position.WHITE_QUEENSIDE : 0;
+            case 9: // black rook
+                return square == 63 ? Position.BLACK_KINGSIDE : square == 56 ? Position.BLACK_QUEENSIDE : 0;
+            case 5: // white king
+                return square == 4 ? (Position.WHITE_KINGSIDE | Position.WHITE_QUEENSIDE) << 4 : 0;
+            case 11: // black king
+                return square == 60 ? (Position.BLACK_KINGSIDE | Position.BLACK_QUEENSIDE) << 4 : 0;
             default:
-                return null;
+                return 0;
         }
-        
-        return new Piece(pieceType, color, symbol);
     }
-    
+
     /**
-     * Updates the board state based on the current pieces array
+     * Works out the hasMoved flag for a piece materialised from a position
+     */
+    private static boolean hasMoved(int code, int square, int castlingRights) {
+        switch (Position.typeOf(code)) {
+            case Position.KING:
+            case Position.ROOK:
+                return (unmovedCastlingRights(code, square) & (castlingRights | castlingRights << 4)) == 0;
+            case Position.PAWN:
+                return square >>> 3 != (code == 0 ? 1 : 6);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Updates the board state (a full FEN string) based on the current pieces
+     * array and position. The stored string is only replaced if it changed.
      */
     public void updateBoardState() {
-        if (squares == null) {
+        if (squares == null && (position == null || positionStale)) {
             return;
         }
         
-        StringBuilder fen = new StringBuilder();
-        
-        for (int rank = 0; rank < 8; rank++) {
-            int emptyCount = 0;
-            
-            for (int file = 0; file < 8; file++) {
-                Piece piece = squares[rank][file];
-                
-                if (piece == null) {
-                    emptyCount++;
-                } else {
-                    if (emptyCount > 0) {
-                        fen.append(emptyCount);
-                        emptyCount = 0;
-                    }
-                    
-                    char pieceChar = getPieceChar(piece);
-                    fen.append(pieceChar);
-                }
-            }
-            
-            if (emptyCount > 0) {
-                fen.append(emptyCount);
-            }
-            
-            if (rank < 7) {
-                fen.append('/');
+        if (fenBuffer == null) {
+            fenBuffer = new char[Fen.MAX_LENGTH];
+        }
+        int length = Fen.write(getPosition(), fenBuffer);
+        if (!matches(boardState, fenBuffer, length)) {
+            this.boardState = new String(fenBuffer, 0, length);
+        }
+    }
+    
+    private static boolean matches(String s, char[] chars, int length) {
+        if (s == null || s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[i]) {
+                return false;
             }
         }
-        
-        this.boardState = fen.toString();
+        return true;
     }
     
     /**
-     * Converts a Piece object to its FEN character representation
-     * 
-     * @param piece The piece to convert
-     * @return The FEN character for the piece
+     * Records the current position for threefold repetition detection. Called
+     * after each move with the hash the position had before it. Only the
+     * positions since the last capture or pawn move are kept, since none of
+     * the earlier ones can occur again.
+     *
+     * @param previousHash The Zobrist hash of the position before the move
      */
-    private char getPieceChar(Piece piece) {
-        char pieceChar;
-        
-        switch (piece.getType()) {
-            case "pawn":
-                pieceChar = 'p';
-                break;
-            case "rook":
-                pieceChar = 'r';
-                break;
-            case "knight":
-                pieceChar = 'n';
-                break;
-            case "bishop":
-                pieceChar = 'b';
-                break;
-            case "queen":
-                pieceChar = 'q';
-                break;
-            case "king":
-                pieceChar = 'k';
-                break;
-            default:
-                return '.';
+    public void recordPosition(long previousHash) {
+        Position current = getPosition();
+        int halfmoves = current.getHalfmoveClock();
+        int count = halfmoves == 0 ? 0 : repetitionKeyCount();
+        // The first move recorded on a board also records where it started
+        boolean addPrevious = halfmoves > 0 && count == 0;
+        int keep = Math.min(count, halfmoves - (addPrevious ? 1 : 0));
+        int total = keep + (addPrevious ? 1 : 0) + 1;
+
+        byte[] keys = new byte[total * 8];
+        if (keep > 0) {
+            System.arraycopy(repetitionKeys, (count - keep) * 8, keys, 0, keep * 8);
         }
-        
-        if (piece.getColor().equals("white")) {
-            pieceChar = Character.toUpperCase(pieceChar);
+        if (addPrevious) {
+            writeKey(keys, keep, previousHash);
+        }
+        writeKey(keys, total - 1, current.getHash());
+        repetitionKeys = keys;
+    }
+
+    /**
+     * Counts how often the current position has occurred, as recorded by
+     * {@link #recordPosition(long)}
+     *
+     * @return The number of occurrences, including the current one (0 if
+     *         no move has been recorded yet)
+     */
+    public int countRepetitions() {
+        long hash = getPosition().getHash();
+        int occurrences = 0;
+        for (int i = repetitionKeyCount() - 1; i >= 0; i--) {
+            if (readKey(repetitionKeys, i) == hash) {
+                occurrences++;
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * Gets the hashes of the positions played before the current one since
+     * the last capture or pawn move, so a search can treat repeating one of
+     * them as a draw.
+     *
+     * @return The hashes, oldest first (empty if no move has been recorded)
+     */
+    public long[] getPositionHistory() {
+        int count = Math.max(0, repetitionKeyCount() - 1);
+        long[] history = new long[count];
+        for (int i = 0; i < count; i++) {
+            history[i] = readKey(repetitionKeys, i);
+        }
+        return history;
+    }
+
+    /**
+     * Gets the raw repetition keys, 8 bytes per position, for writing the
+     * board out. A new array is made each time a position is recorded, so
+     * the one returned is never changed afterwards.
+     *
+     * @return The keys, or null if no move has been recorded
+     */
+    public byte[] getRepetitionKeys() {
+        return repetitionKeys;
+    }
+
+    /**
+     * Restores the raw repetition keys, as saved from
+     * {@link #getRepetitionKeys()}. Call this after setBoardState, which
+     * clears them.
+     *
+     * @param repetitionKeys The keys (not copied), or null for none
+     */
+    public void setRepetitionKeys(byte[] repetitionKeys) {
+        this.repetitionKeys = repetitionKeys;
+    }
+
+    private int repetitionKeyCount() {
+        return repetitionKeys == null ? 0 : repetitionKeys.length / 8;
+    }
+
+    private static long readKey(byte[] keys, int index) {
+        long key = 0L;
+        for (int i = index * 8; i < index * 8 + 8; i++) {
+            key = key << 8 | (keys[i] & 0xFF);
+        }
+        return key;
+    }
+
+    private static void writeKey(byte[] keys, int index, long key) {
+        for (int i = index * 8 + 7; i >= index * 8; i--) {
+            keys[i] = (byte) key;
+            key >>>= 8;
         }
-        
-        return pieceChar;
     }
     
     /**
@@ -220,6 +370,7 @@ public class Board implements Serializable {
      */
     public void setSquares(Piece[][] squares) {
         this.squares = squares;
+        this.squaresEdited = true;
         updateBoardState();
     }
     
@@ -246,6 +397,10 @@ public class Board implements Serializable {
     
     public void setBoardState(String boardState) {
         this.boardState = boardState;
+        this.repetitionKeys = null;
+        this.positionStale = true;
+        this.squares = null;
+        this.squaresEdited = false;
     }
     
     public String getCurrentTurn() {
@@ -254,10 +409,13 @@ public class Board implements Serializable {
     
     public void setCurrentTurn(String currentTurn) {
         this.currentTurn = currentTurn;
+        if (position != null && !positionStale) {
+            position.setSideToMove(Position.colourOf(currentTurn));
+        }
     }
     
     // Method to toggle turn
     public void toggleTurn() {
-        this.currentTurn = this.currentTurn.equals("WHITE") ? "BLACK" : "WHITE";
+        setCurrentTurn(this.currentTurn.equals("WHITE") ? "BLACK" : "WHITE");
     }
 }
\ No newline at end of file
@@ -9,11 +9,15 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.FetchType;
+import jakarta.persistence.Transient;
 import java.util.List;
 import java.time.LocalDateTime;
 
 @Entity
 public class Game {
+    /** Player ID used for the side played by the engine */
+    public static final String COMPUTER_PLAYER = "computer";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -29,6 +33,14 @@ public class Game {
 
     @OneToMany(mappedBy = "game")
     private List<Move> moves;
+
+    // Every move played, packed 2 bytes each (see MoveList). Only ever
+    // appended to in SQL by the write-behind store, never written whole.
+    @Column(name = "move_data", length = 8192, insertable = false, updatable = false)
+    private byte[] moveData;
+
+    @Transient
+    private MoveList moveList;
     
     @OneToOne(mappedBy = "game", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Board board;
@@ -71,6 +83,37 @@ public class Game {
         this.updatedAt = LocalDateTime.now();
     }
 
+    /**
+     * Checks if the engine plays black in this game
+     *
+     * @return true for a game against the computer
+     */
+    public boolean isAgainstComputer() {
+        return COMPUTER_PLAYER.equals(blackPlayerId);
+    }
+
+    /**
+     * Gets the moves played, wrapping the stored column on first use;
+     * moves are decoded only as they are read
+     *
+     * @return The game's move list, which grows as moves are played
+     */
+    public MoveList getMoveList() {
+        if (moveList == null) {
+            moveList = new MoveList(moveData);
+        }
+        return moveList;
+    }
+
+    /**
+     * Replaces the move list, with one that is newer than the stored column
+     *
+     * @param moveList The moves played
+     */
+    public void setMoveList(MoveList moveList) {
+        this.moveList = moveList;
+    }
+
     // Getters and setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -4,24 +4,42 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
+import com.checkmate.utils.Bitboards;
+import com.checkmate.utils.Moves;
 import java.time.LocalDateTime;
 
+/**
+ * One move of a game as a row of its own. A game's moves are kept packed in
+ * {@link Game#getMoveList()}; these rows are an optional view of the same
+ * moves for queries and APIs that want them one by one, written only while
+ * checkmate.persistence.move-rows is on.
+ */
 @Entity
-@Table(name = "moves")
+// A game's history is read as a range of plies, straight off this index in order
+@Table(name = "moves", indexes = @Index(name = "idx_moves_game_ply", columnList = "game_id, ply", unique = true))
 public class Move {
     
+    // Ids come from a sequence handed out in blocks of 50, so Hibernate can
+    // batch the inserts instead of reading back an identity per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "move_seq")
+    @SequenceGenerator(name = "move_seq", sequenceName = "move_seq", allocationSize = 50)
     private Integer id;
     
     @ManyToOne
     @JoinColumn(name = "game_id", nullable = false)
     private Game game;
     
+    // 1 for white's first move; null on rows written before plies were stored
+    @Column(name = "ply")
+    private Integer ply;
+    
     @Column(name = "from_row")
     private int fromRow;
     
@@ -55,14 +73,28 @@ public class Move {
         // Generate chess notation like "e2e4" or "a7a8q" for promotion
         this.moveNotation = generateNotation(fromRow, fromCol, toRow, toCol);
     }
+
+    /**
+     * Derives the row for an encoded move. The notation includes the
+     * promoted piece, e.g. "a7a8q".
+     *
+     * @param game The game the move was played in
+     * @param move The encoded move (see {@link Moves})
+     */
+    public Move(Game game, int move) {
+        this.game = game;
+        this.fromRow = Bitboards.row(Moves.from(move));
+        this.fromCol = Bitboards.col(Moves.from(move));
+        this.toRow = Bitboards.row(Moves.to(move));
+        this.toCol = Bitboards.col(Moves.to(move));
+        this.createdAt = LocalDateTime.now();
+        this.moveNotation = Moves.toUci(move);
+    }
     
     private String generateNotation(int fromRow, int fromCol, int toRow, int toCol) {
-        char fromFile = (char) ('a' + fromCol);
-        char toFile = (char) ('a' + toCol);
-        int fromRank = 8 - fromRow;
-        int toRank = 8 - toRow;
-        
-        return String.format("%c%d%c%d", fromFile, fromRank, toFile, toRank);
+        return new String(new char[] {
+            (char) ('a' + fromCol), (char) ('8' - fromRow), (char) ('a' + toCol), (char) ('8' - toRow)
+        });
     }
     
     // Getters and setters
@@ -82,6 +114,14 @@ public class Move {
         this.game = game;
     }
     
+    public Integer getPly() {
+        return ply;
+    }
+    
+    public void setPly(Integer ply) {
+        this.ply = ply;
+    }
+    
     public int getFromRow() {
         return fromRow;
     }
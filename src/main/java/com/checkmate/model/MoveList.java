@@ -0,0 +1,113 @@
+package com.checkmate.model;
+
+import java.util.Arrays;
+
+/**
+ * A game's moves in the order played, packed two bytes to a move in the
+ * 16-bit encoding of {@link com.checkmate.utils.Moves} (big-endian). This is
+ * the form a game's move history is stored in, as one binary column on
+ * {@link Game}.
+ *
+ * A list wraps the stored bytes as they are and decodes a move only when it
+ * is asked for. Adding a move grows the buffer by doubling, so playing a
+ * game out costs amortised constant time per move.
+ */
+public final class MoveList {
+
+    /** Bytes taken by each move */
+    public static final int MOVE_BYTES = 2;
+
+    private byte[] data;
+    private int size;
+
+    /**
+     * Creates an empty list
+     */
+    public MoveList() {
+        this(null);
+    }
+
+    /**
+     * Wraps stored moves without decoding or copying them
+     *
+     * @param data The packed moves, or null for none (not copied, so must not
+     *             be changed)
+     */
+    public MoveList(byte[] data) {
+        this.data = data != null ? data : new byte[0];
+        this.size = this.data.length / MOVE_BYTES;
+    }
+
+    /**
+     * Packs a single move
+     *
+     * @param move The encoded move
+     * @return Its two bytes
+     */
+    public static byte[] pack(int move) {
+        return new byte[] {(byte) (move >>> 8), (byte) move};
+    }
+
+    /**
+     * Gets the number of moves
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Decodes one move
+     *
+     * @param index The move's index (0 for white's first move)
+     * @return The encoded move
+     * @throws IndexOutOfBoundsException If there is no move at that index
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + size);
+        }
+        int offset = index * MOVE_BYTES;
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Adds a move to the end of the list
+     *
+     * @param move The encoded move
+     */
+    public void add(int move) {
+        int offset = size * MOVE_BYTES;
+        if (offset == data.length) {
+            data = Arrays.copyOf(data, Math.max(64, data.length * 2));
+        }
+        data[offset] = (byte) (move >>> 8);
+        data[offset + 1] = (byte) move;
+        size++;
+    }
+
+    /**
+     * Decodes every move
+     *
+     * @return The encoded moves, in order
+     */
+    public int[] toArray() {
+        int[] moves = new int[size];
+        for (int i = 0; i < size; i++) {
+            moves[i] = get(i);
+        }
+        return moves;
+    }
+
+    /**
+     * Gets the packed moves, as stored
+     *
+     * @return A copy exactly {@link #MOVE_BYTES} per move long
+     */
+    public byte[] toBytes() {
+        return Arrays.copyOf(data, size * MOVE_BYTES);
+    }
+}
@@ -4,13 +4,23 @@ import java.io.Serializable;
 
 /**
  * Represents a chess piece with its type, color, and movement state.
- * This is a transient class (not persisted directly to database) used for game logic.
+ * This is a transient class (not persisted directly to database) used for the
+ * game view; the rules code works on the piece codes held by {@link Position}.
  */
 public class Piece implements Serializable {
+    private static final String[] TYPES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+    private static final String[] SYMBOLS = {
+        "♙", "♘", "♗", "♖", "♕", "♔",
+        "♟", "♞", "♝", "♜", "♛", "♚"
+    };
+    private static final int UNKNOWN = -2;
+
     private String type;
     private String color;
     private String symbol;
     private boolean hasMoved;
+    // Position piece code, worked out from type and color on first use
+    private int code = UNKNOWN;
     
     /**
      * Default constructor
@@ -31,6 +41,35 @@ public class Piece implements Serializable {
         this.symbol = symbol;
         this.hasMoved = false;
     }
+
+    /**
+     * Create a new chess piece from a position piece code
+     *
+     * @param code The piece code (see {@link Position#pieceCode(int, int)})
+     */
+    public Piece(int code) {
+        this(TYPES[Position.typeOf(code)], Position.colourOf(code) == Position.WHITE ? "white" : "black", SYMBOLS[code]);
+        this.code = code;
+    }
+
+    /**
+     * Get the position piece code for this piece
+     *
+     * @return The piece code, or Position.NO_PIECE if the type is not recognised
+     */
+    public int getCode() {
+        if (code == UNKNOWN) {
+            int pieceType = -1;
+            for (int i = 0; i < TYPES.length; i++) {
+                if (TYPES[i].equals(type)) {
+                    pieceType = i;
+                    break;
+                }
+            }
+            code = pieceType < 0 ? Position.NO_PIECE : Position.pieceCode(Position.colourOf(color), pieceType);
+        }
+        return code;
+    }
     
     /**
      * Get the type of piece
@@ -48,6 +87,7 @@ public class Piece implements Serializable {
      */
     public void setType(String type) {
         this.type = type;
+        this.code = UNKNOWN;
     }
     
     /**
@@ -66,6 +106,7 @@ public class Piece implements Serializable {
      */
     public void setColor(String color) {
         this.color = color;
+        this.code = UNKNOWN;
     }
     
     /**
@@ -0,0 +1,609 @@
+package com.checkmate.model;
+
+import com.checkmate.utils.Fen;
+import com.checkmate.utils.Moves;
+import com.checkmate.utils.PieceSquare;
+import com.checkmate.utils.Zobrist;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a chess position used by the rules code.
+ * Holds one 64-bit mask per piece type and colour plus occupancy masks, so
+ * move validation and attack detection work on primitive longs instead of
+ * Piece objects. A byte-per-square mailbox of piece codes sits alongside the
+ * bitboards so "what is on this square" is a single array read. This is a
+ * transient class (not persisted directly to database); Board produces it
+ * from its boardState.
+ *
+ * Squares are numbered 0-63 from a1 to h8 (see {@link com.checkmate.utils.Bitboards}).
+ *
+ * The position also carries a Zobrist hash (see {@link Zobrist}) that is kept
+ * up to date as pieces are placed and moves are made, so it can be used as a
+ * cheap identity for caching and repetition detection. In the same way it
+ * keeps running sums of the pieces' material and piece-square values and of
+ * the game phase (see {@link PieceSquare}), so the engine's evaluation does
+ * not have to look at every piece.
+ */
+public class Position implements Serializable {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    public static final int NO_PIECE = -1;
+
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    private static final String PIECE_CHARS = "PNBRQKpnbrqk";
+    private static final int INITIAL_UNDO_CAPACITY = 128;
+
+    private final long[] pieces = new long[12];
+    private final long[] colours = new long[2];
+    private final byte[] mailbox = new byte[64];
+    private long occupied;
+    private int sideToMove = WHITE;
+    private int castlingRights;
+    private int enPassantSquare = -1;
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+    private long hash;
+    // En passant key currently folded into the hash (0 when no capture is possible)
+    private long enPassantKey;
+    // Packed midgame/endgame material and piece-square sum, and game phase
+    private int pieceSquareScore;
+    private int phase;
+
+    // Undo records for makeMove/unmakeMove: castling rights (bits 0-3),
+    // en passant square + 1 (bits 4-10), captured piece + 1 (bits 11-14)
+    // and halfmove clock (bits 15-30), with the hash before each move alongside
+    private long[] undoStack = new long[INITIAL_UNDO_CAPACITY];
+    private long[] hashStack = new long[INITIAL_UNDO_CAPACITY];
+    private int undoCount;
+
+    /**
+     * Creates an empty position with white to move
+     */
+    public Position() {
+        Arrays.fill(mailbox, (byte) NO_PIECE);
+    }
+
+    /**
+     * Builds a position from the piece placement field of a FEN string.
+     * Castling rights are granted wherever a king and rook stand on their
+     * starting squares.
+     *
+     * @param placement The FEN piece placement (e.g. "rnbqkbnr/pppppppp/8/...")
+     * @param sideToMove The colour to move (WHITE or BLACK)
+     * @return The parsed position
+     * @throws IllegalArgumentException If the placement is not valid FEN
+     */
+    public static Position fromPlacement(String placement, int sideToMove) {
+        Position position = new Position();
+        Fen.parse(placement, position);
+        position.setSideToMove(sideToMove);
+        return position;
+    }
+
+    /**
+     * Builds a position from a full FEN string. Missing trailing fields fall
+     * back to their defaults (see {@link Fen}).
+     *
+     * @param fen The FEN string
+     * @return The parsed position
+     * @throws IllegalArgumentException If the string is not valid FEN
+     */
+    public static Position fromFen(String fen) {
+        Position position = new Position();
+        Fen.parse(fen, position);
+        return position;
+    }
+
+    /**
+     * Writes the full six-field FEN string for this position.
+     *
+     * @return The FEN string
+     */
+    public String toFen() {
+        char[] buffer = new char[Fen.MAX_LENGTH];
+        return new String(buffer, 0, Fen.write(this, buffer));
+    }
+
+    /**
+     * Writes the piece placement field of a FEN string for this position.
+     *
+     * @return The FEN piece placement
+     */
+    public String toPlacement() {
+        char[] buffer = new char[Fen.MAX_LENGTH];
+        return new String(buffer, 0, Fen.writePlacement(this, buffer, 0));
+    }
+
+    /**
+     * Empties the board and resets every other field to its starting value
+     * (white to move, no castling rights or en passant square, clocks 0 and 1),
+     * dropping the undo history.
+     */
+    public void clear() {
+        Arrays.fill(pieces, 0L);
+        colours[WHITE] = 0L;
+        colours[BLACK] = 0L;
+        occupied = 0L;
+        Arrays.fill(mailbox, (byte) NO_PIECE);
+        sideToMove = WHITE;
+        castlingRights = 0;
+        enPassantSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        hash = 0L;
+        enPassantKey = 0L;
+        pieceSquareScore = 0;
+        phase = 0;
+        undoCount = 0;
+    }
+
+    /**
+     * Creates an independent copy of this position. The undo history is
+     * not copied, so moves made before the copy cannot be taken back on it.
+     *
+     * @return The copy
+     */
+    public Position copy() {
+        Position copy = new Position();
+        System.arraycopy(pieces, 0, copy.pieces, 0, pieces.length);
+        copy.colours[WHITE] = colours[WHITE];
+        copy.colours[BLACK] = colours[BLACK];
+        System.arraycopy(mailbox, 0, copy.mailbox, 0, 64);
+        copy.occupied = occupied;
+        copy.sideToMove = sideToMove;
+        copy.castlingRights = castlingRights;
+        copy.enPassantSquare = enPassantSquare;
+        copy.halfmoveClock = halfmoveClock;
+        copy.fullmoveNumber = fullmoveNumber;
+        copy.hash = hash;
+        copy.enPassantKey = enPassantKey;
+        copy.pieceSquareScore = pieceSquareScore;
+        copy.phase = phase;
+        return copy;
+    }
+
+    /**
+     * Moves a piece given only its squares, as submitted through the
+     * row/column API. Captures, castling (a king moving two files), en passant
+     * and promotion (to a queen) are worked out from the position. The side to
+     * move is not changed.
+     *
+     * @param from The square of the piece to move
+     * @param to The destination square
+     */
+    public void applyMove(int from, int to) {
+        int move = Moves.infer(this, from, to, QUEEN);
+        if (move != Moves.NONE) {
+            playMove(move);
+            refreshEnPassantKey();
+        }
+    }
+
+    /**
+     * Plays an encoded move (see {@link Moves}) and passes the turn to the
+     * other side. The move is assumed to be legal in this position. An undo
+     * record is pushed so the move can be taken back with
+     * {@link #unmakeMove(int)}; nothing is allocated unless the undo stack
+     * has to grow.
+     *
+     * @param move The encoded move
+     */
+    public void makeMove(int move) {
+        long undo = castlingRights
+                | (long) (enPassantSquare + 1) << 4
+                | (long) halfmoveClock << 15;
+        long hashBefore = hash;
+        int captured = playMove(move);
+        undo |= (long) (captured + 1) << 11;
+
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+            hashStack = Arrays.copyOf(hashStack, hashStack.length * 2);
+        }
+        undoStack[undoCount] = undo;
+        hashStack[undoCount++] = hashBefore;
+
+        if (sideToMove == BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove ^= 1;
+        hash ^= Zobrist.side();
+        refreshEnPassantKey();
+    }
+
+    /**
+     * Takes back the last move played with {@link #makeMove(int)}, restoring
+     * the pieces, castling rights, en passant square, clocks and hash from
+     * the undo record.
+     *
+     * @param move The move being taken back (must be the last move made)
+     */
+    public void unmakeMove(int move) {
+        long undo = undoStack[--undoCount];
+        long hashBefore = hashStack[undoCount];
+        sideToMove ^= 1;
+        if (sideToMove == BLACK) {
+            fullmoveNumber--;
+        }
+
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int flags = Moves.flags(move);
+        int colour = sideToMove;
+
+        int moved = pieceAt(to);
+        removePiece(moved, to);
+        putPiece(Moves.isPromotion(move) ? pieceCode(colour, PAWN) : moved, from);
+
+        if (flags == Moves.KING_CASTLE || flags == Moves.QUEEN_CASTLE) {
+            int rookFrom = flags == Moves.KING_CASTLE ? from + 3 : from - 4;
+            int rookTo = flags == Moves.KING_CASTLE ? to - 1 : to + 1;
+            int rook = pieceCode(colour, ROOK);
+            removePiece(rook, rookTo);
+            putPiece(rook, rookFrom);
+        }
+
+        int captured = (int) (undo >>> 11 & 0xF) - 1;
+        if (captured != NO_PIECE) {
+            int capturedSquare = flags == Moves.EN_PASSANT ? (colour == WHITE ? to - 8 : to + 8) : to;
+            putPiece(captured, capturedSquare);
+        }
+
+        castlingRights = (int) (undo & 0xF);
+        enPassantSquare = (int) (undo >>> 4 & 0x7F) - 1;
+        halfmoveClock = (int) (undo >>> 15 & 0xFFFF);
+        enPassantKey = Zobrist.enPassant(enPassantSquare, sideToMove, this);
+        hash = hashBefore;
+    }
+
+    /**
+     * Passes the turn without moving, for the engine's null-move pruning.
+     * The en passant square is cleared and the halfmove clock restarts, so a
+     * repetition is never found across the null move. Taken back with
+     * {@link #unmakeNullMove()}.
+     */
+    public void makeNullMove() {
+        long undo = castlingRights
+                | (long) (enPassantSquare + 1) << 4
+                | (long) halfmoveClock << 15;
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+            hashStack = Arrays.copyOf(hashStack, hashStack.length * 2);
+        }
+        undoStack[undoCount] = undo;
+        hashStack[undoCount++] = hash;
+
+        enPassantSquare = -1;
+        halfmoveClock = 0;
+        sideToMove ^= 1;
+        hash ^= Zobrist.side();
+        refreshEnPassantKey();
+    }
+
+    /**
+     * Takes back a null move played with {@link #makeNullMove()}
+     */
+    public void unmakeNullMove() {
+        long undo = undoStack[--undoCount];
+        sideToMove ^= 1;
+        enPassantSquare = (int) (undo >>> 4 & 0x7F) - 1;
+        halfmoveClock = (int) (undo >>> 15 & 0xFFFF);
+        enPassantKey = Zobrist.enPassant(enPassantSquare, sideToMove, this);
+        hash = hashStack[undoCount];
+    }
+
+    /**
+     * Moves the pieces for an encoded move and updates castling rights, the
+     * en passant square and the halfmove clock. The hash covers the pieces
+     * and castling rights on return; the caller refreshes the en passant key.
+     *
+     * @param move The encoded move
+     * @return The piece code that was captured, or NO_PIECE
+     */
+    private int playMove(int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int flags = Moves.flags(move);
+        int piece = pieceAt(from);
+        int colour = colourOf(piece);
+        int captured = NO_PIECE;
+
+        halfmoveClock++;
+        if (flags == Moves.EN_PASSANT) {
+            int capturedSquare = colour == WHITE ? to - 8 : to + 8;
+            captured = pieceCode(colour ^ 1, PAWN);
+            removePiece(captured, capturedSquare);
+        } else if ((flags & Moves.CAPTURE) != 0) {
+            captured = pieceAt(to);
+            if (captured != NO_PIECE) {
+                removePiece(captured, to);
+            }
+        }
+        if ((flags & Moves.CAPTURE) != 0 || typeOf(piece) == PAWN) {
+            halfmoveClock = 0;
+        }
+
+        removePiece(piece, from);
+        putPiece(Moves.isPromotion(move) ? pieceCode(colour, Moves.promotionType(move)) : piece, to);
+
+        if (flags == Moves.KING_CASTLE || flags == Moves.QUEEN_CASTLE) {
+            int rookFrom = flags == Moves.KING_CASTLE ? from + 3 : from - 4;
+            int rookTo = flags == Moves.KING_CASTLE ? to - 1 : to + 1;
+            int rook = pieceCode(colour, ROOK);
+            if ((pieces[rook] & (1L << rookFrom)) != 0) {
+                removePiece(rook, rookFrom);
+                putPiece(rook, rookTo);
+            }
+        }
+
+        enPassantSquare = flags == Moves.DOUBLE_PUSH ? (from + to) >>> 1 : -1;
+        int rights = castlingRights & castlingMask(from) & castlingMask(to);
+        if (rights != castlingRights) {
+            hash ^= Zobrist.castling(castlingRights) ^ Zobrist.castling(rights);
+            castlingRights = rights;
+        }
+        return captured;
+    }
+
+    /**
+     * Places a piece on an empty square
+     *
+     * @param piece The piece code (see {@link #pieceCode(int, int)})
+     * @param square The square index
+     */
+    public void putPiece(int piece, int square) {
+        long b = 1L << square;
+        pieces[piece] |= b;
+        colours[colourOf(piece)] |= b;
+        occupied |= b;
+        mailbox[square] = (byte) piece;
+        hash ^= Zobrist.piece(piece, square);
+        pieceSquareScore += PieceSquare.score(piece, square);
+        phase += PieceSquare.phase(piece);
+    }
+
+    /**
+     * Removes a piece from a square
+     *
+     * @param piece The piece code standing on the square
+     * @param square The square index
+     */
+    public void removePiece(int piece, int square) {
+        long b = ~(1L << square);
+        pieces[piece] &= b;
+        colours[colourOf(piece)] &= b;
+        occupied &= b;
+        mailbox[square] = (byte) NO_PIECE;
+        hash ^= Zobrist.piece(piece, square);
+        pieceSquareScore -= PieceSquare.score(piece, square);
+        phase -= PieceSquare.phase(piece);
+    }
+
+    /**
+     * Gets the piece standing on a square
+     *
+     * @param square The square index
+     * @return The piece code, or NO_PIECE if the square is empty
+     */
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    /**
+     * Gets the square of a colour's king
+     *
+     * @param colour WHITE or BLACK
+     * @return The king square, or -1 if that side has no king
+     */
+    public int kingSquare(int colour) {
+        long king = pieces[pieceCode(colour, KING)];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    /**
+     * Gets the bitboard of one piece type and colour
+     *
+     * @param colour WHITE or BLACK
+     * @param type The piece type (PAWN to KING)
+     * @return The bitboard of matching pieces
+     */
+    public long pieces(int colour, int type) {
+        return pieces[pieceCode(colour, type)];
+    }
+
+    /**
+     * Gets the bitboard of all pieces of one colour
+     *
+     * @param colour WHITE or BLACK
+     * @return The colour occupancy bitboard
+     */
+    public long colour(int colour) {
+        return colours[colour];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(int sideToMove) {
+        if (sideToMove != this.sideToMove) {
+            hash ^= Zobrist.side();
+            this.sideToMove = sideToMove;
+        }
+        refreshEnPassantKey();
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public void setCastlingRights(int castlingRights) {
+        hash ^= Zobrist.castling(this.castlingRights) ^ Zobrist.castling(castlingRights);
+        this.castlingRights = castlingRights;
+    }
+
+    /**
+     * Gets the square a pawn may capture en passant on
+     *
+     * @return The square skipped by the last double pawn push, or -1
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public void setEnPassantSquare(int enPassantSquare) {
+        this.enPassantSquare = enPassantSquare;
+        refreshEnPassantKey();
+    }
+
+    /**
+     * Gets the Zobrist hash of this position, covering the pieces, side to
+     * move, castling rights and en passant file
+     *
+     * @return The 64-bit hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the running material and piece-square sum, from white's point of
+     * view, packed as described in {@link PieceSquare}
+     *
+     * @return The packed midgame and endgame score
+     */
+    public int getPieceSquareScore() {
+        return pieceSquareScore;
+    }
+
+    /**
+     * Gets the game phase: {@link PieceSquare#MAX_PHASE} with all pieces on
+     * the board, falling towards 0 as they are traded (it can go above the
+     * maximum after promotions)
+     *
+     * @return The phase
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public void setFullmoveNumber(int fullmoveNumber) {
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * Encodes a colour and piece type as a single piece code (0-11)
+     *
+     * @param colour WHITE or BLACK
+     * @param type The piece type (PAWN to KING)
+     * @return The piece code
+     */
+    public static int pieceCode(int colour, int type) {
+        return colour * 6 + type;
+    }
+
+    public static int colourOf(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    public static int typeOf(int piece) {
+        return piece < 6 ? piece : piece - 6;
+    }
+
+    /**
+     * Parses a colour name as used by Piece and Board ("white", "BLACK", ...)
+     *
+     * @param color The colour name
+     * @return WHITE or BLACK
+     */
+    public static int colourOf(String color) {
+        return "black".equalsIgnoreCase(color) ? BLACK : WHITE;
+    }
+
+    /**
+     * Gets the FEN character for a piece code
+     *
+     * @param piece The piece code
+     * @return The FEN character (upper case for white)
+     */
+    public static char pieceChar(int piece) {
+        return PIECE_CHARS.charAt(piece);
+    }
+
+    /**
+     * Gets the castling rights implied by kings and rooks standing on their
+     * starting squares
+     *
+     * @return The castling rights bits
+     */
+    public int homeSquareCastlingRights() {
+        int rights = 0;
+        if ((pieces[pieceCode(WHITE, KING)] & (1L << 4)) != 0) {
+            if ((pieces[pieceCode(WHITE, ROOK)] & (1L << 7)) != 0) rights |= WHITE_KINGSIDE;
+            if ((pieces[pieceCode(WHITE, ROOK)] & 1L) != 0) rights |= WHITE_QUEENSIDE;
+        }
+        if ((pieces[pieceCode(BLACK, KING)] & (1L << 60)) != 0) {
+            if ((pieces[pieceCode(BLACK, ROOK)] & (1L << 63)) != 0) rights |= BLACK_KINGSIDE;
+            if ((pieces[pieceCode(BLACK, ROOK)] & (1L << 56)) != 0) rights |= BLACK_QUEENSIDE;
+        }
+        return rights;
+    }
+
+    // Re-derives the en passant key, since whether it counts depends on the
+    // side to move having a pawn that can capture
+    private void refreshEnPassantKey() {
+        long key = Zobrist.enPassant(enPassantSquare, sideToMove, this);
+        hash ^= enPassantKey ^ key;
+        enPassantKey = key;
+    }
+
+    private static int castlingMask(int square) {
+        switch (square) {
+            case 0:
+                return ~WHITE_QUEENSIDE;
+            case 4:
+                return ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+            case 7:
+                return ~WHITE_KINGSIDE;
+            case 56:
+                return ~BLACK_QUEENSIDE;
+            case 60:
+                return ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+            case 63:
+                return ~BLACK_KINGSIDE;
+            default:
+                return ~0;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.checkmate.persistence;
+
+import com.checkmate.model.Game;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of the games in progress, by id. A cached game carries its
+ * live Board with the position already parsed, so a move request needs no
+ * database read and no FEN parsing. Entries are kept in access order: when
+ * the cache is full the least recently used game goes, and games left
+ * untouched for longer than the idle time are dropped as the cache is used.
+ *
+ * A game that is not cached is loaded through {@link #getOrLoad}, once
+ * however many requests for it miss at the same time, so they all share
+ * one Game and its board.
+ *
+ * Hits, misses and evictions are counted for monitoring. All methods are
+ * thread-safe.
+ */
+public final class ActiveGameCache {
+
+    private final int maxGames;
+    private final long idleNanos;
+    private final LongSupplier clock;
+    // Least recently used first
+    private final LinkedHashMap<Long, Entry> games = new LinkedHashMap<>(16, 0.75f, true);
+    // The loads in progress, by game id, for the requests that miss meanwhile
+    private final Map<Long, CompletableFuture<Game>> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache
+     *
+     * @param maxGames The most games held at once
+     * @param idleMillis How long a game may go unused before it is dropped
+     */
+    public ActiveGameCache(int maxGames, long idleMillis) {
+        this(maxGames, idleMillis, System::nanoTime);
+    }
+
+    /**
+     * Creates a cache with its own clock, for tests
+     *
+     * @param maxGames The most games held at once
+     * @param idleMillis How long a game may go unused before it is dropped
+     * @param clock The time in nanoseconds
+     */
+    ActiveGameCache(int maxGames, long idleMillis, LongSupplier clock) {
+        this.maxGames = Math.max(1, maxGames);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Gets a cached game, counting a hit or a miss
+     *
+     * @param id The game's id
+     * @return The game with its live board, or null if it is not cached
+     */
+    public synchronized Game get(long id) {
+        long now = clock.getAsLong();
+        evictIdle(now);
+        Entry entry = games.get(id);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastUsed = now;
+        return entry.game;
+    }
+
+    /**
+     * Gets a cached game or loads it, counting a hit or a miss. The first
+     * request to miss loads the game, outside the cache's lock; requests
+     * for the same game that miss while it loads wait for it and get the
+     * same Game. A loaded game still in progress is cached, unless it was
+     * removed while it loaded.
+     *
+     * @param id The game's id
+     * @param loader Loads the game, with its live board set, or returns null
+     *               if there is none with that id
+     * @return The game, or null if there is none
+     */
+    public Game getOrLoad(long id, LongFunction<Game> loader) {
+        CompletableFuture<Game> load;
+        boolean loads;
+        synchronized (this) {
+            Game game = get(id);
+            if (game != null) {
+                return game;
+            }
+            load = loading.get(id);
+            loads = load == null;
+            if (loads) {
+                load = new CompletableFuture<>();
+                loading.put(id, load);
+            }
+        }
+        if (!loads) {
+            return await(load);
+        }
+        Game game;
+        try {
+            game = loader.apply(id);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                loading.remove(id, load);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            if (loading.remove(id, load) && game != null && "ACTIVE".equals(game.getStatus())) {
+                put(game);
+            }
+        }
+        load.complete(game);
+        return game;
+    }
+
+    /**
+     * Caches a game, which must have its id and live board set. The least
+     * recently used game is evicted if the cache is full.
+     *
+     * @param game The game
+     */
+    public synchronized void put(Game game) {
+        long now = clock.getAsLong();
+        evictIdle(now);
+        games.put(game.getId(), new Entry(game, now));
+        Iterator<Entry> oldest = games.values().iterator();
+        while (games.size() > maxGames) {
+            oldest.next();
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops a game, such as one that has finished
+     *
+     * @param id The game's id
+     */
+    public synchronized void remove(long id) {
+        games.remove(id);
+        // A load under way would cache what it read before the change
+        loading.remove(id);
+    }
+
+    public synchronized int size() {
+        return games.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of games dropped for lack of room or for being idle
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the share of lookups that found the game cached
+     *
+     * @return The hit rate between 0 and 1 (0 before any lookup)
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ActiveGameCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                games.size(), maxGames, hits, misses, evictions);
+    }
+
+    // Waits, without the lock, for another request's load of a game
+    private static Game await(CompletableFuture<Game> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Idle games are at the front, since the order is by last use
+    private void evictIdle(long now) {
+        Iterator<Map.Entry<Long, Entry>> oldest = games.entrySet().iterator();
+        while (oldest.hasNext()) {
+            if (now - oldest.next().getValue().lastUsed < idleNanos) {
+                return;
+            }
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    private static final class Entry {
+        private final Game game;
+        private long lastUsed;
+
+        Entry(Game game, long lastUsed) {
+            this.game = game;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.checkmate.persistence;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+
+/**
+ * The full state of a game's board at some ply: enough to carry on the game
+ * from there, including the repetition history
+ */
+public final class BoardSnapshot {
+
+    private final long gameId;
+    private final int boardId;
+    private final int ply;
+    private final String boardState;
+    private final String currentTurn;
+    private final byte[] repetitionKeys;
+
+    /**
+     * Creates a snapshot
+     *
+     * @param gameId The game's id
+     * @param boardId The id of the game's board
+     * @param ply The number of plies played
+     * @param boardState The board's FEN
+     * @param currentTurn The side to move ("WHITE" or "BLACK")
+     * @param repetitionKeys The board's repetition keys (not copied), or null
+     */
+    public BoardSnapshot(long gameId, int boardId, int ply, String boardState, String currentTurn,
+                         byte[] repetitionKeys) {
+        this.gameId = gameId;
+        this.boardId = boardId;
+        this.ply = ply;
+        this.boardState = boardState;
+        this.currentTurn = currentTurn;
+        this.repetitionKeys = repetitionKeys;
+    }
+
+    /**
+     * Takes a snapshot of a board as stored in the database, working out the
+     * ply from its move counter and side to move
+     *
+     * @param gameId The game's id
+     * @param boardId The board's id
+     * @param boardState The stored FEN
+     * @param currentTurn The stored side to move
+     * @param repetitionKeys The stored repetition keys, or null
+     * @return The snapshot
+     */
+    public static BoardSnapshot fromStored(long gameId, int boardId, String boardState, String currentTurn,
+                                           byte[] repetitionKeys) {
+        BoardSnapshot snapshot = new BoardSnapshot(gameId, boardId, 0, boardState, currentTurn, repetitionKeys);
+        return new BoardSnapshot(gameId, boardId, plyOf(snapshot.toBoard().getPosition()),
+                boardState, currentTurn, repetitionKeys);
+    }
+
+    /**
+     * Takes a snapshot of the board after an accepted move
+     *
+     * @param record The move, which must carry the board state
+     * @return The snapshot
+     */
+    public static BoardSnapshot of(MoveRecord record) {
+        return new BoardSnapshot(record.getGameId(), record.getBoardId(), record.getPly(),
+                record.getBoardState(), record.getCurrentTurn(), record.getRepetitionKeys());
+    }
+
+    /**
+     * Gets the number of plies played to reach a position in a game from
+     * the starting position, from its move counter and side to move
+     *
+     * @param position The position
+     * @return The ply (0 at the start)
+     */
+    public static int plyOf(Position position) {
+        return (position.getFullmoveNumber() - 1) * 2 + (position.getSideToMove() == Position.BLACK ? 1 : 0);
+    }
+
+    /**
+     * Makes a detached board in this state
+     *
+     * @return A new board, not attached to any game
+     */
+    public Board toBoard() {
+        Board board = new Board();
+        board.setBoardState(boardState);
+        board.setCurrentTurn(currentTurn);
+        board.setRepetitionKeys(repetitionKeys);
+        board.setId(boardId);
+        return board;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public int getBoardId() {
+        return boardId;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public String getBoardState() {
+        return boardState;
+    }
+
+    public String getCurrentTurn() {
+        return currentTurn;
+    }
+
+    public byte[] getRepetitionKeys() {
+        return repetitionKeys;
+    }
+}
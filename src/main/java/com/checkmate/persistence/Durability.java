@@ -0,0 +1,32 @@
+package com.checkmate.persistence;
+
+import java.util.Locale;
+
+/**
+ * How far a move must have got before {@link WriteBehindStore} accepts it,
+ * which decides what a crash can lose of the moves not yet written to the
+ * database
+ */
+public enum Durability {
+    /** Held in memory only; a crash loses everything not yet flushed */
+    MEMORY,
+    /** Written to the journal; survives the process dying but not the machine */
+    LOG,
+    /** Written to the journal and forced to disk, in a group commit; survives a power cut */
+    FSYNC;
+
+    /**
+     * Reads a durability setting, ignoring case
+     *
+     * @param name memory, log or fsync
+     * @return The durability
+     * @throws IllegalArgumentException If the name is not one of those
+     */
+    public static Durability parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown durability '" + name + "', expected memory, log or fsync");
+        }
+    }
+}
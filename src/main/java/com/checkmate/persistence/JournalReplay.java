@@ -0,0 +1,64 @@
+package com.checkmate.persistence;
+
+import com.checkmate.model.Board;
+import com.checkmate.utils.ChessUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds a game from the journal after a restart. The game's state is
+ * taken from whichever is further on, its board as stored in the database or
+ * its latest snapshot, and the journal's moves after that are played on it.
+ * Every journalled move the database does not have yet is returned to be
+ * written, the last one carrying the recovered board state.
+ */
+public final class JournalReplay {
+
+    private JournalReplay() {
+    }
+
+    /**
+     * Recovers one game
+     *
+     * @param stored The game's board as stored in the database
+     * @param snapshot The game's latest snapshot, or null if it has none
+     * @param entries The game's journal entries, oldest first
+     * @return The moves to write to the database, oldest first; empty if the
+     *         database is up to date
+     */
+    public static List<MoveRecord> recover(BoardSnapshot stored, BoardSnapshot snapshot, List<MoveJournal.Entry> entries) {
+        BoardSnapshot base = stored;
+        if (snapshot != null && snapshot.getBoardId() == stored.getBoardId() && snapshot.getPly() > stored.getPly()) {
+            base = snapshot;
+        }
+        Board board = base.toBoard();
+        int ply = base.getPly();
+        List<MoveRecord> records = new ArrayList<>();
+        for (MoveJournal.Entry entry : entries) {
+            if (entry.getPly() <= stored.getPly()) {
+                continue;
+            }
+            if (entry.getPly() < base.getPly()) {
+                // In the snapshot but not yet in the database: only the move row is missing
+                records.add(new MoveRecord(entry.getGameId(), entry.getBoardId(), entry.getPly(), entry.getMove(),
+                        entry.getCreatedAt(), null, null, null));
+                continue;
+            }
+            if (entry.getPly() == base.getPly()) {
+                records.add(new MoveRecord(entry.getGameId(), entry.getBoardId(), entry.getPly(), entry.getMove(),
+                        entry.getCreatedAt(), base.getBoardState(), base.getCurrentTurn(), base.getRepetitionKeys()));
+                continue;
+            }
+            // A gap or a move that does not fit means the rest cannot be trusted
+            if (entry.getPly() != ply + 1 || !ChessUtils.isLegalMove(board.getPosition(), entry.getMove())) {
+                break;
+            }
+            ChessUtils.makeMove(board, entry.getMove());
+            ply++;
+            records.add(new MoveRecord(entry.getGameId(), entry.getBoardId(), ply, entry.getMove(),
+                    entry.getCreatedAt(), board.getBoardState(), board.getCurrentTurn(), board.getRepetitionKeys()));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,307 @@
+package com.checkmate.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of accepted moves, the source the game state is
+ * recovered from after a crash. Each move is a fixed-size record written
+ * into a memory-mapped segment file:
+ *
+ * <pre>
+ *  0  game id (8 bytes)      8  board id (4)     12  ply after the move (4)
+ * 16  move, as encoded by Moves (2)   18  unused (2)
+ * 20  time played, nanoseconds since the epoch in UTC (8)
+ * 28  CRC32 of bytes 0-27 (4)
+ * </pre>
+ *
+ * Segments are created at a fixed size and filled in order; a full segment
+ * is forced to disk and the journal moves on to the next. Each record has a
+ * sequence number (its place in the whole journal), and
+ * {@link #sync(long)} makes everything up to a sequence number durable.
+ * Callers that wait on sync commit as a group: one of them forces the
+ * mapped pages while the others wait, and finds its own record already
+ * covered when its turn comes. Segments whose moves are all in the database
+ * are deleted with {@link #release(long)}.
+ *
+ * Unwritten space in a segment is zeros, which fail the checksum, so
+ * reading a segment stops at the end of what was written, including after a
+ * crash that tore the last record.
+ */
+public final class MoveJournal implements Closeable {
+
+    /** Size of one record in bytes */
+    public static final int RECORD_BYTES = 32;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".dat";
+    private static final int CHECKED_BYTES = 28;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final CRC32 crc = new CRC32();
+    // Only one thread forces at a time; the rest of the group waits here
+    private final Object syncLock = new Object();
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    // Records written to the current segment, and how many of them are forced
+    private int written;
+    private int forced;
+    // Highest sequence number known to be on disk
+    private volatile long durable = -1;
+
+    /**
+     * Opens the journal, starting a new segment after any already in the
+     * directory
+     *
+     * @param directory The directory for the segment files (created if missing)
+     * @param segmentBytes The size of each segment file, rounded down to whole records
+     * @throws IOException If the directory or segment cannot be created
+     * @throws IllegalArgumentException If a segment would not hold one record
+     */
+    public MoveJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException("Journal segments must hold at least one record, not " + segmentBytes + " bytes");
+        }
+        this.directory = directory;
+        this.recordsPerSegment = segmentBytes / RECORD_BYTES;
+        Files.createDirectories(directory);
+        List<Long> existing = segments(directory);
+        this.segmentNumber = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+        this.segment = map(segmentNumber);
+        this.durable = segmentNumber * recordsPerSegment - 1;
+    }
+
+    /**
+     * Appends a move to the journal. The record is in the page cache when
+     * this returns, so it survives the process dying; call
+     * {@link #sync(long)} to survive the machine failing as well.
+     *
+     * @param entry The move
+     * @return The record's sequence number
+     * @throws IOException If a new segment is needed and cannot be created
+     */
+    public synchronized long append(Entry entry) throws IOException {
+        if (written == recordsPerSegment) {
+            segment.force();
+            segmentNumber++;
+            segment = map(segmentNumber);
+            written = 0;
+            forced = 0;
+        }
+        int offset = written * RECORD_BYTES;
+        segment.putLong(offset, entry.gameId);
+        segment.putInt(offset + 8, entry.boardId);
+        segment.putInt(offset + 12, entry.ply);
+        segment.putShort(offset + 16, (short) entry.move);
+        segment.putShort(offset + 18, (short) 0);
+        segment.putLong(offset + 20, toEpochNanos(entry.createdAt));
+        crc.reset();
+        crc.update(segment.slice(offset, CHECKED_BYTES));
+        segment.putInt(offset + CHECKED_BYTES, (int) crc.getValue());
+        return segmentNumber * recordsPerSegment + written++;
+    }
+
+    /**
+     * Makes every record up to a sequence number durable, forcing the
+     * journal's dirty pages to disk unless another caller's force already
+     * covered them
+     *
+     * @param sequence The sequence number returned by {@link #append(Entry)}
+     */
+    public void sync(long sequence) {
+        if (sequence <= durable) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (sequence <= durable) {
+                return;
+            }
+            MappedByteBuffer buffer;
+            long number;
+            int from;
+            int to;
+            synchronized (this) {
+                buffer = segment;
+                number = segmentNumber;
+                from = forced;
+                to = written;
+            }
+            // Earlier segments were forced whole when they filled up
+            if (to > from) {
+                buffer.force(from * RECORD_BYTES, (to - from) * RECORD_BYTES);
+            }
+            synchronized (this) {
+                if (segmentNumber == number) {
+                    forced = Math.max(forced, to);
+                }
+            }
+            durable = number * recordsPerSegment + to - 1;
+        }
+    }
+
+    /**
+     * Deletes the full segments whose records are all at or below a
+     * sequence number, once those moves are safely in the database
+     *
+     * @param sequence The highest sequence number written to the database
+     * @throws IOException If a file cannot be deleted
+     */
+    public synchronized void release(long sequence) throws IOException {
+        for (long number : segments(directory)) {
+            if (number < segmentNumber && (number + 1) * recordsPerSegment - 1 <= sequence) {
+                Files.deleteIfExists(segmentFile(directory, number));
+            }
+        }
+    }
+
+    /**
+     * Forces what has been written and lets go of the current segment
+     */
+    @Override
+    public synchronized void close() {
+        segment.force();
+    }
+
+    /**
+     * Reads every record left in a journal directory, oldest first
+     *
+     * @param directory The journal directory (may be missing)
+     * @return The moves
+     * @throws IOException If a segment cannot be read
+     */
+    public static List<Entry> readAll(Path directory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        for (long number : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(segmentFile(directory, number), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int offset = 0; offset + RECORD_BYTES <= buffer.limit(); offset += RECORD_BYTES) {
+                    crc.reset();
+                    crc.update(buffer.slice(offset, CHECKED_BYTES));
+                    if ((int) crc.getValue() != buffer.getInt(offset + CHECKED_BYTES)) {
+                        break;
+                    }
+                    entries.add(new Entry(buffer.getLong(offset), buffer.getInt(offset + 8),
+                            buffer.getInt(offset + 12), buffer.getShort(offset + 16) & 0xFFFF,
+                            fromEpochNanos(buffer.getLong(offset + 20))));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes every segment in a journal directory, once what they held has
+     * been recovered
+     *
+     * @param directory The journal directory (may be missing)
+     * @throws IOException If a file cannot be deleted
+     */
+    public static void clear(Path directory) throws IOException {
+        for (long number : segments(directory)) {
+            Files.deleteIfExists(segmentFile(directory, number));
+        }
+    }
+
+    // Numbers of the segment files in a directory, in order
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return numbers;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            // Not one of ours
+                        }
+                    });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+    }
+
+    // The mapping stays valid after the channel is closed
+    private MappedByteBuffer map(long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_BYTES);
+        }
+    }
+
+    private static long toEpochNanos(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    private static LocalDateTime fromEpochNanos(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    /**
+     * One journal record: a move and the game it was played in
+     */
+    public static final class Entry {
+        private final long gameId;
+        private final int boardId;
+        private final int ply;
+        private final int move;
+        private final LocalDateTime createdAt;
+
+        /**
+         * Creates an entry
+         *
+         * @param gameId The game's id
+         * @param boardId The id of the game's board
+         * @param ply The number of plies played after the move (1 for white's first move)
+         * @param move The encoded move (see {@link com.checkmate.utils.Moves})
+         * @param createdAt When the move was played
+         */
+        public Entry(long gameId, int boardId, int ply, int move, LocalDateTime createdAt) {
+            this.gameId = gameId;
+            this.boardId = boardId;
+            this.ply = ply;
+            this.move = move;
+            this.createdAt = createdAt;
+        }
+
+        public long getGameId() {
+            return gameId;
+        }
+
+        public int getBoardId() {
+            return boardId;
+        }
+
+        public int getPly() {
+            return ply;
+        }
+
+        public int getMove() {
+            return move;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
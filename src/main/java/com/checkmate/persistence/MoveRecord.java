@@ -0,0 +1,98 @@
+package com.checkmate.persistence;
+
+import com.checkmate.utils.Moves;
+
+import java.time.LocalDateTime;
+
+/**
+ * An accepted move waiting to be written to the database: the move itself
+ * and the state of the game's board after it. Everything is copied out of
+ * the entities when the move is accepted, so the record can be written from
+ * another thread while the board moves on.
+ *
+ * Moves recovered from the journal that come before the last recovered
+ * state of their board carry no board state, since only the latest state
+ * of each board is written.
+ */
+public final class MoveRecord {
+
+    private final long gameId;
+    private final int boardId;
+    private final int ply;
+    private final int move;
+    private final LocalDateTime createdAt;
+    private final String boardState;
+    private final String currentTurn;
+    private final byte[] repetitionKeys;
+
+    /**
+     * Creates a record
+     *
+     * @param gameId The game's id
+     * @param boardId The id of the game's board
+     * @param ply The number of plies played after the move
+     * @param move The encoded move (see {@link Moves})
+     * @param createdAt When the move was played
+     * @param boardState The board's FEN after the move, or null if not known
+     * @param currentTurn The side to move after the move ("WHITE" or "BLACK"), or null
+     * @param repetitionKeys The board's repetition keys after the move (not
+     *                       copied, so must not be changed), or null
+     */
+    public MoveRecord(long gameId, int boardId, int ply, int move, LocalDateTime createdAt,
+                      String boardState, String currentTurn, byte[] repetitionKeys) {
+        this.gameId = gameId;
+        this.boardId = boardId;
+        this.ply = ply;
+        this.move = move;
+        this.createdAt = createdAt;
+        this.boardState = boardState;
+        this.currentTurn = currentTurn;
+        this.repetitionKeys = repetitionKeys;
+    }
+
+    /**
+     * Makes the journal entry for this move
+     */
+    public MoveJournal.Entry toJournalEntry() {
+        return new MoveJournal.Entry(gameId, boardId, ply, move, createdAt);
+    }
+
+    /**
+     * Checks whether the record carries the board's state after the move
+     */
+    public boolean hasBoardState() {
+        return boardState != null;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    public int getBoardId() {
+        return boardId;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getBoardState() {
+        return boardState;
+    }
+
+    public String getCurrentTurn() {
+        return currentTurn;
+    }
+
+    public byte[] getRepetitionKeys() {
+        return repetitionKeys;
+    }
+}
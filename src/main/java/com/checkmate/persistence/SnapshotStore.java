@@ -0,0 +1,126 @@
+package com.checkmate.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the latest {@link BoardSnapshot} of each game, one small file per
+ * game, so recovery only has to replay the journal from there. A snapshot
+ * is written to a temporary file, forced to disk and then moved over the
+ * old one, so a crash leaves either the old snapshot or the new one. Each
+ * file ends with a CRC32 of its contents; a file that fails it is ignored.
+ */
+public final class SnapshotStore {
+
+    private final Path directory;
+
+    /**
+     * Opens the store
+     *
+     * @param directory The directory for the snapshot files (created if missing)
+     * @throws IOException If the directory cannot be created
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Replaces a game's snapshot
+     *
+     * @param snapshot The new snapshot
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void save(BoardSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(snapshot.getGameId());
+        out.writeInt(snapshot.getBoardId());
+        out.writeInt(snapshot.getPly());
+        out.writeUTF(snapshot.getBoardState());
+        out.writeUTF(snapshot.getCurrentTurn());
+        byte[] keys = snapshot.getRepetitionKeys();
+        out.writeInt(keys == null ? -1 : keys.length);
+        if (keys != null) {
+            out.write(keys);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path file = file(snapshot.getGameId());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a game's snapshot
+     *
+     * @param gameId The game's id
+     * @return The snapshot, or null if there is none or it is damaged
+     * @throws IOException If the file exists but cannot be read
+     */
+    public BoardSnapshot load(long gameId) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file(gameId));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (bytes.length < 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 4)));
+        long storedGameId = in.readLong();
+        int boardId = in.readInt();
+        int ply = in.readInt();
+        String boardState = in.readUTF();
+        String currentTurn = in.readUTF();
+        int keysLength = in.readInt();
+        byte[] keys = null;
+        if (keysLength >= 0) {
+            keys = new byte[keysLength];
+            in.readFully(keys);
+        }
+        return new BoardSnapshot(storedGameId, boardId, ply, boardState, currentTurn, keys);
+    }
+
+    /**
+     * Deletes a game's snapshot, once the game is over
+     *
+     * @param gameId The game's id
+     * @throws IOException If the file cannot be deleted
+     */
+    public void delete(long gameId) throws IOException {
+        Files.deleteIfExists(file(gameId));
+    }
+
+    private Path file(long gameId) {
+        return directory.resolve("game-" + gameId + ".snap");
+    }
+}
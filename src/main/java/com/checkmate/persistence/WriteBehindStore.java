@@ -0,0 +1,628 @@
+package com.checkmate.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Game;
+import com.checkmate.model.Move;
+import com.checkmate.model.MoveList;
+import com.checkmate.repository.MoveRepository;
+import com.checkmate.utils.Moves;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind stage for moves and board updates. Accepted moves are
+ * journalled, held in memory and written to the database in batches, either
+ * once checkmate.persistence.batch-size moves are waiting or every
+ * checkmate.persistence.flush-interval-ms. A batch goes in one transaction:
+ * the moves as JDBC batch inserts (their ids come from a pooled sequence, so
+ * Hibernate needs no round trip per row to learn them) and each game's board
+ * as one batched update with its latest state. Each game's new moves are
+ * appended, packed, to its move_data column in the same batch; the rows of
+ * the moves table are only written while checkmate.persistence.move-rows is
+ * on.
+ *
+ * Until its moves are written, a game's live Board and MoveList are kept here
+ * and {@link #currentBoard(Game)} and {@link #currentMoves(Game)} hand them
+ * out in place of the stale copies in the database.
+ *
+ * The {@link MoveJournal} is what makes an accepted move durable, as far as
+ * checkmate.persistence.durability asks (see {@link Durability}); the
+ * database is fed from memory behind it. Every
+ * checkmate.persistence.snapshot-plies plies a game's board is saved to the
+ * {@link SnapshotStore} as the move is accepted, so a snapshot is usually
+ * ahead of the database and recovery replays only the journal after it.
+ * At startup each game in the journal is rebuilt from
+ * its latest snapshot or stored board and the journal's tail (see
+ * {@link JournalReplay}), and the moves the database is missing are written
+ * before the application serves requests.
+ *
+ * A batch that fails for a reason retrying cannot fix, such as a duplicate
+ * ply or a move_data column grown past its limit, is written again one game
+ * at a time. The games still at fault are quarantined: their moves are
+ * logged and dropped, and no more of their moves are accepted, so the rest
+ * keep flowing. Any other failure leaves the batch queued for the next
+ * flush. At most checkmate.persistence.max-pending moves wait to be written;
+ * beyond that accepting a move waits for a flush to make room.
+ */
+@Component
+public class WriteBehindStore {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindStore.class);
+
+    // How long accepting a move waits for room before giving up
+    private static final long MAX_WAIT_MS = 10_000;
+
+    private static final String UPDATE_BOARD =
+            "UPDATE boards SET board_state = ?, current_turn = ?, repetition_keys = ? WHERE id = ?";
+    // Appends to the column in place, so a batch sends each game only its new moves
+    private static final String APPEND_MOVES =
+            "UPDATE game SET move_data = COALESCE(move_data || ?, ?) WHERE id = ?";
+    // Only ever fills a column that is still empty
+    private static final String BACKFILL_MOVES =
+            "UPDATE game SET move_data = ? WHERE id = ? AND move_data IS NULL";
+    private static final String SELECT_BOARD =
+            "SELECT id, board_state, current_turn, repetition_keys FROM boards WHERE game_id = ?";
+
+    private final MoveRepository moveRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Durability durability;
+    private final int batchSize;
+    private final int maxPending;
+    private final boolean moveRows;
+    private final long flushIntervalMs;
+    private final int snapshotPlies;
+    private final int segmentBytes;
+    private final Path journalDirectory;
+    private final SnapshotStore snapshots;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Guards pending, unwritten, accepted and journalled, so a batch taken
+    // from pending knows the last journal record it covers. Waited on for
+    // room by accept.
+    private final Object lock = new Object();
+    // Only one flush runs at a time
+    private final Object flushLock = new Object();
+    // Accepted moves not yet written, oldest first
+    private List<MoveRecord> pending = new ArrayList<>();
+    // Accepted moves not yet written, counting those being written now
+    private int unwritten;
+    // Number of moves accepted so far
+    private long accepted;
+    // Sequence number of the last journal record
+    private long journalled = -1;
+    // The live board and moves of each game with moves not yet written, by game id
+    private final Map<Long, PendingGame> games = new ConcurrentHashMap<>();
+    // Games that have ended, whose snapshots can go after the next flush
+    private final Queue<Long> finished = new ConcurrentLinkedQueue<>();
+    // Games whose moves could not be written, and are no longer accepted
+    private final Set<Long> quarantined = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    // Null when durability is MEMORY
+    private MoveJournal journal;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public WriteBehindStore(MoveRepository moveRepository, JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${checkmate.persistence.durability:log}") String durability,
+                            @Value("${checkmate.persistence.batch-size:50}") int batchSize,
+                            @Value("${checkmate.persistence.max-pending:10000}") int maxPending,
+                            @Value("${checkmate.persistence.move-rows:true}") boolean moveRows,
+                            @Value("${checkmate.persistence.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${checkmate.persistence.snapshot-plies:32}") int snapshotPlies,
+                            @Value("${checkmate.persistence.journal-segment-bytes:4194304}") int segmentBytes,
+                            @Value("${checkmate.persistence.journal-dir:data/journal}") String journalDirectory)
+            throws IOException {
+        this.moveRepository = moveRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.durability = Durability.parse(durability);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPending = Math.max(1, maxPending);
+        this.moveRows = moveRows;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.snapshotPlies = Math.max(1, snapshotPlies);
+        this.segmentBytes = segmentBytes;
+        this.journalDirectory = Path.of(journalDirectory);
+        this.snapshots = new SnapshotStore(this.journalDirectory.resolve("snapshots"));
+    }
+
+    /**
+     * Recovers the games left in the journal by a previous run, then opens
+     * a fresh journal and starts the flushing thread
+     *
+     * @throws IOException If the journal cannot be read or opened
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        recover();
+        if (durability != Durability.MEMORY) {
+            journal = new MoveJournal(journalDirectory, segmentBytes);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the flushing thread and writes whatever is still waiting
+     *
+     * @throws IOException If the journal cannot be released
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Stops the flushing thread and closes the journal without writing what
+     * is waiting, as if the process had died; for tests
+     */
+    void abandon() {
+        flusher.shutdownNow();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Accepts a move that has been played on a board, adding it to the
+     * game's move list. The move is appended to the journal, and with fsync durability this waits for the group
+     * commit that puts it on disk. The move and the board's new state reach
+     * the database with the next batch. A move landing on a snapshot ply
+     * also saves the board's snapshot, before returning. While
+     * checkmate.persistence.max-pending moves are waiting, this first waits
+     * for a flush to make room.
+     *
+     * @param game The game
+     * @param board The game's board, after the move
+     * @param move The encoded move that was played (see {@link com.checkmate.utils.Moves})
+     * @throws UncheckedIOException If the move cannot be journalled
+     * @throws IllegalStateException If the game is quarantined, or no room is
+     *                               made within ten seconds
+     */
+    public void accept(Game game, Board board, int move) {
+        MoveRecord record = new MoveRecord(game.getId(), board.getId(), BoardSnapshot.plyOf(board.getPosition()),
+                move, LocalDateTime.now(), board.getBoardState(), board.getCurrentTurn(), board.getRepetitionKeys());
+        int waiting;
+        long sequence = -1;
+        synchronized (lock) {
+            if (quarantined.contains(game.getId())) {
+                throw new IllegalStateException("Moves of game " + game.getId() + " can no longer be saved");
+            }
+            awaitRoom();
+            if (journal != null) {
+                try {
+                    sequence = journal.append(record.toJournalEntry());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot journal move for game " + game.getId(), e);
+                }
+                journalled = sequence;
+            }
+            pending.add(record);
+            unwritten++;
+            waiting = pending.size();
+            MoveList moves = game.getMoveList();
+            moves.add(move);
+            games.put(game.getId(), new PendingGame(board, moves, ++accepted));
+        }
+        if (durability == Durability.FSYNC) {
+            journal.sync(sequence);
+        }
+        if (journal != null && record.getPly() % snapshotPlies == 0) {
+            saveSnapshot(record);
+        }
+        if (waiting >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until fewer than maxPending moves are
+     * waiting, asking the flushing thread to write them
+     */
+    private void awaitRoom() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MS);
+        while (unwritten >= maxPending) {
+            requestFlush();
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                throw new IllegalStateException(unwritten + " moves are waiting to be written");
+            }
+            try {
+                lock.wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting to save a move", e);
+            }
+        }
+    }
+
+    private void requestFlush() {
+        if (flushQueued.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Notes that a game has ended, so its snapshot is no longer needed
+     *
+     * @param game The finished game
+     */
+    public void finished(Game game) {
+        finished.add(game.getId());
+    }
+
+    /**
+     * Gets a game's board as it stands, which is newer than the database's
+     * copy while moves on it are waiting to be written
+     *
+     * @param game The game
+     * @return The board
+     */
+    public Board currentBoard(Game game) {
+        PendingGame pendingGame = games.get(game.getId());
+        return pendingGame != null ? pendingGame.board : game.getBoard();
+    }
+
+    /**
+     * Gets a game's moves as they stand, which run past the database's
+     * copy while some are waiting to be written
+     *
+     * @param game The game
+     * @return The move list
+     */
+    public MoveList currentMoves(Game game) {
+        PendingGame pendingGame = games.get(game.getId());
+        return pendingGame != null ? pendingGame.moves : game.getMoveList();
+    }
+
+    /**
+     * Stores the moves of a game played before moves were packed onto the
+     * game, rebuilt from its move rows, with the board they lead to, so the
+     * moves played from now on are appended after them. The game is given
+     * the packed list.
+     *
+     * @param game The game, with no moves packed and none waiting
+     * @param board The game's board, already set to the position the moves lead to
+     * @param moves The game's encoded moves, in order
+     */
+    public void backfill(Game game, Board board, int[] moves) {
+        MoveList packed = new MoveList();
+        for (int move : moves) {
+            packed.add(move);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(BACKFILL_MOVES, packed.toBytes(), game.getId());
+            jdbcTemplate.update(UPDATE_BOARD, board.getBoardState(), board.getCurrentTurn(),
+                    board.getRepetitionKeys(), board.getId());
+        });
+        game.setMoveList(packed);
+    }
+
+    /**
+     * Gets the number of accepted moves not yet written
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Checks whether a game's moves could not be written, so that no more
+     * of them are accepted
+     *
+     * @param gameId The game's id
+     * @return true for a quarantined game
+     */
+    public boolean isQuarantined(long gameId) {
+        return quarantined.contains(gameId);
+    }
+
+    /**
+     * Writes every move accepted so far, on the calling thread, then drops
+     * the snapshots of games that have ended and lets go of the journal
+     * segments the database now covers. If the write fails the moves stay queued for the
+     * next attempt, except those of games that can never be written, which
+     * are quarantined.
+     *
+     * @throws IOException If the journal segments cannot be deleted
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            flushQueued.set(false);
+            List<MoveRecord> batch;
+            long written;
+            long covered;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                written = accepted;
+                covered = journalled;
+            }
+            List<MoveRecord> retry;
+            try {
+                retry = writeIsolated(dropQuarantined(batch));
+            } catch (RuntimeException e) {
+                requeue(batch, 0);
+                throw e;
+            }
+            requeue(retry, batch.size() - retry.size());
+            // Games with no newer moves waiting can be read from the database again
+            Set<Long> retried = new HashSet<>();
+            retry.forEach(record -> retried.add(record.getGameId()));
+            games.entrySet().removeIf(game -> game.getValue().sequence <= written && !retried.contains(game.getKey()));
+            // The journal and snapshots keep the moves that are queued again
+            if (journal != null && retry.isEmpty()) {
+                deleteFinishedSnapshots();
+                journal.release(covered);
+            }
+        }
+    }
+
+    /**
+     * Puts moves back at the head of the queue, ahead of any accepted since,
+     * and wakes anyone waiting for the room the rest of the batch made
+     *
+     * @param retry The moves to write again, oldest first
+     * @param done The number of moves of the batch written or dropped
+     */
+    private void requeue(List<MoveRecord> retry, int done) {
+        synchronized (lock) {
+            if (!retry.isEmpty()) {
+                List<MoveRecord> queued = new ArrayList<>(retry);
+                queued.addAll(pending);
+                pending = queued;
+            }
+            unwritten -= done;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Drops the moves of quarantined games that were accepted before the
+     * game was quarantined, since the moves before them are missing
+     */
+    private List<MoveRecord> dropQuarantined(List<MoveRecord> batch) {
+        if (quarantined.isEmpty()) {
+            return batch;
+        }
+        List<MoveRecord> kept = new ArrayList<>(batch.size());
+        for (MoveRecord record : batch) {
+            if (quarantined.contains(record.getGameId())) {
+                log.error("Dropped move {} of quarantined game {}", describe(record), record.getGameId());
+            } else {
+                kept.add(record);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Writes a batch in one transaction or, if something in it can never be
+     * written, each game's moves in a transaction of their own, quarantining
+     * the games that still fail
+     *
+     * @param batch The moves to write, oldest first
+     * @return The moves of games that failed for some other reason, to write
+     *         again later
+     * @throws RuntimeException If the whole batch failed for such a reason
+     */
+    private List<MoveRecord> writeIsolated(List<MoveRecord> batch) {
+        if (batch.isEmpty()) {
+            return List.of();
+        }
+        try {
+            write(batch);
+            return List.of();
+        } catch (NonTransientDataAccessException e) {
+            log.warn("Write-behind batch of {} moves failed, writing its games one at a time", batch.size(), e);
+        }
+        Map<Long, List<MoveRecord>> byGame = new LinkedHashMap<>();
+        for (MoveRecord record : batch) {
+            byGame.computeIfAbsent(record.getGameId(), id -> new ArrayList<>()).add(record);
+        }
+        List<MoveRecord> retry = new ArrayList<>();
+        for (Map.Entry<Long, List<MoveRecord>> game : byGame.entrySet()) {
+            try {
+                write(game.getValue());
+            } catch (NonTransientDataAccessException e) {
+                quarantine(game.getKey(), game.getValue(), e);
+            } catch (RuntimeException e) {
+                log.warn("Cannot write the moves of game " + game.getKey() + ", will retry", e);
+                retry.addAll(game.getValue());
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * Stops accepting a game's moves, after its moves could not be written,
+     * and logs the ones that are lost
+     */
+    private void quarantine(long gameId, List<MoveRecord> records, RuntimeException cause) {
+        quarantined.add(gameId);
+        games.remove(gameId);
+        StringBuilder lost = new StringBuilder();
+        for (MoveRecord record : records) {
+            lost.append(lost.length() == 0 ? "" : ", ").append(describe(record));
+        }
+        log.error("Quarantined game {}, whose moves cannot be written; dropped {}", gameId, lost, cause);
+    }
+
+    // A move as its ply and UCI notation, for the log
+    private static String describe(MoveRecord record) {
+        return record.getPly() + ":" + Moves.toUci(record.getMove());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Write-behind flush failed, will retry", e);
+        }
+    }
+
+    /**
+     * Saves the board a move left, ahead of its batch
+     */
+    private void saveSnapshot(MoveRecord record) {
+        try {
+            snapshots.save(BoardSnapshot.of(record));
+        } catch (IOException e) {
+            // Recovery just replays more of the journal
+            log.warn("Cannot save snapshot of game " + record.getGameId(), e);
+        }
+    }
+
+    /**
+     * Drops the snapshots of games that have ended, now their last moves
+     * are written
+     */
+    private void deleteFinishedSnapshots() {
+        for (Long gameId = finished.poll(); gameId != null; gameId = finished.poll()) {
+            try {
+                snapshots.delete(gameId);
+            } catch (IOException e) {
+                log.warn("Cannot delete snapshot of game " + gameId, e);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of moves, and the last known board state of each game
+     * in it, in one transaction
+     */
+    private void write(List<MoveRecord> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Move> moves = new ArrayList<>(moveRows ? batch.size() : 0);
+            Map<Long, MoveList> appended = new LinkedHashMap<>();
+            Map<Integer, MoveRecord> latest = new LinkedHashMap<>();
+            for (MoveRecord record : batch) {
+                if (moveRows) {
+                    Move move = new Move(entityManager.getReference(Game.class, record.getGameId()), record.getMove());
+                    move.setPly(record.getPly());
+                    move.setCreatedAt(record.getCreatedAt());
+                    moves.add(move);
+                }
+                appended.computeIfAbsent(record.getGameId(), id -> new MoveList()).add(record.getMove());
+                if (record.hasBoardState()) {
+                    latest.put(record.getBoardId(), record);
+                }
+            }
+            if (moveRows) {
+                moveRepository.saveAll(moves);
+            }
+
+            List<Object[]> appends = new ArrayList<>(appended.size());
+            for (Map.Entry<Long, MoveList> game : appended.entrySet()) {
+                byte[] packed = game.getValue().toBytes();
+                appends.add(new Object[] {packed, packed, game.getKey()});
+            }
+            jdbcTemplate.batchUpdate(APPEND_MOVES, appends);
+
+            List<Object[]> updates = new ArrayList<>(latest.size());
+            for (MoveRecord record : latest.values()) {
+                updates.add(new Object[] {record.getBoardState(), record.getCurrentTurn(),
+                        record.getRepetitionKeys(), record.getBoardId()});
+            }
+            jdbcTemplate.batchUpdate(UPDATE_BOARD, updates);
+        });
+    }
+
+    /**
+     * Rebuilds each game a previous run left in the journal, writes the
+     * moves the database is missing, then empties the journal directory
+     */
+    private void recover() throws IOException {
+        Map<Long, List<MoveJournal.Entry>> byGame = new LinkedHashMap<>();
+        for (MoveJournal.Entry entry : MoveJournal.readAll(journalDirectory)) {
+            byGame.computeIfAbsent(entry.getGameId(), id -> new ArrayList<>()).add(entry);
+        }
+        List<MoveRecord> missing = new ArrayList<>();
+        for (Map.Entry<Long, List<MoveJournal.Entry>> game : byGame.entrySet()) {
+            long gameId = game.getKey();
+            List<BoardSnapshot> stored = jdbcTemplate.query(SELECT_BOARD, (rows, index) -> BoardSnapshot.fromStored(
+                    gameId, rows.getInt("id"), rows.getString("board_state"), rows.getString("current_turn"),
+                    rows.getBytes("repetition_keys")), gameId);
+            // A game whose board is gone cannot be recovered
+            if (!stored.isEmpty()) {
+                missing.addAll(JournalReplay.recover(stored.get(0), snapshots.load(gameId), game.getValue()));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<MoveRecord> failed = writeIsolated(missing);
+            if (!failed.isEmpty()) {
+                throw new IllegalStateException("Cannot write " + failed.size() + " moves recovered from the journal");
+            }
+            log.info("Recovered {} moves from the journal", missing.size());
+        }
+        MoveJournal.clear(journalDirectory);
+    }
+
+    /**
+     * A game's live board and moves, and the number of the last move
+     * accepted on it
+     */
+    private static final class PendingGame {
+        private final Board board;
+        private final MoveList moves;
+        private final long sequence;
+
+        PendingGame(Board board, MoveList moves, long sequence) {
+            this.board = board;
+            this.moves = moves;
+            this.sequence = sequence;
+        }
+    }
+}
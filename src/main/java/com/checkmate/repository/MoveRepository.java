@@ -6,15 +6,39 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface MoveRepository extends JpaRepository<Move, Integer> {
     
     /**
-     * Find all moves for a specific game, ordered by creation time
+     * Find all moves for a specific game, in the order they were played.
+     * Rows from before plies were stored have none, and fall back to id order.
      * 
      * @param game the game entity
      * @return a list of moves
      */
-    List<Move> findByGameOrderByCreatedAtAsc(Game game);
+    List<Move> findByGameOrderByPlyAscIdAsc(Game game);
+
+    /**
+     * Find the moves of a game in a range of plies, in the order they were played
+     * 
+     * @param game the game entity
+     * @param fromPly the first ply wanted (1 for white's first move)
+     * @param toPly the last ply wanted
+     * @return a list of moves
+     */
+    List<Move> findByGameAndPlyBetweenOrderByPlyAsc(Game game, int fromPly, int toPly);
+
+    /**
+     * Stream the moves of a game in a range of plies, in the order they were
+     * played, without loading them all at once. Must be called in a
+     * transaction, and the stream closed after use.
+     * 
+     * @param game the game entity
+     * @param fromPly the first ply wanted (1 for white's first move)
+     * @param toPly the last ply wanted
+     * @return a stream of moves
+     */
+    Stream<Move> streamByGameAndPlyBetweenOrderByPlyAsc(Game game, int fromPly, int toPly);
 }
@@ -1,73 +1,576 @@
 package com.checkmate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
+
 import com.checkmate.model.Game;
 import com.checkmate.model.Board;
 import com.checkmate.model.Move;
+import com.checkmate.model.MoveList;
+import com.checkmate.model.Position;
+import com.checkmate.persistence.ActiveGameCache;
+import com.checkmate.persistence.WriteBehindStore;
 import com.checkmate.repository.GameRepository;
 import com.checkmate.repository.MoveRepository;
 import com.checkmate.repository.BoardRepository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.checkmate.engine.Engine;
+import com.checkmate.engine.OpeningBook;
+import com.checkmate.engine.OpeningBookBuilder;
+import com.checkmate.engine.SearchConfig;
+import com.checkmate.engine.SearchLimits;
+import com.checkmate.engine.SearchResult;
+import com.checkmate.engine.SearchTask;
+import com.checkmate.utils.Bitboards;
 import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.Fen;
+import com.checkmate.utils.GameResult;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
 
 @Service
 public class GameService {
+    // How long an aborted search may take to hand over its best move
+    private static final long ABORT_GRACE_MS = 50;
+
     private final GameRepository gameRepository;
     private final MoveRepository moveRepository;
     private final BoardRepository boardRepository;
+    private final WriteBehindStore writeBehind;
+    // Games in progress with their live boards, so moves skip the database
+    private final ActiveGameCache activeGames;
+    private final Engine engine;
+    // The opening book the engine plays from, or null if there is none
+    private final OpeningBook openingBook;
+    private final long computerMoveTimeMs;
+    private final long computerMaxMoveTimeMs;
+    private final long ponderMaxMs;
+    // Caps the pondering searches running at once across all games, so they
+    // cannot take the CPU from request handling
+    private final Semaphore ponderPermits;
+    // The search pondering each computer game's expected reply, by game id
+    private final Map<Long, Ponder> ponders = new ConcurrentHashMap<>();
 
     @Autowired
-    public GameService(GameRepository gameRepository, MoveRepository moveRepository, BoardRepository boardRepository) {
+    public GameService(GameRepository gameRepository, MoveRepository moveRepository, BoardRepository boardRepository,
+                       WriteBehindStore writeBehind,
+                       @Value("${checkmate.engine.move-time-ms:500}") long computerMoveTimeMs,
+                       @Value("${checkmate.engine.max-move-time-ms:1000}") long computerMaxMoveTimeMs,
+                       @Value("${checkmate.engine.threads:1}") int engineThreads,
+                       @Value("${checkmate.engine.hash-mb:16}") int engineHashMb,
+                       @Value("${checkmate.engine.disabled:}") String engineDisabled,
+                       @Value("${checkmate.engine.ponder-threads:1}") int ponderThreads,
+                       @Value("${checkmate.engine.ponder-max-ms:60000}") long ponderMaxMs,
+                       @Value("${checkmate.engine.book-file:}") String bookFile,
+                       @Value("${checkmate.game-cache.max-games:10000}") int cacheMaxGames,
+                       @Value("${checkmate.game-cache.idle-ms:1800000}") long cacheIdleMs) {
+        // A search thread per engine thread, and one per pondering search so
+        // ponders never hold up the searches for replies
+        this(gameRepository, moveRepository, boardRepository, writeBehind,
+                new Engine(engineHashMb, engineThreads, SearchConfig.DEFAULT.withDisabled(engineDisabled),
+                        openBook(bookFile), engineThreads + Math.max(0, ponderThreads)),
+                computerMoveTimeMs, computerMaxMoveTimeMs, ponderThreads, ponderMaxMs,
+                new ActiveGameCache(cacheMaxGames, cacheIdleMs));
+    }
+
+    /**
+     * Creates a service around a given engine, e.g. one whose searches a
+     * test controls
+     *
+     * @param engine The engine (closed by {@link #stopEngine()}, with its opening book)
+     */
+    GameService(GameRepository gameRepository, MoveRepository moveRepository, BoardRepository boardRepository,
+                WriteBehindStore writeBehind, Engine engine, long computerMoveTimeMs, long computerMaxMoveTimeMs,
+                int ponderThreads, long ponderMaxMs, ActiveGameCache activeGames) {
         this.moveRepository = moveRepository;
         this.gameRepository = gameRepository;
         this.boardRepository = boardRepository;
+        this.writeBehind = writeBehind;
+        this.activeGames = activeGames;
+        this.engine = engine;
+        this.openingBook = engine.getBook();
+        this.computerMoveTimeMs = computerMoveTimeMs;
+        this.computerMaxMoveTimeMs = Math.max(computerMoveTimeMs, computerMaxMoveTimeMs);
+        this.ponderPermits = new Semaphore(Math.max(0, ponderThreads));
+        this.ponderMaxMs = ponderMaxMs;
+    }
+   
+    @PreDestroy
+    public void stopEngine() {
+        ponders.values().forEach(ponder -> ponder.task.cancel(true));
+        engine.close();
+        if (openingBook != null) {
+            try {
+                openingBook.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Opens the opening book named by checkmate.engine.book-file, if there
+     * is one
+     *
+     * @param bookFile The path of the book, or empty for none
+     * @return The book, or null if no file is set or it does not exist yet
+     */
+    private static OpeningBook openBook(String bookFile) {
+        if (bookFile == null || bookFile.isBlank() || !Files.isRegularFile(Path.of(bookFile))) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(Path.of(bookFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read opening book " + bookFile, e);
+        }
+    }
+
+    /**
+     * Builds an opening book from the opening moves of every finished game.
+     * Each game is replayed from the starting position; moves that led to a
+     * win count twice as much as moves that led to a draw. The engine reads
+     * the book when the application starts, so point
+     * checkmate.engine.book-file at the new file and restart to use it.
+     *
+     * @param file The .bin file to write
+     * @return The number of book entries written
+     * @throws IOException If the file cannot be written
+     */
+    public int buildOpeningBook(Path file) throws IOException {
+        writeBehind.flush();
+        Position start = Position.fromFen(Fen.STARTING_POSITION);
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        for (Game game : gameRepository.findAll()) {
+            if (!"FINISHED".equals(game.getStatus()) || game.getWinner() == null) {
+                continue;
+            }
+            int whitePoints = "white".equals(game.getWinner()) ? 2 : "black".equals(game.getWinner()) ? 0 : 1;
+            builder.addGame(start, movesOf(start, game), whitePoints);
+        }
+        return builder.write(file);
+    }
+
+    /**
+     * Gets a finished game's moves from its packed move list, stopping at
+     * the first one that is not legal
+     */
+    private int[] movesOf(Position start, Game game) {
+        MoveList packed = game.getMoveList();
+        if (packed.isEmpty()) {
+            // Played before moves were packed onto the game
+            return replay(start, moveRepository.findByGameOrderByPlyAscIdAsc(game));
+        }
+        Position position = start.copy();
+        int[] moves = packed.toArray();
+        int count = 0;
+        while (count < moves.length && ChessUtils.isLegalMove(position, moves[count])) {
+            position.makeMove(moves[count++]);
+        }
+        return Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * Encodes a game's stored moves, stopping at the first one that is not
+     * legal (pawns are taken to promote to a queen, as on the board)
+     */
+    private static int[] replay(Position start, List<Move> moves) {
+        Position position = start.copy();
+        int[] encoded = new int[moves.size()];
+        int count = 0;
+        for (Move stored : moves) {
+            int move = Moves.infer(position, Bitboards.square(stored.getFromRow(), stored.getFromCol()),
+                    Bitboards.square(stored.getToRow(), stored.getToCol()), Position.QUEEN);
+            if (move == Moves.NONE || !ChessUtils.isLegalMove(position, move)) {
+                break;
+            }
+            encoded[count++] = move;
+            position.makeMove(move);
+        }
+        return Arrays.copyOf(encoded, count);
     }
    
     public Game saveGame(Game game) {
         // Initialize and save the board for a new game
         if (game.getId() == null) {
-            Board board = new Board(game);
-            boardRepository.save(board);
-            game.setBoard(board);
+            // The board's row refers to the game's, so the game goes first
+            Game created = gameRepository.saveAndFlush(game);
+            Board board = boardRepository.save(new Board(created));
+            created.setBoard(board);
+            activeGames.put(created);
+            return created;
         }
+        // The cached copy may no longer match what was saved
+        activeGames.remove(game.getId());
         return gameRepository.saveAndFlush(game);
     }
     
     public Optional<Game> getGameById(int id) {
-        return gameRepository.findById(id);
+        return Optional.ofNullable(findGame(id));
+    }
+
+    /**
+     * Finds a game, from the active game cache if it is there. A game in
+     * progress that has to be loaded is given its live board, with the
+     * position parsed, and cached; requests that miss on it together all
+     * get the one copy.
+     *
+     * @param gameId The game's id
+     * @return The game, or null if there is none with that id
+     */
+    private Game findGame(long gameId) {
+        return activeGames.getOrLoad(gameId, id -> {
+            Game game = gameRepository.findById((int) id).orElse(null);
+            if (game != null && "ACTIVE".equals(game.getStatus())) {
+                // Moves not yet written leave the stored board behind the live one
+                Board board = writeBehind.currentBoard(game);
+                game.setBoard(board);
+                game.setMoveList(writeBehind.currentMoves(game));
+                if (game.getMoveList().isEmpty()) {
+                    packLegacyMoves(game);
+                }
+                board.getPosition();
+            }
+            return game;
+        });
+    }
+
+    /**
+     * Packs the moves of a game in progress that was played before moves
+     * were packed onto the game, from its move rows, so the moves played
+     * from now on follow its history. The board is set to the position the
+     * moves lead to, which also gives it the move number the plies of new
+     * moves are counted from. A game whose rows do not lead to its board is
+     * left as it is.
+     *
+     * @param game The game, with its board and no packed moves
+     */
+    private void packLegacyMoves(Game game) {
+        List<Move> rows = moveRepository.findByGameOrderByPlyAscIdAsc(game);
+        if (rows.isEmpty()) {
+            return;
+        }
+        int[] moves = replay(Position.fromFen(Fen.STARTING_POSITION), rows);
+        Board replayed = new Board();
+        for (int move : moves) {
+            ChessUtils.makeMove(replayed, move);
+        }
+        Board board = game.getBoard();
+        if (moves.length != rows.size() || !replayed.getCurrentTurn().equals(board.getCurrentTurn())
+                || !placement(replayed).equals(placement(board))) {
+            return;
+        }
+        board.setBoardState(replayed.getBoardState());
+        board.setRepetitionKeys(replayed.getRepetitionKeys());
+        writeBehind.backfill(game, board, moves);
+    }
+
+    // The piece placement field of a board's FEN, all that older boards stored
+    private static String placement(Board board) {
+        String state = board.getBoardState();
+        int end = state.indexOf(' ');
+        return end < 0 ? state : state.substring(0, end);
+    }
+
+    /**
+     * Gets a game's moves one by one, as Move objects derived from its
+     * packed move list. They are not stored, so have no ids or times.
+     * Games played before moves were packed onto the game are read from
+     * their move rows instead.
+     *
+     * @param game The game
+     * @return The moves in the order they were played
+     */
+    public List<Move> getMoves(Game game) {
+        MoveList packed = writeBehind.currentMoves(game);
+        if (packed.isEmpty()) {
+            return moveRepository.findByGameOrderByPlyAscIdAsc(game);
+        }
+        List<Move> moves = new ArrayList<>(packed.size());
+        for (int i = 0; i < packed.size(); i++) {
+            Move move = new Move(game, packed.get(i));
+            move.setPly(i + 1);
+            move.setCreatedAt(null);
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    // Ponder permits not in use, for tests
+    int availablePonderPermits() {
+        return ponderPermits.availablePermits();
+    }
+
+    /**
+     * Gets the cache of games in progress, for its hit and miss counts
+     */
+    public ActiveGameCache getActiveGameCache() {
+        return activeGames;
     }
     
     public boolean makeMove(Long gameId, int fromRow, int fromCol, int toRow, int toCol) {
-        Optional<Game> gameOpt = gameRepository.findById(gameId.intValue());
-        if (!gameOpt.isPresent()) {
+        Game game = findGame(gameId);
+        if (game == null) {
             return false;
         }
         
-        Game game = gameOpt.get();
-        Board board = game.getBoard();
-        
-        // Validate the move using ChessUtils
-        if (ChessUtils.isValidMove(board, fromRow, fromCol, toRow, toCol)) {
-            // Update the board state
-            board = ChessUtils.makeMove(board, fromRow, fromCol, toRow, toCol);
-            boardRepository.save(board);
+        // A cached game is shared by all requests for it, so its moves take turns
+        synchronized (game) {
+            if (!"ACTIVE".equals(game.getStatus())) {
+                return false;
+            }
+            Board board = game.getBoard();
+            
+            // Validate the move using ChessUtils
+            if (ChessUtils.isValidMove(board, fromRow, fromCol, toRow, toCol)) {
+                // Update the board state
+                int move = Moves.infer(board.getPosition(), Bitboards.square(fromRow, fromCol),
+                        Bitboards.square(toRow, toCol), Position.QUEEN);
+                board = ChessUtils.makeMove(board, move);
+                SearchTask pondered = takePonderResult(game, board);
             
-            // Create and save the move record
-            Move move = new Move(game, fromRow, fromCol, toRow, toCol);
-            moveRepository.save(move);
+                // Journal the move and queue it, with the new board state, for the next batch write
+                writeBehind.accept(game, board, move);
             
-            return true;
+                // End the game on checkmate, stalemate or a draw by rule
+                GameResult result = ChessUtils.getGameResult(board);
+                if (result.isFinished()) {
+                    finishGame(game, result, board);
+                } else if (game.isAgainstComputer() && "BLACK".equals(board.getCurrentTurn())) {
+                    playComputerMove(game, board, pondered != null ? pondered : findComputerMove(board));
+                }
+            
+                return true;
+            }
+        
+            return false;
+        }
+    }
+    
+    /**
+     * Starts the engine searching for the computer's move in the background.
+     * The search aims for checkmate.engine.move-time-ms and is cut off at
+     * checkmate.engine.max-move-time-ms.
+     *
+     * @param board The board, with the computer to move
+     * @return The running search; abort it to take the best move found so far
+     */
+    public SearchTask findComputerMove(Board board) {
+        return engine.searchAsync(board, SearchLimits.moveTime(computerMoveTimeMs, computerMaxMoveTimeMs));
+    }
+
+    /**
+     * Lets the engine choose and play black's reply, then checks whether
+     * that move ended the game. The calling (request) thread waits no longer
+     * than the hard move time: if the search has not answered by then it is
+     * aborted and its best move so far is played (see
+     * {@link #abortSearch(SearchTask, Board)}). If the engine is too busy to
+     * take the search at all, the first legal move is played. Afterwards the
+     * engine ponders on the reply it expects.
+     *
+     * @param game The game against the computer
+     * @param board The board, with black to move
+     * @param task The search for black's move, already running
+     */
+    private void playComputerMove(Game game, Board board, SearchTask task) {
+        SearchResult search;
+        try {
+            search = task.get(computerMaxMoveTimeMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            search = abortSearch(task, board);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            search = abortSearch(task, board);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof RejectedExecutionException)) {
+                throw new IllegalStateException("Engine search failed", e.getCause());
+            }
+            search = fallbackMove(task, board);
+        }
+        int reply = search.getBestMove();
+        if (reply == Moves.NONE) {
+            return;
         }
+        board = ChessUtils.makeMove(board, reply);
+        writeBehind.accept(game, board, reply);
         
-        return false;
+        GameResult result = ChessUtils.getGameResult(board);
+        if (result.isFinished()) {
+            finishGame(game, result, board);
+        } else {
+            startPondering(game, board, search.getPrincipalVariation());
+        }
+    }
+
+    /**
+     * Aborts a search and takes its best move so far, waiting no more than
+     * ABORT_GRACE_MS for it (not at all if the thread is interrupted). If the
+     * search does not hand it over in time, the best move of its last
+     * finished iteration is played, or failing that the first legal move.
+     *
+     * @param task The running search
+     * @param board The board being searched
+     * @return The result to play
+     */
+    private SearchResult abortSearch(SearchTask task, Board board) {
+        task.abort();
+        try {
+            return task.get(ABORT_GRACE_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // Play without it
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Engine search failed", e.getCause());
+        }
+        return fallbackMove(task, board);
+    }
+
+    /**
+     * Picks a move without the search's result: the best move of its last
+     * finished iteration, or failing that the first legal move
+     */
+    private static SearchResult fallbackMove(SearchTask task, Board board) {
+        int move = task.getCompletedMove();
+        if (move == Moves.NONE) {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            if (MoveGenerator.generateLegalMoves(board.getPosition(), moves) > 0) {
+                move = moves[0];
+            }
+        }
+        return new SearchResult(move, 0, 0, 0, 0, new int[] {move});
+    }
+
+    /**
+     * Starts searching the position after the reply the engine expects (the
+     * second move of its principal variation), if a pondering thread is free
+     *
+     * @param game The game against the computer
+     * @param board The board, with white to move
+     * @param line The engine's principal variation, starting with its own move
+     */
+    private void startPondering(Game game, Board board, int[] line) {
+        if (line.length < 2 || !ChessUtils.isLegalMove(board.getPosition(), line[1])) {
+            return;
+        }
+        if (!ponderPermits.tryAcquire()) {
+            return;
+        }
+        Position expected = board.getPosition().copy();
+        long[] earlier = board.getPositionHistory();
+        long[] history = Arrays.copyOf(earlier, earlier.length + 1);
+        history[earlier.length] = expected.getHash();
+        expected.makeMove(line[1]);
+
+        SearchTask task = engine.ponder(expected,
+                SearchLimits.moveTime(computerMoveTimeMs, computerMaxMoveTimeMs), history, ponderMaxMs);
+        Ponder ponder = new Ponder(expected.getHash(), task);
+        Ponder previous = ponders.put(game.getId(), ponder);
+        if (previous != null) {
+            previous.task.cancel(true);
+        }
+        // However it ends: run out, cancelled, turned away by the engine or
+        // finished as the search for a reply
+        task.whenComplete((result, failure) -> {
+            ponders.remove(game.getId(), ponder);
+            ponder.releasePermit();
+        });
+    }
+
+    /**
+     * Ends pondering for a game once white has moved. If white played the
+     * move the engine expected, the pondering search becomes the search for
+     * black's reply and its clock starts now; it no longer counts as a
+     * ponder, so its permit is given back at once for the ponder after the
+     * reply. Otherwise it is cancelled.
+     *
+     * @param game The game
+     * @param board The board after white's move
+     * @return The pondering search to use for black's reply, or null
+     */
+    private SearchTask takePonderResult(Game game, Board board) {
+        Ponder ponder = ponders.remove(game.getId());
+        if (ponder == null) {
+            return null;
+        }
+        if (ponder.expectedHash == board.getPosition().getHash() && !ponder.task.isCancelled()) {
+            ponder.releasePermit();
+            return ponder.task.ponderHit();
+        }
+        ponder.task.cancel(true);
+        return null;
+    }
+
+    /**
+     * A pondering search and the position (by hash) it is searching
+     */
+    private final class Ponder {
+        private final long expectedHash;
+        private final SearchTask task;
+        private final AtomicBoolean holdsPermit = new AtomicBoolean(true);
+
+        Ponder(long expectedHash, SearchTask task) {
+            this.expectedHash = expectedHash;
+            this.task = task;
+        }
+
+        // Gives the ponder permit back, once however often it is called
+        void releasePermit() {
+            if (holdsPermit.compareAndSet(true, false)) {
+                ponderPermits.release();
+            }
+        }
+    }
+    
+    /**
+     * Marks a game as finished and records the winner ("white" or "black"
+     * for checkmate, "draw" otherwise)
+     *
+     * @param game The game that has ended
+     * @param result How it ended
+     * @param board The final board, with the loser (if any) to move
+     */
+    private void finishGame(Game game, GameResult result, Board board) {
+        game.setStatus("FINISHED");
+        if (result.isDecisive()) {
+            game.setWinner("WHITE".equals(board.getCurrentTurn()) ? "black" : "white");
+        } else {
+            game.setWinner("draw");
+        }
+        game.setUpdatedAt(LocalDateTime.now());
+        gameRepository.save(game);
+        activeGames.remove(game.getId());
+        writeBehind.finished(game);
     }
     
     public Board getBoardForGame(Game game) {
+        // The live board while moves on it wait to be written (often the
+        // game's own, for a cached game), else the one loaded with the game
+        Board current = writeBehind.currentBoard(game);
+        if (current != null) {
+            return current;
+        }
         return boardRepository.findByGame(game)
             .orElseGet(() -> {
                 Board newBoard = new Board(game);
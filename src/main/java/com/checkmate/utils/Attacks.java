@@ -0,0 +1,201 @@
+package com.checkmate.utils;
+
+/**
+ * Precomputed attack tables for move generation and attack detection.
+ *
+ * Knight, king and pawn attacks are plain per-square lookups. Rook and bishop
+ * attacks use magic bitboards: the relevant blockers on a square's rays are
+ * multiplied by a magic number whose top bits index that square's slice of a
+ * shared attack table. The magic numbers below were found offline with a
+ * sparse random search and are checked against ray walking in AttacksTest.
+ *
+ * {@link #between(int, int)} and {@link #line(int, int)} give the squares
+ * strictly between two aligned squares and the full line through them.
+ */
+public final class Attacks {
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+        0x008000908064C000L, 0x0040200040001000L, 0x0180100080A0010AL, 0x8880041000800800L,
+        0x1200100201200804L, 0x0200020004011008L, 0x2180010000800600L, 0x0200005088210204L,
+        0x0400800040008021L, 0x0400400020005000L, 0x8240801000200080L, 0x8611001004200900L,
+        0x008180800C001800L, 0x0100800200800400L, 0x0A02000102000408L, 0x8020802300104280L,
+        0x0080004000402000L, 0xE010104000402000L, 0x0800808010002000L, 0xA280210008100100L,
+        0x0001818014000800L, 0xA002010100080400L, 0x0080240001020870L, 0x0001020004048845L,
+        0x0081826280004004L, 0x2020810900284000L, 0x0200100080802000L, 0x0200080080100080L,
+        0x8083080100100500L, 0x4406000901000400L, 0x0005020080800100L, 0x0090204200008114L,
+        0x0010400094800420L, 0x0900804000802002L, 0x0201001841002000L, 0x4100080080801000L,
+        0x4540040080800800L, 0x0002001004040020L, 0x0281195814001002L, 0x1240800040800100L,
+        0x0880042000524004L, 0x02C080410206002CL, 0x0801200241050010L, 0x8400080010008080L,
+        0x0008000500090010L, 0x0082009084020008L, 0x4012000108020004L, 0x9000104D08860004L,
+        0x2004204114800100L, 0x0148802112400300L, 0x0202842000100880L, 0x001B080080900080L,
+        0x001A002008100600L, 0x0004008004020080L, 0x5181000600040300L, 0x0000044401128A00L,
+        0x8044110480002441L, 0x2008110084402202L, 0x90806005090010C1L, 0x000420310A004A42L,
+        0x0023001004020801L, 0x0882001008040102L, 0x000230088118020CL, 0x0000019025040042L
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] ROOK_OFFSETS = new int[64];
+    private static final long[] ROOK_TABLE = new long[0x19000];
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+        0x0045010808008680L, 0x2002080204004898L, 0x0210009A10400006L, 0x0824050200810200L,
+        0x0006061105004090L, 0x00010108C0000000L, 0x0814040282104004L, 0x0012012201106800L,
+        0x10823014100C1040L, 0x0080C2088802808CL, 0x0281108410404000L, 0x0101212041826200L,
+        0x0020141028221058L, 0x2201020202200202L, 0x000082A801482000L, 0x0000008401411044L,
+        0x0007103014300404L, 0x0002091110010100L, 0x42140012040C0808L, 0x0800808802004020L,
+        0x90C4004210140000L, 0x0800200900A01000L, 0x00D0400201108810L, 0x80820183814412A0L,
+        0x00A01008202202B4L, 0x01C2021A09500402L, 0x0084440208042400L, 0x800400400C090100L,
+        0xBA10040010802100L, 0xD182009006005000L, 0x5011021001009004L, 0x0020420200510400L,
+        0x0292104000468800L, 0x00043009091C0500L, 0x0280441000020025L, 0x0042820080080080L,
+        0x0440101010010040L, 0x1000900100808080L, 0x0108108120089800L, 0x0044010200012682L,
+        0xC002500420900400L, 0x0040482210710800L, 0x0002060024000200L, 0x0281020A44000800L,
+        0xA0021200A4000200L, 0x0001301000840840L, 0x2868500108444220L, 0x0004111041000200L,
+        0x8044020842080200L, 0x0000220104210200L, 0x0000021201044000L, 0x0000280884040028L,
+        0x4012114010858003L, 0x0000081004082B88L, 0x3892700508208002L, 0x00220A041B060400L,
+        0x0812020284014881L, 0x010434A282103100L, 0x0490400824020800L, 0x4A20002C00208800L,
+        0x000000A011020200L, 0x4002940A02482202L, 0x5100100202140406L, 0x02102000840540C1L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final int[] BISHOP_OFFSETS = new int[64];
+    private static final long[] BISHOP_TABLE = new long[0x1480];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            long b = Bitboards.bit(sq);
+            KNIGHT[sq] = Bitboards.knightAttacks(b);
+            KING[sq] = Bitboards.kingAttacks(b);
+            PAWN[0][sq] = Bitboards.pawnAttacks(b, true);
+            PAWN[1][sq] = Bitboards.pawnAttacks(b, false);
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                if (a == b) {
+                    continue;
+                }
+                BETWEEN[a][b] = Bitboards.between(a, b);
+                long rookRay = Bitboards.rookAttacks(a, 0L);
+                long bishopRay = Bitboards.bishopAttacks(a, 0L);
+                if ((rookRay & Bitboards.bit(b)) != 0) {
+                    LINE[a][b] = (rookRay & Bitboards.rookAttacks(b, 0L)) | Bitboards.bit(a) | Bitboards.bit(b);
+                } else if ((bishopRay & Bitboards.bit(b)) != 0) {
+                    LINE[a][b] = (bishopRay & Bitboards.bishopAttacks(b, 0L)) | Bitboards.bit(a) | Bitboards.bit(b);
+                }
+            }
+        }
+
+        initMagics(true, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS, ROOK_TABLE);
+        initMagics(false, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS, BISHOP_TABLE);
+    }
+
+    private Attacks() {
+    }
+
+    public static long knight(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long king(int square) {
+        return KING[square];
+    }
+
+    /**
+     * Gets the squares a pawn attacks
+     *
+     * @param colour The pawn colour (0 for white, 1 for black)
+     * @param square The pawn square
+     * @return Bitboard of attacked squares
+     */
+    public static long pawn(int colour, int square) {
+        return PAWN[colour][square];
+    }
+
+    /**
+     * Gets rook attacks from a square, including the first blocker in each direction
+     *
+     * @param square The rook square
+     * @param occupied Bitboard of all occupied squares
+     * @return Bitboard of attacked squares
+     */
+    public static long rook(int square, long occupied) {
+        int index = (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_TABLE[ROOK_OFFSETS[square] + index];
+    }
+
+    /**
+     * Gets bishop attacks from a square, including the first blocker in each direction
+     *
+     * @param square The bishop square
+     * @param occupied Bitboard of all occupied squares
+     * @return Bitboard of attacked squares
+     */
+    public static long bishop(int square, long occupied) {
+        int index = (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+        return BISHOP_TABLE[BISHOP_OFFSETS[square] + index];
+    }
+
+    public static long queen(int square, long occupied) {
+        return rook(square, occupied) | bishop(square, occupied);
+    }
+
+    /**
+     * Gets the squares strictly between two squares on a shared rank, file or diagonal
+     *
+     * @param from The first square
+     * @param to The second square
+     * @return Bitboard of the squares in between, or 0 if they are not aligned
+     */
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * Gets the full rank, file or diagonal running through two squares
+     *
+     * @param from The first square
+     * @param to The second square
+     * @return Bitboard of the whole line (edge to edge), or 0 if they are not aligned
+     */
+    public static long line(int from, int to) {
+        return LINE[from][to];
+    }
+
+    private static void initMagics(boolean rook, long[] masks, long[] magics, int[] shifts, int[] offsets,
+                                   long[] table) {
+        int offset = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            // Edge squares never block anything beyond them, so leave them out of the mask
+            long edges = ((Bitboards.RANK_1 | Bitboards.RANK_8) & ~rankOf(sq))
+                    | ((Bitboards.FILE_A | Bitboards.FILE_H) & ~fileOf(sq));
+            long mask = (rook ? Bitboards.rookAttacks(sq, 0L) : Bitboards.bishopAttacks(sq, 0L)) & ~edges;
+            int bits = Long.bitCount(mask);
+            masks[sq] = mask;
+            shifts[sq] = 64 - bits;
+            offsets[sq] = offset;
+
+            // Store the attacks for every blocker subset of the mask
+            long subset = 0L;
+            do {
+                int index = (int) ((subset * magics[sq]) >>> shifts[sq]);
+                table[offset + index] = rook ? Bitboards.rookAttacks(sq, subset) : Bitboards.bishopAttacks(sq, subset);
+                subset = (subset - mask) & mask;
+            } while (subset != 0);
+            offset += 1 << bits;
+        }
+    }
+
+    private static long rankOf(int square) {
+        return Bitboards.RANK_1 << (square & ~7);
+    }
+
+    private static long fileOf(int square) {
+        return Bitboards.FILE_A << (square & 7);
+    }
+}
@@ -0,0 +1,192 @@
+package com.checkmate.utils;
+
+/**
+ * Square and bitboard helpers shared by the chess rules code.
+ *
+ * Squares are numbered 0-63 starting at a1 and moving along the rank
+ * (a1 = 0, h1 = 7, a8 = 56, h8 = 63). The UI and the Piece[][] view use
+ * row/column coordinates with row 0 being the 8th rank, so
+ * {@link #square(int, int)}, {@link #row(int)} and {@link #col(int)}
+ * convert between the two.
+ *
+ * The set-wise attack functions here compute attacks directly and are used
+ * to build the lookup tables in {@link Attacks}; the rules code should use
+ * those tables instead.
+ */
+public final class Bitboards {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_B = FILE_A << 1;
+    public static final long FILE_G = FILE_A << 6;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_2 = RANK_1 << 8;
+    public static final long RANK_4 = RANK_1 << 24;
+    public static final long RANK_5 = RANK_1 << 32;
+    public static final long RANK_7 = RANK_1 << 48;
+    public static final long RANK_8 = RANK_1 << 56;
+    public static final long DARK_SQUARES = 0xAA55AA55AA55AA55L;
+
+    private Bitboards() {
+    }
+
+    /**
+     * Converts UI row/column coordinates to a square index.
+     *
+     * @param row The row (0 is the 8th rank)
+     * @param col The column (0 is the a-file)
+     * @return The square index (a1 = 0)
+     */
+    public static int square(int row, int col) {
+        return ((7 - row) << 3) | col;
+    }
+
+    /**
+     * Gets the UI row of a square.
+     *
+     * @param square The square index
+     * @return The row (0 is the 8th rank)
+     */
+    public static int row(int square) {
+        return 7 - (square >>> 3);
+    }
+
+    /**
+     * Gets the UI column of a square.
+     *
+     * @param square The square index
+     * @return The column (0 is the a-file)
+     */
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    /**
+     * Gets the single-bit mask of a square.
+     *
+     * @param square The square index
+     * @return A bitboard with only that square set
+     */
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    /**
+     * Gets the square index of the lowest set bit.
+     *
+     * @param bitboard A non-empty bitboard
+     * @return The square index of the least significant set bit
+     */
+    public static int lowestSquare(long bitboard) {
+        return Long.numberOfTrailingZeros(bitboard);
+    }
+
+    /**
+     * Computes the squares attacked by knights on the given squares.
+     *
+     * @param knights Bitboard of knight squares
+     * @return Bitboard of attacked squares
+     */
+    public static long knightAttacks(long knights) {
+        long l1 = (knights >>> 1) & ~FILE_H;
+        long l2 = (knights >>> 2) & ~(FILE_G | FILE_H);
+        long r1 = (knights << 1) & ~FILE_A;
+        long r2 = (knights << 2) & ~(FILE_A | FILE_B);
+        long h1 = l1 | r1;
+        long h2 = l2 | r2;
+        return (h1 << 16) | (h1 >>> 16) | (h2 << 8) | (h2 >>> 8);
+    }
+
+    /**
+     * Computes the squares attacked by kings on the given squares.
+     *
+     * @param kings Bitboard of king squares
+     * @return Bitboard of attacked squares
+     */
+    public static long kingAttacks(long kings) {
+        long sideways = ((kings << 1) & ~FILE_A) | ((kings >>> 1) & ~FILE_H);
+        long row = kings | sideways;
+        return sideways | (row << 8) | (row >>> 8);
+    }
+
+    /**
+     * Computes the squares attacked by pawns of one colour.
+     *
+     * @param pawns Bitboard of pawn squares
+     * @param white true for white pawns (attacking up the board), false for black
+     * @return Bitboard of attacked squares
+     */
+    public static long pawnAttacks(long pawns, boolean white) {
+        if (white) {
+            return ((pawns << 7) & ~FILE_H) | ((pawns << 9) & ~FILE_A);
+        }
+        return ((pawns >>> 9) & ~FILE_H) | ((pawns >>> 7) & ~FILE_A);
+    }
+
+    /**
+     * Computes rook attacks from a square, stopping at the first blocker in
+     * each direction (the blocker itself is included).
+     *
+     * @param square The rook square
+     * @param occupied Bitboard of all occupied squares
+     * @return Bitboard of attacked squares
+     */
+    public static long rookAttacks(int square, long occupied) {
+        return ray(square, occupied, 1, 0) | ray(square, occupied, -1, 0)
+                | ray(square, occupied, 0, 1) | ray(square, occupied, 0, -1);
+    }
+
+    /**
+     * Computes bishop attacks from a square, stopping at the first blocker in
+     * each direction (the blocker itself is included).
+     *
+     * @param square The bishop square
+     * @param occupied Bitboard of all occupied squares
+     * @return Bitboard of attacked squares
+     */
+    public static long bishopAttacks(int square, long occupied) {
+        return ray(square, occupied, 1, 1) | ray(square, occupied, 1, -1)
+                | ray(square, occupied, -1, 1) | ray(square, occupied, -1, -1);
+    }
+
+    /**
+     * Computes the squares strictly between two squares on a shared rank, file
+     * or diagonal.
+     *
+     * @param from The first square
+     * @param to The second square
+     * @return Bitboard of the squares in between, or 0 if the squares are not aligned
+     */
+    public static long between(int from, int to) {
+        int fileStep = Integer.compare(to & 7, from & 7);
+        int rankStep = Integer.compare(to >>> 3, from >>> 3);
+        int fileDistance = Math.abs((to & 7) - (from & 7));
+        int rankDistance = Math.abs((to >>> 3) - (from >>> 3));
+        if (from == to || (fileDistance != 0 && rankDistance != 0 && fileDistance != rankDistance)) {
+            return 0L;
+        }
+
+        long squares = 0L;
+        int step = rankStep * 8 + fileStep;
+        for (int sq = from + step; sq != to; sq += step) {
+            squares |= bit(sq);
+        }
+        return squares;
+    }
+
+    private static long ray(int square, long occupied, int fileStep, int rankStep) {
+        long attacks = 0L;
+        int file = (square & 7) + fileStep;
+        int rank = (square >>> 3) + rankStep;
+        while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+            long b = bit(rank * 8 + file);
+            attacks |= b;
+            if ((occupied & b) != 0) {
+                break;
+            }
+            file += fileStep;
+            rank += rankStep;
+        }
+        return attacks;
+    }
+}
@@ -1,13 +1,24 @@
 package com.checkmate.utils;
 
 import com.checkmate.model.Board;
-import com.checkmate.model.Piece;
+import com.checkmate.model.Position;
 
+import java.util.Arrays;
+
+import static com.checkmate.utils.Bitboards.bit;
+
+/**
+ * Chess rules for validating and applying moves.
+ *
+ * The Board-based methods keep the row/column API used by the controllers and
+ * tests, but all rule checks run against the bitboard {@link Position}
+ * produced by the board, never against its Piece[][] view.
+ */
 public class ChessUtils {
 
     /**
      * Checks if a move is valid according to chess rules.
-     * 
+     *
      * @param board The current chess board state
      * @param fromRow The row of the piece to be moved
      * @param fromCol The column of the piece to be moved
@@ -22,75 +33,127 @@ public class ChessUtils {
             toRow < 0 || toRow >= 8 || toCol < 0 || toCol >= 8) {
             return false;
         }
-        
-        // Check if there's a piece at the source position
-        Piece piece = board.getSquares()[fromRow][fromCol];
-        if (piece == null || !piece.getColor().equals(currentPlayer)) {
+
+        return isValidMove(board.getPosition(), Bitboards.square(fromRow, fromCol),
+                Bitboards.square(toRow, toCol), Position.colourOf(currentPlayer));
+    }
+
+    /**
+     * Validates if a move is legal according to chess rules
+     *
+     * @param board the current board state
+     * @param fromRow starting row (0-7)
+     * @param fromCol starting column (0-7)
+     * @param toRow destination row (0-7)
+     * @param toCol destination column (0-7)
+     * @return true if the move is valid, false otherwise
+     */
+    public static boolean isValidMove(Board board, int fromRow, int fromCol, int toRow, int toCol) {
+        // Check if coordinates are within bounds
+        if (fromRow < 0 || fromRow >= 8 || fromCol < 0 || fromCol >= 8 ||
+            toRow < 0 || toRow >= 8 || toCol < 0 || toCol >= 8) {
             return false;
         }
-        
+
+        // The position's side to move mirrors the board's current turn
+        Position position = board.getPosition();
+        return isValidMove(position, Bitboards.square(fromRow, fromCol),
+                Bitboards.square(toRow, toCol), position.getSideToMove());
+    }
+
+    /**
+     * Checks if a move is valid according to chess rules.
+     *
+     * @param position The current position
+     * @param from The square of the piece to be moved
+     * @param to The destination square
+     * @param colour The colour making the move (Position.WHITE or Position.BLACK)
+     * @return true if the move is valid, false otherwise
+     */
+    public static boolean isValidMove(Position position, int from, int to, int colour) {
+        // Check if there's a piece of the moving colour at the source square
+        int piece = position.pieceAt(from);
+        if (piece == Position.NO_PIECE || Position.colourOf(piece) != colour) {
+            return false;
+        }
+
         // Check if the destination has a piece of the same color
-        Piece target = board.getSquares()[toRow][toCol];
-        if (target != null && target.getColor().equals(currentPlayer)) {
+        long target = bit(to);
+        if ((position.colour(colour) & target) != 0) {
             return false;
         }
-        
+
         // Check piece-specific movement rules
+        long occupied = position.getOccupied();
         boolean validPieceMove;
-        switch (piece.getType()) {
-            case "pawn":
-                validPieceMove = isPawnMoveValid(board, fromRow, fromCol, toRow, toCol);
+        switch (Position.typeOf(piece)) {
+            case Position.PAWN:
+                validPieceMove = isPawnMoveValid(position, from, to, colour);
                 break;
-            case "rook":
-                validPieceMove = isRookMoveValid(board, fromRow, fromCol, toRow, toCol);
+            case Position.KNIGHT:
+                validPieceMove = (Attacks.knight(from) & target) != 0;
                 break;
-            case "knight":
-                validPieceMove = isKnightMoveValid(fromRow, fromCol, toRow, toCol);
+            case Position.BISHOP:
+                validPieceMove = (Attacks.bishop(from, occupied) & target) != 0;
                 break;
-            case "bishop":
-                validPieceMove = isBishopMoveValid(board, fromRow, fromCol, toRow, toCol);
+            case Position.ROOK:
+                validPieceMove = (Attacks.rook(from, occupied) & target) != 0;
                 break;
-            case "queen":
-                validPieceMove = isQueenMoveValid(board, fromRow, fromCol, toRow, toCol);
+            case Position.QUEEN:
+                validPieceMove = (Attacks.queen(from, occupied) & target) != 0;
                 break;
-            case "king":
-                validPieceMove = isKingMoveValid(board, fromRow, fromCol, toRow, toCol, currentPlayer);
+            case Position.KING:
+                validPieceMove = (Attacks.king(from) & target) != 0
+                        || isValidCastling(position, from, to, colour);
                 break;
             default:
                 return false;
         }
-        
+
         if (!validPieceMove) {
             return false;
         }
-        
+
         // Check if the move would leave the player's king in check
-        if (wouldMoveExposeKingToCheck(board, fromRow, fromCol, toRow, toCol, currentPlayer)) {
+        return !wouldMoveExposeKingToCheck(position, from, to, colour);
+    }
+
+    /**
+     * Checks if an encoded move is legal for the side to move, flags and
+     * promotion piece included. Lets a search try a remembered move (from the
+     * transposition table or a sibling node) without generating every move
+     * first.
+     *
+     * @param position The current position
+     * @param move The encoded move
+     * @return true if the move is exactly one the generator would produce
+     */
+    public static boolean isLegalMove(Position position, int move) {
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        if (from == to) {
             return false;
         }
-        
-        return true;
+        int promotionType = Moves.isPromotion(move) ? Moves.promotionType(move) : Position.QUEEN;
+        return Moves.infer(position, from, to, promotionType) == move
+                && isValidMove(position, from, to, position.getSideToMove());
     }
-    
+
     /**
-     * Validates if a move is legal according to chess rules
-     * 
-     * @param board the current board state
-     * @param fromRow starting row (0-7)
-     * @param fromCol starting column (0-7)
-     * @param toRow destination row (0-7)
-     * @param toCol destination column (0-7)
-     * @return true if the move is valid, false otherwise
+     * Lists every legal move for the side to move on the board.
+     *
+     * @param board The current chess board state
+     * @return The legal moves, encoded as described in {@link Moves}
      */
-    public static boolean isValidMove(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Get the current player's color from the board
-        String currentPlayer = board.getCurrentTurn().toLowerCase();
-        return isValidMove(board, fromRow, fromCol, toRow, toCol, currentPlayer);
+    public static int[] generateLegalMoves(Board board) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(board.getPosition(), moves);
+        return Arrays.copyOf(moves, count);
     }
-    
+
     /**
      * Makes a move on the board and returns the updated board
-     * 
+     *
      * @param board the current board state
      * @param fromRow starting row (0-7)
      * @param fromCol starting column (0-7)
@@ -99,430 +162,342 @@ public class ChessUtils {
      * @return the updated board after the move
      */
     public static Board makeMove(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Apply the move to the board
-        applyMove(board, fromRow, fromCol, toRow, toCol);
-        
+        Position position = board.getPosition();
+        int move = Moves.infer(position, Bitboards.square(fromRow, fromCol), Bitboards.square(toRow, toCol), Position.QUEEN);
+        return makeMove(board, move);
+    }
+
+    /**
+     * Makes an encoded move on the board, such as one chosen by the engine,
+     * and returns the updated board. Unlike the row/column version this can
+     * play underpromotions.
+     *
+     * @param board the current board state
+     * @param move the encoded move (see {@link Moves}), assumed legal
+     * @return the updated board after the move
+     */
+    public static Board makeMove(Board board, int move) {
+        Position position = board.getPosition();
+        long previousHash = position.getHash();
+        // Play the move on the position, which also passes the turn and
+        // advances the clocks so the stored FEN stays complete
+        if (move != Moves.NONE) {
+            position.makeMove(move);
+            board.refreshSquares();
+        }
+
         // Toggle the current player's turn
         board.toggleTurn();
-        
-        // Update the board state from the pieces array
+
+        // Remember the new position for threefold repetition
+        board.recordPosition(previousHash);
+
+        // Update the board state from the position
         board.updateBoardState();
-        
+
         return board;
     }
-    
+
     /**
-     * Checks if moving the piece would expose the king to check.
-     * 
+     * Works out whether the game on a board has ended: checkmate or stalemate
+     * for the side to move, insufficient material, the fifty-move rule or
+     * threefold repetition (using the positions recorded by
+     * {@link Board#recordPosition(long)}). Mate and stalemate are found with
+     * {@link MoveGenerator#hasLegalMove(Position)}, which stops at the first
+     * legal move instead of listing them all.
+     *
      * @param board The current chess board state
-     * @param fromRow The row of the piece to be moved
-     * @param fromCol The column of the piece to be moved
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @param playerColor The color of the player making the move
-     * @return true if the move would expose the king to check, false otherwise
+     * @return The result, IN_PROGRESS if the game goes on
      */
-    private static boolean wouldMoveExposeKingToCheck(Board board, int fromRow, int fromCol, int toRow, int toCol, String playerColor) {
-        // Create a temporary board to simulate the move
-        Board tempBoard = new Board();
-        Piece[][] originalSquares = board.getSquares();
-        Piece[][] tempSquares = tempBoard.getSquares();
-        
-        // Copy the current state to the temporary board
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                if (originalSquares[r][c] != null) {
-                    tempSquares[r][c] = new Piece(originalSquares[r][c].getType(), 
-                                                 originalSquares[r][c].getColor(),
-                                                 originalSquares[r][c].getSymbol());
-                    tempSquares[r][c].setHasMoved(originalSquares[r][c].getHasMoved());
-                } else {
-                    tempSquares[r][c] = null;
-                }
-            }
+    public static GameResult getGameResult(Board board) {
+        Position position = board.getPosition();
+        if (!MoveGenerator.hasLegalMove(position)) {
+            return isInCheck(position, position.getSideToMove()) ? GameResult.CHECKMATE : GameResult.STALEMATE;
         }
-        
-        // Simulate the move
-        Piece movingPiece = tempSquares[fromRow][fromCol];
-        tempSquares[toRow][toCol] = movingPiece;
-        tempSquares[fromRow][fromCol] = null;
-        
-        // Handle castling (moving the rook)
-        if (movingPiece.getType().equals("king") && Math.abs(fromCol - toCol) == 2) {
-            int rookFromCol = toCol > fromCol ? 7 : 0;
-            int rookToCol = toCol > fromCol ? toCol - 1 : toCol + 1;
-            Piece rook = tempSquares[fromRow][rookFromCol];
-            if (rook != null) {
-                tempSquares[fromRow][rookToCol] = rook;
-                tempSquares[fromRow][rookFromCol] = null;
-            }
+        if (isInsufficientMaterial(position)) {
+            return GameResult.INSUFFICIENT_MATERIAL;
         }
-        
-        // Find the king's position
-        int kingRow = -1, kingCol = -1;
-        if (movingPiece.getType().equals("king")) {
-            kingRow = toRow;
-            kingCol = toCol;
-        } else {
-            // Find the king's position on the temporary board
-            for (int r = 0; r < 8; r++) {
-                for (int c = 0; c < 8; c++) {
-                    Piece p = tempSquares[r][c];
-                    if (p != null && p.getType().equals("king") && p.getColor().equals(playerColor)) {
-                        kingRow = r;
-                        kingCol = c;
-                        break;
-                    }
-                }
-                if (kingRow != -1) break;
-            }
+        if (position.getHalfmoveClock() >= 100) {
+            return GameResult.FIFTY_MOVE_RULE;
         }
-        
-        // If no king is found, assume no check (shouldn't happen in a valid game)
-        if (kingRow == -1) return false;
-        
-        // Check if any opponent piece can attack the king
-        String opponentColor = playerColor.equals("white") ? "black" : "white";
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece p = tempSquares[r][c];
-                if (p != null && p.getColor().equals(opponentColor)) {
-                    if (canPieceAttackSquare(tempBoard, r, c, kingRow, kingCol)) {
-                        return true; // King would be in check
-                    }
-                }
-            }
+        if (board.countRepetitions() >= 3) {
+            return GameResult.THREEFOLD_REPETITION;
         }
-        
-        return false; // King would not be in check
+        return GameResult.IN_PROGRESS;
     }
-    
+
     /**
-     * Checks if a piece can attack a specific square.
-     * 
-     * @param board The current chess board state
-     * @param pieceRow The row of the attacking piece
-     * @param pieceCol The column of the attacking piece
-     * @param targetRow The row of the target square
-     * @param targetCol The column of the target square
-     * @return true if the piece can attack the target square, false otherwise
+     * Checks if neither side has enough material left to checkmate: kings
+     * with at most one knight or bishop between them, or only bishops that
+     * all stand on squares of the same colour.
+     *
+     * @param position The current position
+     * @return true if no checkmate is possible
      */
-    private static boolean canPieceAttackSquare(Board board, int pieceRow, int pieceCol, int targetRow, int targetCol) {
-        Piece piece = board.getSquares()[pieceRow][pieceCol];
-        if (piece == null) return false;
-        
-        switch (piece.getType()) {
-            case "pawn":
-                // Pawns attack diagonally
-                int direction = piece.getColor().equals("white") ? -1 : 1;
-                return pieceRow + direction == targetRow && Math.abs(pieceCol - targetCol) == 1;
-                
-            case "rook":
-                // Rooks attack horizontally or vertically
-                if ((pieceRow == targetRow || pieceCol == targetCol) && 
-                    isPathClear(board, pieceRow, pieceCol, targetRow, targetCol)) {
-                    return true;
-                }
-                return false;
-                
-            case "knight":
-                // Knights attack in L-shape and can jump over pieces
-                return (Math.abs(pieceRow - targetRow) == 2 && Math.abs(pieceCol - targetCol) == 1) ||
-                       (Math.abs(pieceRow - targetRow) == 1 && Math.abs(pieceCol - targetCol) == 2);
-                
-            case "bishop":
-                // Bishops attack diagonally
-                if (Math.abs(pieceRow - targetRow) == Math.abs(pieceCol - targetCol) && 
-                    isPathClear(board, pieceRow, pieceCol, targetRow, targetCol)) {
-                    return true;
-                }
-                return false;
-                
-            case "queen":
-                // Queens attack horizontally, vertically, or diagonally
-                if ((pieceRow == targetRow || pieceCol == targetCol || 
-                     Math.abs(pieceRow - targetRow) == Math.abs(pieceCol - targetCol)) && 
-                    isPathClear(board, pieceRow, pieceCol, targetRow, targetCol)) {
-                    return true;
-                }
-                return false;
-                
-            case "king":
-                // Kings attack one square in any direction
-                return Math.abs(pieceRow - targetRow) <= 1 && Math.abs(pieceCol - targetCol) <= 1;
-                
-            default:
-                return false;
+    public static boolean isInsufficientMaterial(Position position) {
+        long heavy = 0L;
+        long knights = 0L;
+        long bishops = 0L;
+        for (int colour = Position.WHITE; colour <= Position.BLACK; colour++) {
+            heavy |= position.pieces(colour, Position.PAWN) | position.pieces(colour, Position.ROOK)
+                    | position.pieces(colour, Position.QUEEN);
+            knights |= position.pieces(colour, Position.KNIGHT);
+            bishops |= position.pieces(colour, Position.BISHOP);
+        }
+        if (heavy != 0) {
+            return false;
         }
+        if (Long.bitCount(knights | bishops) <= 1) {
+            return true;
+        }
+        return knights == 0 && ((bishops & Bitboards.DARK_SQUARES) == 0 || (bishops & ~Bitboards.DARK_SQUARES) == 0);
     }
-    
+
     /**
-     * Checks if a pawn move is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the pawn
-     * @param fromCol The column of the pawn
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return true if the pawn move is valid, false otherwise
+     * Checks if a square is attacked by any piece of the given colour.
+     *
+     * @param position The current position
+     * @param square The square to test
+     * @param byColour The attacking colour
+     * @return true if at least one piece of byColour attacks the square
      */
-    private static boolean isPawnMoveValid(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        Piece pawn = board.getSquares()[fromRow][fromCol];
-        String color = pawn.getColor();
-        
-        // Define direction based on color
-        int direction = color.equals("white") ? -1 : 1;
-        int startRow = color.equals("white") ? 6 : 1;
-        
-        Piece targetPiece = board.getSquares()[toRow][toCol];
-        boolean isCapture = targetPiece != null;
-        
-        // Forward movement (no capture)
-        if (fromCol == toCol && !isCapture) {
-            // Single step forward
-            if (toRow == fromRow + direction) {
-                return true;
-            }
-            
-            // Double step from starting position
-            if (fromRow == startRow && toRow == fromRow + 2 * direction) {
-                // Check if path is clear
-                return board.getSquares()[fromRow + direction][fromCol] == null;
-            }
-        }
-        
-        // Diagonal capture
-        if (Math.abs(fromCol - toCol) == 1 && toRow == fromRow + direction) {
-            return isCapture;
-        }
-        
-        return false;
+    public static boolean isSquareAttacked(Position position, int square, int byColour) {
+        return isSquareAttacked(position, square, byColour, position.getOccupied());
     }
-    
+
     /**
-     * Checks if a rook move is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the rook
-     * @param fromCol The column of the rook
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return true if the rook move is valid, false otherwise
+     * Checks if a square is attacked by any piece of the given colour, with
+     * sliding attacks computed against a custom occupancy (e.g. with the
+     * defending king lifted off the board).
+     *
+     * @param position The current position
+     * @param square The square to test
+     * @param byColour The attacking colour
+     * @param occupied The occupancy to use for sliding pieces
+     * @return true if at least one piece of byColour attacks the square
      */
-    private static boolean isRookMoveValid(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Rooks move horizontally or vertically
-        if (fromRow != toRow && fromCol != toCol) {
-            return false;
+    public static boolean isSquareAttacked(Position position, int square, int byColour, long occupied) {
+        // A pawn of byColour attacks the square if it stands where a pawn of the
+        // other colour on the square would attack
+        if ((Attacks.pawn(byColour ^ 1, square) & position.pieces(byColour, Position.PAWN)) != 0
+                || (Attacks.knight(square) & position.pieces(byColour, Position.KNIGHT)) != 0
+                || (Attacks.king(square) & position.pieces(byColour, Position.KING)) != 0) {
+            return true;
         }
-        
-        return isPathClear(board, fromRow, fromCol, toRow, toCol);
+
+        long queens = position.pieces(byColour, Position.QUEEN);
+        long diagonal = position.pieces(byColour, Position.BISHOP) | queens;
+        long straight = position.pieces(byColour, Position.ROOK) | queens;
+        return (Attacks.bishop(square, occupied) & diagonal) != 0
+                || (Attacks.rook(square, occupied) & straight) != 0;
     }
-    
+
     /**
-     * Checks if a knight move is valid according to chess rules.
-     * 
-     * @param fromRow The row of the knight
-     * @param fromCol The column of the knight
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return true if the knight move is valid, false otherwise
+     * Gets every piece of a colour that attacks a square.
+     *
+     * @param position The current position
+     * @param square The square to test
+     * @param byColour The attacking colour
+     * @return Bitboard of the attacking pieces
      */
-    private static boolean isKnightMoveValid(int fromRow, int fromCol, int toRow, int toCol) {
-        // Knights move in an L-shape
-        return (Math.abs(fromRow - toRow) == 2 && Math.abs(fromCol - toCol) == 1) ||
-               (Math.abs(fromRow - toRow) == 1 && Math.abs(fromCol - toCol) == 2);
+    public static long attackersTo(Position position, int square, int byColour) {
+        long occupied = position.getOccupied();
+        long queens = position.pieces(byColour, Position.QUEEN);
+        return (Attacks.pawn(byColour ^ 1, square) & position.pieces(byColour, Position.PAWN))
+                | (Attacks.knight(square) & position.pieces(byColour, Position.KNIGHT))
+                | (Attacks.king(square) & position.pieces(byColour, Position.KING))
+                | (Attacks.bishop(square, occupied) & (position.pieces(byColour, Position.BISHOP) | queens))
+                | (Attacks.rook(square, occupied) & (position.pieces(byColour, Position.ROOK) | queens));
     }
-    
+
     /**
-     * Checks if a bishop move is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the bishop
-     * @param fromCol The column of the bishop
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return true if the bishop move is valid, false otherwise
+     * Gets the enemy pieces giving check to a colour's king.
+     *
+     * @param position The current position
+     * @param colour The colour of the king
+     * @return Bitboard of checking pieces, empty if there is no king
      */
-    private static boolean isBishopMoveValid(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Bishops move diagonally
-        if (Math.abs(fromRow - toRow) != Math.abs(fromCol - toCol)) {
-            return false;
-        }
-        
-        return isPathClear(board, fromRow, fromCol, toRow, toCol);
+    public static long checkers(Position position, int colour) {
+        int kingSquare = position.kingSquare(colour);
+        return kingSquare < 0 ? 0L : attackersTo(position, kingSquare, colour ^ 1);
     }
-    
+
     /**
-     * Checks if a queen move is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the queen
-     * @param fromCol The column of the queen
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return true if the queen move is valid, false otherwise
+     * Gets the pieces of a colour that are pinned to their own king by an
+     * enemy rook, bishop or queen. A pinned piece may only move along the
+     * line through its king and itself ({@link Attacks#line(int, int)}).
+     *
+     * @param position The current position
+     * @param colour The colour of the king
+     * @return Bitboard of pinned pieces, empty if there is no king
      */
-    private static boolean isQueenMoveValid(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Queens move like bishops or rooks
-        boolean isDiagonal = Math.abs(fromRow - toRow) == Math.abs(fromCol - toCol);
-        boolean isStraight = fromRow == toRow || fromCol == toCol;
-        
-        if (!isDiagonal && !isStraight) {
-            return false;
+    public static long pinnedPieces(Position position, int colour) {
+        int kingSquare = position.kingSquare(colour);
+        if (kingSquare < 0) {
+            return 0L;
+        }
+
+        int them = colour ^ 1;
+        long occupied = position.getOccupied();
+        long queens = position.pieces(them, Position.QUEEN);
+
+        // Enemy sliders that would attack the king if only enemy pieces blocked
+        long snipers = (Attacks.rook(kingSquare, position.colour(them)) & (position.pieces(them, Position.ROOK) | queens))
+                | (Attacks.bishop(kingSquare, position.colour(them)) & (position.pieces(them, Position.BISHOP) | queens));
+
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between(kingSquare, sniper) & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & position.colour(colour);
+            }
         }
-        
-        return isPathClear(board, fromRow, fromCol, toRow, toCol);
+        return pinned;
     }
-    
+
     /**
-     * Checks if a king move is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the king
-     * @param fromCol The column of the king
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @param currentPlayer The color of the player making the move
-     * @return true if the king move is valid, false otherwise
+     * Checks if a colour's king is currently in check.
+     *
+     * @param position The current position
+     * @param colour The colour of the king
+     * @return true if the king is attacked, false if it is safe or there is no king
      */
-    private static boolean isKingMoveValid(Board board, int fromRow, int fromCol, int toRow, int toCol, String currentPlayer) {
-        // Regular king move (one square in any direction)
-        if (Math.abs(fromRow - toRow) <= 1 && Math.abs(fromCol - toCol) <= 1) {
-            return true;
-        }
-        
-        // Castling (king moves two squares horizontally)
-        if (fromRow == toRow && Math.abs(fromCol - toCol) == 2) {
-            return isValidCastling(board, fromRow, fromCol, toRow, toCol, currentPlayer);
-        }
-        
-        return false;
+    public static boolean isInCheck(Position position, int colour) {
+        int kingSquare = position.kingSquare(colour);
+        return kingSquare >= 0 && isSquareAttacked(position, kingSquare, colour ^ 1);
     }
-    
+
     /**
-     * Checks if castling is valid according to chess rules.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the king
-     * @param fromCol The column of the king
-     * @param toRow The destination row of the king
-     * @param toCol The destination column of the king
-     * @param currentPlayer The color of the player making the move
-     * @return true if castling is valid, false otherwise
+     * Checks if moving the piece would expose the king to check, using the
+     * checkers and pinned pieces of the position instead of playing the move.
+     * Only en passant captures, which remove two pieces from one line, are
+     * made and taken back on the position to be sure.
+     *
+     * @param position The current position
+     * @param from The square of the piece to be moved
+     * @param to The destination square
+     * @param colour The colour of the player making the move
+     * @return true if the move would expose the king to check, false otherwise
      */
-    private static boolean isValidCastling(Board board, int fromRow, int fromCol, int toRow, int toCol, String currentPlayer) {
-        Piece king = board.getSquares()[fromRow][fromCol];
-        
-        // King must not have moved yet
-        if (king.getHasMoved()) {
-            return false;
-        }
-        
-        // Determine if it's kingside or queenside castling
-        boolean isKingsideCastling = toCol > fromCol;
-        int rookCol = isKingsideCastling ? 7 : 0;
-        
-        // Check if the rook is in position and hasn't moved
-        Piece rook = board.getSquares()[fromRow][rookCol];
-        if (rook == null || !rook.getType().equals("rook") || 
-            !rook.getColor().equals(currentPlayer) || rook.getHasMoved()) {
-            return false;
-        }
-        
-        // Check if the path between king and rook is clear
-        if (!isPathClear(board, fromRow, fromCol, fromRow, rookCol)) {
+    private static boolean wouldMoveExposeKingToCheck(Position position, int from, int to, int colour) {
+        int kingSquare = position.kingSquare(colour);
+        // If no king is found, assume no check (shouldn't happen in a valid game)
+        if (kingSquare < 0) {
             return false;
         }
-        
-        // Check if the king is in check
-        if (isKingInCheck(board, fromRow, fromCol, currentPlayer)) {
-            return false;
+
+        int them = colour ^ 1;
+        if (from == kingSquare) {
+            // The king may not step onto an attacked square, including one
+            // that is only shielded from a slider by the king itself
+            return isSquareAttacked(position, to, them, position.getOccupied() ^ bit(from));
         }
-        
-        // Check if king would move through or into check
-        int direction = isKingsideCastling ? 1 : -1;
-        int midCol = fromCol + direction;
-        
-        // Simulate the move to check squares the king passes through
-        Board tempBoard = simulateMove(board, fromRow, fromCol, fromRow, midCol);
-        if (isKingInCheck(tempBoard, fromRow, midCol, currentPlayer)) {
-            return false; // King would move through check
+
+        int piece = position.pieceAt(from);
+        if (Position.typeOf(piece) == Position.PAWN && to == position.getEnPassantSquare() && ((from ^ to) & 7) != 0) {
+            int move = Moves.encode(from, to, Moves.EN_PASSANT);
+            position.makeMove(move);
+            boolean inCheck = isInCheck(position, colour);
+            position.unmakeMove(move);
+            return inCheck;
         }
-        
-        tempBoard = simulateMove(board, fromRow, fromCol, fromRow, toCol);
-        if (isKingInCheck(tempBoard, fromRow, toCol, currentPlayer)) {
-            return false; // King would end up in check
+
+        // In check, a move must capture the single checker or block its line
+        long checkers = attackersTo(position, kingSquare, them);
+        if (checkers != 0) {
+            if ((checkers & (checkers - 1)) != 0) {
+                return true;
+            }
+            long checkMask = checkers | Attacks.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+            if ((checkMask & bit(to)) == 0) {
+                return true;
+            }
         }
-        
-        return true;
+
+        // A pinned piece must stay on the line through its king
+        return (pinnedPieces(position, colour) & bit(from)) != 0
+                && (Attacks.line(kingSquare, from) & bit(to)) == 0;
     }
-    
+
     /**
-     * Simulates a move on a temporary board without modifying the original board.
-     * 
-     * @param board The current chess board state
-     * @param fromRow The row of the piece to be moved
-     * @param fromCol The column of the piece to be moved
-     * @param toRow The destination row
-     * @param toCol The destination column
-     * @return A new board with the simulated move applied
+     * Checks if a pawn move is valid according to chess rules.
+     *
+     * @param position The current position
+     * @param from The square of the pawn
+     * @param to The destination square
+     * @param colour The colour of the pawn
+     * @return true if the pawn move is valid, false otherwise
      */
-    private static Board simulateMove(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        Board tempBoard = new Board();
-        Piece[][] origSquares = board.getSquares();
-        Piece[][] tempSquares = tempBoard.getSquares();
-        
-        // Create a deep copy of the board
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                if (origSquares[r][c] != null) {
-                    tempSquares[r][c] = new Piece(origSquares[r][c].getType(), 
-                                                origSquares[r][c].getColor(),
-                                                origSquares[r][c].getSymbol());
-                    tempSquares[r][c].setHasMoved(origSquares[r][c].getHasMoved());
-                } else {
-                    tempSquares[r][c] = null;
-                }
+    private static boolean isPawnMoveValid(Position position, int from, int to, int colour) {
+        boolean white = colour == Position.WHITE;
+        long occupied = position.getOccupied();
+        long target = bit(to);
+        int forward = white ? 8 : -8;
+
+        // Forward movement (no capture)
+        if ((occupied & target) == 0) {
+            // Single step forward
+            if (to == from + forward) {
+                return true;
+            }
+
+            // Double step from starting position, with the skipped square empty
+            long startRank = white ? Bitboards.RANK_2 : Bitboards.RANK_7;
+            if ((bit(from) & startRank) != 0 && to == from + 2 * forward) {
+                return (occupied & bit(from + forward)) == 0;
             }
+            // En passant capture of a pawn that just made a double step
+            return to == position.getEnPassantSquare() && colour == position.getSideToMove()
+                    && (Attacks.pawn(colour, from) & target) != 0;
         }
-        
-        // Make the move
-        tempSquares[toRow][toCol] = tempSquares[fromRow][fromCol];
-        tempSquares[fromRow][fromCol] = null;
-        
-        return tempBoard;
+
+        // Diagonal capture
+        return (Attacks.pawn(colour, from) & target) != 0;
     }
-    
+
     /**
-     * Checks if the king is in check.
-     * 
-     * @param board The current chess board state
-     * @param kingRow The row of the king
-     * @param kingCol The column of the king
-     * @param kingColor The color of the king
-     * @return true if the king is in check, false otherwise
+     * Checks if castling is valid according to chess rules.
+     *
+     * @param position The current position
+     * @param from The square of the king
+     * @param to The destination square of the king
+     * @param colour The colour of the player making the move
+     * @return true if castling is valid, false otherwise
      */
-    private static boolean isKingInCheck(Board board, int kingRow, int kingCol, String kingColor) {
-        String opponentColor = kingColor.equals("white") ? "black" : "white";
-        
-        // Check if any opponent piece can attack the king
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece piece = board.getSquares()[r][c];
-                if (piece != null && piece.getColor().equals(opponentColor)) {
-                    if (canPieceAttackSquare(board, r, c, kingRow, kingCol)) {
-                        return true;
-                    }
-                }
-            }
+    private static boolean isValidCastling(Position position, int from, int to, int colour) {
+        int homeSquare = colour == Position.WHITE ? 4 : 60;
+        if (from != homeSquare || (to != from + 2 && to != from - 2)) {
+            return false;
+        }
+
+        // The right is lost once the king or that rook has moved
+        boolean isKingsideCastling = to > from;
+        int right = isKingsideCastling
+                ? (colour == Position.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE)
+                : (colour == Position.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE);
+        if ((position.getCastlingRights() & right) == 0) {
+            return false;
+        }
+
+        // Check if the path between king and rook is clear
+        int rookSquare = isKingsideCastling ? from + 3 : from - 4;
+        if ((Attacks.between(from, rookSquare) & position.getOccupied()) != 0) {
+            return false;
         }
-        
-        return false;
+
+        // The king may not castle out of, through or into check
+        int opponent = colour ^ 1;
+        int midSquare = isKingsideCastling ? from + 1 : from - 1;
+        return !isSquareAttacked(position, from, opponent)
+                && !isSquareAttacked(position, midSquare, opponent)
+                && !isSquareAttacked(position, to, opponent);
     }
-    
+
     /**
      * Checks if the path between two positions is clear of any pieces.
-     * 
+     *
      * @param board The current chess board state
      * @param fromRow The starting row
      * @param fromCol The starting column
@@ -531,30 +506,25 @@ public class ChessUtils {
      * @return true if the path is clear, false if any piece is blocking the path
      */
     public static boolean isPathClear(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        // Get direction of movement
-        int rowStep = Integer.compare(toRow, fromRow);
-        int colStep = Integer.compare(toCol, fromCol);
-        
-        // Start from the square after the start position
-        int row = fromRow + rowStep;
-        int col = fromCol + colStep;
-        
-        // Check each square along the path (excluding the destination)
-        while (row != toRow || col != toCol) {
-            if (board.getSquares()[row][col] != null) {
-                return false; // Path is blocked
-            }
-            row += rowStep;
-            col += colStep;
-        }
-        
-        return true; // Path is clear
+        return isPathClear(board.getPosition(), Bitboards.square(fromRow, fromCol), Bitboards.square(toRow, toCol));
+    }
+
+    /**
+     * Checks if the squares strictly between two squares are empty.
+     *
+     * @param position The current position
+     * @param from The starting square
+     * @param to The ending square
+     * @return true if the path is clear, false if any piece is blocking the path
+     */
+    public static boolean isPathClear(Position position, int from, int to) {
+        return (Attacks.between(from, to) & position.getOccupied()) == 0;
     }
-    
+
     /**
      * Applies a move to the board, updating the position of the pieces.
      * Also handles special moves like castling.
-     * 
+     *
      * @param board The chess board to modify
      * @param fromRow The row of the piece to be moved
      * @param fromCol The column of the piece to be moved
@@ -562,34 +532,13 @@ public class ChessUtils {
      * @param toCol The destination column
      */
     public static void applyMove(Board board, int fromRow, int fromCol, int toRow, int toCol) {
-        Piece piece = board.getSquares()[fromRow][fromCol];
-        
-        // Mark the piece as moved
-        if (piece != null) {
-            piece.setHasMoved(true);
-        }
-        
-        // Move the piece
-        board.getSquares()[toRow][toCol] = piece;
-        board.getSquares()[fromRow][fromCol] = null;
-        
-        // Handle castling (move the rook too)
-        if (piece != null && piece.getType().equals("king") && Math.abs(fromCol - toCol) == 2) {
-            int rookFromCol = toCol > fromCol ? 7 : 0;
-            int rookToCol = toCol > fromCol ? toCol - 1 : toCol + 1;
-            
-            Piece rook = board.getSquares()[fromRow][rookFromCol];
-            if (rook != null && rook.getType().equals("rook")) {
-                rook.setHasMoved(true);
-                board.getSquares()[fromRow][rookToCol] = rook;
-                board.getSquares()[fromRow][rookFromCol] = null;
-            }
-        }
+        board.getPosition().applyMove(Bitboards.square(fromRow, fromCol), Bitboards.square(toRow, toCol));
+        board.refreshSquares();
     }
-    
+
     /**
      * Performs a castling move, moving both the king and rook.
-     * 
+     *
      * @param board The chess board to modify
      * @param kingRow The row of the king
      * @param kingCol The column of the king
@@ -598,28 +547,33 @@ public class ChessUtils {
      * @throws IllegalArgumentException If the pieces at the provided positions are not a king and a rook
      */
     public static void castleRookWithKing(Board board, int kingRow, int kingCol, int rookRow, int rookCol) {
-        Piece king = board.getSquares()[kingRow][kingCol];
-        Piece rook = board.getSquares()[rookRow][rookCol];
-        
-        if (king == null || rook == null || !king.getType().equals("king") || !rook.getType().equals("rook")) {
+        Position position = board.getPosition();
+        int kingSquare = Bitboards.square(kingRow, kingCol);
+        int rookSquare = Bitboards.square(rookRow, rookCol);
+        int king = position.pieceAt(kingSquare);
+        int rook = position.pieceAt(rookSquare);
+
+        if (king == Position.NO_PIECE || rook == Position.NO_PIECE
+                || Position.typeOf(king) != Position.KING || Position.typeOf(rook) != Position.ROOK) {
             throw new IllegalArgumentException("Castling requires a king and a rook");
         }
-        
+
         // Kingside or queenside castling
         boolean isKingsideCastle = rookCol > kingCol;
-        
+
         // New positions
-        int newKingCol = isKingsideCastle ? kingCol + 2 : kingCol - 2;
-        int newRookCol = isKingsideCastle ? kingCol + 1 : kingCol - 1;
-        
-        // Mark pieces as moved
-        king.setHasMoved(true);
-        rook.setHasMoved(true);
-        
-        // Move pieces
-        board.getSquares()[kingRow][newKingCol] = king;
-        board.getSquares()[kingRow][newRookCol] = rook;
-        board.getSquares()[kingRow][kingCol] = null;
-        board.getSquares()[rookRow][rookCol] = null;
+        int newKingSquare = isKingsideCastle ? kingSquare + 2 : kingSquare - 2;
+        int newRookSquare = isKingsideCastle ? kingSquare + 1 : kingSquare - 1;
+
+        // Move pieces and drop the colour's castling rights
+        position.removePiece(king, kingSquare);
+        position.removePiece(rook, rookSquare);
+        position.putPiece(king, newKingSquare);
+        position.putPiece(rook, newRookSquare);
+        int colourRights = Position.colourOf(king) == Position.WHITE
+                ? Position.WHITE_KINGSIDE | Position.WHITE_QUEENSIDE
+                : Position.BLACK_KINGSIDE | Position.BLACK_QUEENSIDE;
+        position.setCastlingRights(position.getCastlingRights() & ~colourRights);
+        board.refreshSquares();
     }
-}
\ No newline at end of file
+}
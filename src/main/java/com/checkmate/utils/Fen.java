@@ -0,0 +1,271 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+/**
+ * Reads and writes Forsyth-Edwards Notation (FEN) for a {@link Position}.
+ *
+ * The parser walks the characters once, without split or regular expressions,
+ * and fills an existing Position. The writer fills a caller-supplied char
+ * buffer of at least {@link #MAX_LENGTH} characters, so a buffer can be kept
+ * and reused. All six fields are supported: piece placement, side to move,
+ * castling rights, en passant square, halfmove clock and fullmove number.
+ * Trailing fields may be left out (older boards stored only the placement);
+ * they then take their defaults of white to move, castling rights for kings
+ * and rooks on their starting squares, no en passant square and clocks 0 and 1.
+ */
+public final class Fen {
+
+    public static final String STARTING_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * The longest FEN the writer can produce (71 placement characters, the
+     * other fields at full width and a nine-digit fullmove number)
+     */
+    public static final int MAX_LENGTH = 100;
+
+    private static final String PIECE_CHARS = "PNBRQKpnbrqk";
+    private static final int MAX_HALFMOVE_CLOCK = 0xFFFF;
+    private static final int MAX_FULLMOVE_NUMBER = 999_999_999;
+
+    private Fen() {
+    }
+
+    /**
+     * Parses a FEN string into a position, replacing everything it held
+     * (including its undo history).
+     *
+     * @param fen The FEN string, with at least the piece placement field
+     * @param position The position to fill
+     * @return The number of fields that were present (1 to 6)
+     * @throws IllegalArgumentException If the string is not valid FEN
+     */
+    public static int parse(CharSequence fen, Position position) {
+        position.clear();
+        int length = fen.length();
+        int i = skipSpaces(fen, 0);
+
+        // 1. Piece placement, from the 8th rank down
+        int rank = 7;
+        int file = 0;
+        for (; i < length; i++) {
+            char c = fen.charAt(i);
+            if (c == ' ') {
+                break;
+            }
+            if (c == '/') {
+                if (file != 8 || rank == 0) {
+                    throw invalid(fen, "rank " + (rank + 1) + " does not have 8 squares");
+                }
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int piece = PIECE_CHARS.indexOf(c);
+                if (piece < 0 || file >= 8) {
+                    throw invalid(fen, "unexpected '" + c + "' in piece placement");
+                }
+                position.putPiece(piece, rank * 8 + file);
+                file++;
+            }
+            if (file > 8) {
+                throw invalid(fen, "rank " + (rank + 1) + " has more than 8 squares");
+            }
+        }
+        if (rank != 0 || file != 8) {
+            throw invalid(fen, "piece placement does not cover 8 ranks");
+        }
+
+        // 2. Side to move
+        i = skipSpaces(fen, i);
+        if (i == length) {
+            position.setCastlingRights(position.homeSquareCastlingRights());
+            return 1;
+        }
+        char side = fen.charAt(i++);
+        if ((side != 'w' && side != 'b') || (i < length && fen.charAt(i) != ' ')) {
+            throw invalid(fen, "side to move must be 'w' or 'b'");
+        }
+        position.setSideToMove(side == 'b' ? Position.BLACK : Position.WHITE);
+
+        // 3. Castling rights
+        i = skipSpaces(fen, i);
+        if (i == length) {
+            position.setCastlingRights(position.homeSquareCastlingRights());
+            return 2;
+        }
+        int rights = 0;
+        if (fen.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < length && fen.charAt(i) != ' '; i++) {
+                switch (fen.charAt(i)) {
+                    case 'K': rights |= Position.WHITE_KINGSIDE; break;
+                    case 'Q': rights |= Position.WHITE_QUEENSIDE; break;
+                    case 'k': rights |= Position.BLACK_KINGSIDE; break;
+                    case 'q': rights |= Position.BLACK_QUEENSIDE; break;
+                    default: throw invalid(fen, "unexpected '" + fen.charAt(i) + "' in castling rights");
+                }
+            }
+        }
+        position.setCastlingRights(rights);
+
+        // 4. En passant square
+        i = skipSpaces(fen, i);
+        if (i == length) {
+            return 3;
+        }
+        if (fen.charAt(i) == '-') {
+            i++;
+        } else {
+            char epFile = i + 1 < length ? fen.charAt(i) : 0;
+            char epRank = i + 1 < length ? fen.charAt(i + 1) : 0;
+            if (epFile < 'a' || epFile > 'h' || (epRank != '3' && epRank != '6')) {
+                throw invalid(fen, "bad en passant square");
+            }
+            position.setEnPassantSquare((epRank - '1') * 8 + (epFile - 'a'));
+            i += 2;
+        }
+
+        // 5. Halfmove clock
+        i = skipSpaces(fen, i);
+        if (i == length) {
+            return 4;
+        }
+        int end = numberEnd(fen, i);
+        position.setHalfmoveClock(parseNumber(fen, i, end, MAX_HALFMOVE_CLOCK, "halfmove clock"));
+        i = skipSpaces(fen, end);
+
+        // 6. Fullmove number
+        if (i == length) {
+            return 5;
+        }
+        end = numberEnd(fen, i);
+        position.setFullmoveNumber(parseNumber(fen, i, end, MAX_FULLMOVE_NUMBER, "fullmove number"));
+        if (skipSpaces(fen, end) != length) {
+            throw invalid(fen, "unexpected text after the fullmove number");
+        }
+        return 6;
+    }
+
+    /**
+     * Writes the full six-field FEN of a position into a buffer.
+     *
+     * @param position The position
+     * @param buffer The buffer to write into, at least {@link #MAX_LENGTH} long
+     * @return The number of characters written
+     */
+    public static int write(Position position, char[] buffer) {
+        int n = writePlacement(position, buffer, 0);
+        buffer[n++] = ' ';
+        buffer[n++] = position.getSideToMove() == Position.WHITE ? 'w' : 'b';
+        buffer[n++] = ' ';
+
+        int rights = position.getCastlingRights();
+        if (rights == 0) {
+            buffer[n++] = '-';
+        } else {
+            if ((rights & Position.WHITE_KINGSIDE) != 0) buffer[n++] = 'K';
+            if ((rights & Position.WHITE_QUEENSIDE) != 0) buffer[n++] = 'Q';
+            if ((rights & Position.BLACK_KINGSIDE) != 0) buffer[n++] = 'k';
+            if ((rights & Position.BLACK_QUEENSIDE) != 0) buffer[n++] = 'q';
+        }
+        buffer[n++] = ' ';
+
+        int epSquare = position.getEnPassantSquare();
+        if (epSquare < 0) {
+            buffer[n++] = '-';
+        } else {
+            buffer[n++] = (char) ('a' + (epSquare & 7));
+            buffer[n++] = (char) ('1' + (epSquare >>> 3));
+        }
+        buffer[n++] = ' ';
+        n = writeNumber(position.getHalfmoveClock(), buffer, n);
+        buffer[n++] = ' ';
+        return writeNumber(position.getFullmoveNumber(), buffer, n);
+    }
+
+    /**
+     * Writes only the piece placement field of a position.
+     *
+     * @param position The position
+     * @param buffer The buffer to write into
+     * @param offset Where to start writing
+     * @return The offset just past the last character written
+     */
+    public static int writePlacement(Position position, char[] buffer, int offset) {
+        int n = offset;
+        for (int rank = 7; rank >= 0; rank--) {
+            int emptyCount = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = position.pieceAt(rank * 8 + file);
+                if (piece == Position.NO_PIECE) {
+                    emptyCount++;
+                } else {
+                    if (emptyCount > 0) {
+                        buffer[n++] = (char) ('0' + emptyCount);
+                        emptyCount = 0;
+                    }
+                    buffer[n++] = PIECE_CHARS.charAt(piece);
+                }
+            }
+            if (emptyCount > 0) {
+                buffer[n++] = (char) ('0' + emptyCount);
+            }
+            if (rank > 0) {
+                buffer[n++] = '/';
+            }
+        }
+        return n;
+    }
+
+    private static int writeNumber(int value, char[] buffer, int offset) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int n = offset + digits;
+        for (int p = n - 1; p >= offset; p--) {
+            buffer[p] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return n;
+    }
+
+    private static int skipSpaces(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int numberEnd(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int parseNumber(CharSequence fen, int start, int end, int max, String field) {
+        if (start == end) {
+            throw invalid(fen, "missing " + field);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9') {
+                throw invalid(fen, field + " is not a number");
+            }
+            value = value * 10 + (c - '0');
+            if (value > max) {
+                throw invalid(fen, field + " is out of range");
+            }
+        }
+        return (int) value;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence fen, String reason) {
+        return new IllegalArgumentException("Invalid FEN \"" + fen + "\": " + reason);
+    }
+}
@@ -0,0 +1,31 @@
+package com.checkmate.utils;
+
+/**
+ * How a game stands after a move: still in progress, or finished and why.
+ */
+public enum GameResult {
+    IN_PROGRESS,
+    CHECKMATE,
+    STALEMATE,
+    INSUFFICIENT_MATERIAL,
+    FIFTY_MOVE_RULE,
+    THREEFOLD_REPETITION;
+
+    /**
+     * Checks if the game is over
+     *
+     * @return true for every result except IN_PROGRESS
+     */
+    public boolean isFinished() {
+        return this != IN_PROGRESS;
+    }
+
+    /**
+     * Checks if the game ended with a winner rather than a draw
+     *
+     * @return true only for CHECKMATE
+     */
+    public boolean isDecisive() {
+        return this == CHECKMATE;
+    }
+}
@@ -0,0 +1,498 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+import static com.checkmate.utils.Bitboards.bit;
+
+/**
+ * Generates the legal moves of a position, including castling, en passant
+ * and promotions. Moves are written as encoded ints (see {@link Moves}) into
+ * a caller-supplied buffer of at least {@link #MAX_MOVES} entries.
+ */
+public final class MoveGenerator {
+
+    /** Upper bound on the number of moves in any reachable position */
+    public static final int MAX_MOVES = 256;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Generates all legal moves for the side to move.
+     *
+     * The checkers and pinned pieces are computed once for the position and
+     * every move is filtered with mask tests: pieces not pinned move freely,
+     * pinned pieces stay on the line through their king, and in check only
+     * captures of the checker, blocks or king moves are kept. Only en passant
+     * captures are made and taken back to test for a discovered check.
+     *
+     * @param position The current position
+     * @param moves Buffer to write the encoded moves into
+     * @return The number of moves written
+     */
+    public static int generateLegalMoves(Position position, int[] moves) {
+        return generateLegalMoves(position, moves, true, true);
+    }
+
+    /**
+     * Generates the legal captures and promotions for the side to move
+     * (including en passant and non-capturing promotions). Together with
+     * {@link #generateQuietMoves(Position, int[])} this gives every legal
+     * move exactly once, so a search can put off generating quiet moves until
+     * the captures have failed to cut off.
+     *
+     * @param position The current position
+     * @param moves Buffer to write the encoded moves into
+     * @return The number of moves written
+     */
+    public static int generateNoisyMoves(Position position, int[] moves) {
+        return generateLegalMoves(position, moves, true, false);
+    }
+
+    /**
+     * Generates the legal moves that neither capture nor promote, castling
+     * included.
+     *
+     * @param position The current position
+     * @param moves Buffer to write the encoded moves into
+     * @return The number of moves written
+     */
+    public static int generateQuietMoves(Position position, int[] moves) {
+        return generateLegalMoves(position, moves, false, true);
+    }
+
+    private static int generateLegalMoves(Position position, int[] moves, boolean noisy, boolean quiet) {
+        int us = position.getSideToMove();
+        int them = us ^ 1;
+        int king = position.kingSquare(us);
+        if (king < 0) {
+            return filter(moves, generatePseudoLegalMoves(position, moves), noisy, quiet);
+        }
+
+        long own = position.colour(us);
+        long enemy = position.colour(them);
+        long occupied = position.getOccupied();
+        // Destinations that suit the kinds of move asked for (pawns sort
+        // out their own promotions)
+        long kinds = (noisy ? enemy : 0L) | (quiet ? ~occupied : 0L);
+
+        // King moves, judged with the king lifted off the board so it cannot
+        // shield itself from a slider it is moving away from
+        int count = 0;
+        long kingTargets = Attacks.king(king) & ~own & kinds;
+        long withoutKing = occupied ^ bit(king);
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (!ChessUtils.isSquareAttacked(position, to, them, withoutKing)) {
+                moves[count++] = Moves.encode(king, to, (enemy & bit(to)) != 0 ? Moves.CAPTURE : Moves.QUIET);
+            }
+        }
+
+        long checkers = ChessUtils.attackersTo(position, king, them);
+        if ((checkers & (checkers - 1)) != 0) {
+            // Double check: only the king can move
+            return count;
+        }
+
+        long checkMask = ~0L;
+        if (checkers != 0) {
+            checkMask = checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        } else if (quiet) {
+            count = generateCastling(position, moves, count, us, king, occupied);
+        }
+
+        long pinned = ChessUtils.pinnedPieces(position, us);
+        long targets = ~own & checkMask & kinds;
+
+        // A pinned knight can never stay on its pin line
+        long knights = position.pieces(us, Position.KNIGHT) & ~pinned;
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            count = addMoves(moves, count, from, Attacks.knight(from) & targets, enemy);
+        }
+
+        long diagonal = position.pieces(us, Position.BISHOP) | position.pieces(us, Position.QUEEN);
+        while (diagonal != 0) {
+            int from = Long.numberOfTrailingZeros(diagonal);
+            diagonal &= diagonal - 1;
+            long pinMask = (pinned & bit(from)) != 0 ? Attacks.line(king, from) : ~0L;
+            count = addMoves(moves, count, from, Attacks.bishop(from, occupied) & targets & pinMask, enemy);
+        }
+
+        long straight = position.pieces(us, Position.ROOK) | position.pieces(us, Position.QUEEN);
+        while (straight != 0) {
+            int from = Long.numberOfTrailingZeros(straight);
+            straight &= straight - 1;
+            long pinMask = (pinned & bit(from)) != 0 ? Attacks.line(king, from) : ~0L;
+            count = addMoves(moves, count, from, Attacks.rook(from, occupied) & targets & pinMask, enemy);
+        }
+
+        long pawns = position.pieces(us, Position.PAWN);
+        count = generatePawnMoves(moves, count, pawns & ~pinned, us, enemy, occupied, checkMask, noisy, quiet);
+        long pinnedPawns = pawns & pinned;
+        while (pinnedPawns != 0) {
+            int from = Long.numberOfTrailingZeros(pinnedPawns);
+            pinnedPawns &= pinnedPawns - 1;
+            count = generatePawnMoves(moves, count, bit(from), us, enemy, occupied,
+                    checkMask & Attacks.line(king, from), noisy, quiet);
+        }
+        if (!noisy) {
+            return count;
+        }
+
+        // En passant removes two pieces from their squares, so play it out
+        int first = count;
+        count = generateEnPassant(position, moves, count, pawns, us);
+        for (int i = first; i < count; i++) {
+            int move = moves[i];
+            position.makeMove(move);
+            boolean inCheck = ChessUtils.isInCheck(position, us);
+            position.unmakeMove(move);
+            if (inCheck) {
+                moves[i--] = moves[--count];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether the side to move has at least one legal move, without
+     * generating them all. Uses the same masks as
+     * {@link #generateLegalMoves(Position, int[])} but stops at the first
+     * piece with a legal destination, trying the king first. Castling is never
+     * needed: if it is legal, so is the king's step towards the rook.
+     *
+     * @param position The current position
+     * @return true if there is a legal move, false on checkmate or stalemate
+     */
+    public static boolean hasLegalMove(Position position) {
+        int us = position.getSideToMove();
+        int them = us ^ 1;
+        int king = position.kingSquare(us);
+        if (king < 0) {
+            return generatePseudoLegalMoves(position, new int[MAX_MOVES]) > 0;
+        }
+
+        long own = position.colour(us);
+        long occupied = position.getOccupied();
+
+        long kingTargets = Attacks.king(king) & ~own;
+        long withoutKing = occupied ^ bit(king);
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (!ChessUtils.isSquareAttacked(position, to, them, withoutKing)) {
+                return true;
+            }
+        }
+
+        long checkers = ChessUtils.attackersTo(position, king, them);
+        if ((checkers & (checkers - 1)) != 0) {
+            return false;
+        }
+        long checkMask = checkers == 0 ? ~0L : checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        long pinned = ChessUtils.pinnedPieces(position, us);
+        long targets = ~own & checkMask;
+
+        long knights = position.pieces(us, Position.KNIGHT) & ~pinned;
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            if ((Attacks.knight(from) & targets) != 0) {
+                return true;
+            }
+        }
+
+        long diagonal = position.pieces(us, Position.BISHOP) | position.pieces(us, Position.QUEEN);
+        while (diagonal != 0) {
+            int from = Long.numberOfTrailingZeros(diagonal);
+            diagonal &= diagonal - 1;
+            long pinMask = (pinned & bit(from)) != 0 ? Attacks.line(king, from) : ~0L;
+            if ((Attacks.bishop(from, occupied) & targets & pinMask) != 0) {
+                return true;
+            }
+        }
+
+        long straight = position.pieces(us, Position.ROOK) | position.pieces(us, Position.QUEEN);
+        while (straight != 0) {
+            int from = Long.numberOfTrailingZeros(straight);
+            straight &= straight - 1;
+            long pinMask = (pinned & bit(from)) != 0 ? Attacks.line(king, from) : ~0L;
+            if ((Attacks.rook(from, occupied) & targets & pinMask) != 0) {
+                return true;
+            }
+        }
+
+        long pawns = position.pieces(us, Position.PAWN);
+        long enemy = position.colour(them);
+        if ((pawnDestinations(pawns & ~pinned, us, enemy, occupied) & checkMask) != 0) {
+            return true;
+        }
+        long pinnedPawns = pawns & pinned;
+        while (pinnedPawns != 0) {
+            int from = Long.numberOfTrailingZeros(pinnedPawns);
+            pinnedPawns &= pinnedPawns - 1;
+            if ((pawnDestinations(bit(from), us, enemy, occupied) & checkMask & Attacks.line(king, from)) != 0) {
+                return true;
+            }
+        }
+
+        // En passant can expose the king along the rank, so each capture is
+        // tried on the board; walked from the bitboard so nothing is allocated
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant >= 0) {
+            long capturers = Attacks.pawn(them, enPassant) & pawns;
+            while (capturers != 0) {
+                int move = Moves.encode(Long.numberOfTrailingZeros(capturers), enPassant, Moves.EN_PASSANT);
+                capturers &= capturers - 1;
+                position.makeMove(move);
+                boolean inCheck = ChessUtils.isInCheck(position, us);
+                position.unmakeMove(move);
+                if (!inCheck) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates all moves that follow the piece movement rules for the side to
+     * move, without checking whether they leave the own king in check.
+     * Castling moves are only produced when the king does not start on, pass
+     * through or land on an attacked square.
+     *
+     * @param position The current position
+     * @param moves Buffer to write the encoded moves into
+     * @return The number of moves written
+     */
+    public static int generatePseudoLegalMoves(Position position, int[] moves) {
+        int us = position.getSideToMove();
+        long own = position.colour(us);
+        long enemy = position.colour(us ^ 1);
+        long occupied = position.getOccupied();
+        long targets = ~own;
+
+        long pawns = position.pieces(us, Position.PAWN);
+        int count = generatePawnMoves(moves, 0, pawns, us, enemy, occupied, ~0L, true, true);
+        count = generateEnPassant(position, moves, count, pawns, us);
+
+        long knights = position.pieces(us, Position.KNIGHT);
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            count = addMoves(moves, count, from, Attacks.knight(from) & targets, enemy);
+        }
+
+        long diagonal = position.pieces(us, Position.BISHOP) | position.pieces(us, Position.QUEEN);
+        while (diagonal != 0) {
+            int from = Long.numberOfTrailingZeros(diagonal);
+            diagonal &= diagonal - 1;
+            count = addMoves(moves, count, from, Attacks.bishop(from, occupied) & targets, enemy);
+        }
+
+        long straight = position.pieces(us, Position.ROOK) | position.pieces(us, Position.QUEEN);
+        while (straight != 0) {
+            int from = Long.numberOfTrailingZeros(straight);
+            straight &= straight - 1;
+            count = addMoves(moves, count, from, Attacks.rook(from, occupied) & targets, enemy);
+        }
+
+        int king = position.kingSquare(us);
+        if (king >= 0) {
+            count = addMoves(moves, count, king, Attacks.king(king) & targets, enemy);
+            if (!ChessUtils.isSquareAttacked(position, king, us ^ 1)) {
+                count = generateCastling(position, moves, count, us, king, occupied);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree to the given depth. Used
+     * to verify the generator against published reference counts. Moves are
+     * made and taken back on the given position, which is left unchanged.
+     *
+     * @param position The position to start from
+     * @param depth The number of plies to search
+     * @return The number of leaf nodes
+     */
+    public static long perft(Position position, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        return perft(position, depth, new int[depth][MAX_MOVES]);
+    }
+
+    private static long perft(Position position, int depth, int[][] buffers) {
+        int[] moves = buffers[depth - 1];
+        int count = generateLegalMoves(position, moves);
+        if (depth == 1) {
+            return count;
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            nodes += perft(position, depth - 1, buffers);
+            position.unmakeMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Keeps only the moves of the asked-for kinds (captures and promotions
+     * when noisy, the rest when quiet)
+     */
+    private static int filter(int[] moves, int count, boolean noisy, boolean quiet) {
+        if (noisy && quiet) {
+            return count;
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            boolean isNoisy = Moves.isCapture(moves[i]) || Moves.isPromotion(moves[i]);
+            if (isNoisy ? noisy : quiet) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+
+    private static int generatePawnMoves(int[] moves, int count, long pawns, int us, long enemy, long occupied,
+                                         long destinations, boolean noisy, boolean quiet) {
+        if (pawns == 0) {
+            return count;
+        }
+
+        boolean white = us == Position.WHITE;
+        long empty = ~occupied;
+        long promotionRank = white ? Bitboards.RANK_8 : Bitboards.RANK_1;
+        int forward = white ? 8 : -8;
+
+        long singles = (white ? pawns << 8 : pawns >>> 8) & empty;
+        long doubles = (white ? (singles & (Bitboards.RANK_1 << 16)) << 8 : (singles & (Bitboards.RANK_8 >>> 16)) >>> 8)
+                & empty & destinations;
+        singles &= destinations;
+
+        long pushes = quiet ? singles & ~promotionRank : 0L;
+        if (!quiet) {
+            doubles = 0L;
+        }
+        while (pushes != 0) {
+            int to = Long.numberOfTrailingZeros(pushes);
+            pushes &= pushes - 1;
+            moves[count++] = Moves.encode(to - forward, to, Moves.QUIET);
+        }
+        while (doubles != 0) {
+            int to = Long.numberOfTrailingZeros(doubles);
+            doubles &= doubles - 1;
+            moves[count++] = Moves.encode(to - 2 * forward, to, Moves.DOUBLE_PUSH);
+        }
+        if (!noisy) {
+            return count;
+        }
+        long promotions = singles & promotionRank;
+        while (promotions != 0) {
+            int to = Long.numberOfTrailingZeros(promotions);
+            promotions &= promotions - 1;
+            count = addPromotions(moves, count, to - forward, to, false);
+        }
+
+        // Captures towards the a-file and towards the h-file
+        long west = (white ? pawns << 7 : pawns >>> 9) & ~Bitboards.FILE_H & enemy & destinations;
+        long east = (white ? pawns << 9 : pawns >>> 7) & ~Bitboards.FILE_A & enemy & destinations;
+        count = addPawnCaptures(moves, count, west, white ? 7 : -9, promotionRank);
+        count = addPawnCaptures(moves, count, east, white ? 9 : -7, promotionRank);
+        return count;
+    }
+
+    /**
+     * Gets every square the given pawns can push or capture to (en passant
+     * excluded), as one bitboard.
+     */
+    private static long pawnDestinations(long pawns, int us, long enemy, long occupied) {
+        boolean white = us == Position.WHITE;
+        long empty = ~occupied;
+        long singles = (white ? pawns << 8 : pawns >>> 8) & empty;
+        long doubles = (white ? (singles & (Bitboards.RANK_1 << 16)) << 8 : (singles & (Bitboards.RANK_8 >>> 16)) >>> 8)
+                & empty;
+        return singles | doubles | (Bitboards.pawnAttacks(pawns, white) & enemy);
+    }
+
+    private static int generateEnPassant(Position position, int[] moves, int count, long pawns, int us) {
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant < 0) {
+            return count;
+        }
+
+        // The capturing pawns stand where an enemy pawn on the target square would attack
+        long capturers = Attacks.pawn(us ^ 1, enPassant) & pawns;
+        while (capturers != 0) {
+            int from = Long.numberOfTrailingZeros(capturers);
+            capturers &= capturers - 1;
+            moves[count++] = Moves.encode(from, enPassant, Moves.EN_PASSANT);
+        }
+        return count;
+    }
+
+    private static int addPawnCaptures(int[] moves, int count, long captures, int delta, long promotionRank) {
+        while (captures != 0) {
+            int to = Long.numberOfTrailingZeros(captures);
+            captures &= captures - 1;
+            if ((bit(to) & promotionRank) != 0) {
+                count = addPromotions(moves, count, to - delta, to, true);
+            } else {
+                moves[count++] = Moves.encode(to - delta, to, Moves.CAPTURE);
+            }
+        }
+        return count;
+    }
+
+    private static int addPromotions(int[] moves, int count, int from, int to, boolean capture) {
+        for (int type = Position.QUEEN; type >= Position.KNIGHT; type--) {
+            moves[count++] = Moves.promotion(from, to, type, capture);
+        }
+        return count;
+    }
+
+    private static int addMoves(int[] moves, int count, int from, long targets, long enemy) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves[count++] = Moves.encode(from, to, (enemy & bit(to)) != 0 ? Moves.CAPTURE : Moves.QUIET);
+        }
+        return count;
+    }
+
+    /**
+     * Adds castling moves whose path is empty and not attacked. The caller
+     * must already know that the king is not in check.
+     */
+    private static int generateCastling(Position position, int[] moves, int count, int us, int king, long occupied) {
+        int rights = position.getCastlingRights();
+        int home = us == Position.WHITE ? 4 : 60;
+        int kingside = us == Position.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE;
+        int queenside = us == Position.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE;
+        if (king != home || (rights & (kingside | queenside)) == 0) {
+            return count;
+        }
+
+        int them = us ^ 1;
+        long rooks = position.pieces(us, Position.ROOK);
+        if ((rights & kingside) != 0 && (rooks & bit(king + 3)) != 0
+                && (Attacks.between(king, king + 3) & occupied) == 0
+                && !ChessUtils.isSquareAttacked(position, king + 1, them)
+                && !ChessUtils.isSquareAttacked(position, king + 2, them)) {
+            moves[count++] = Moves.encode(king, king + 2, Moves.KING_CASTLE);
+        }
+        if ((rights & queenside) != 0 && (rooks & bit(king - 4)) != 0
+                && (Attacks.between(king, king - 4) & occupied) == 0
+                && !ChessUtils.isSquareAttacked(position, king - 1, them)
+                && !ChessUtils.isSquareAttacked(position, king - 2, them)) {
+            moves[count++] = Moves.encode(king, king - 2, Moves.QUEEN_CASTLE);
+        }
+        return count;
+    }
+}
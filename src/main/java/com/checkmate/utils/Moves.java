@@ -0,0 +1,145 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+/**
+ * Compact move encoding used by the move generator.
+ *
+ * A move fits in 16 bits: bits 0-5 hold the from square, bits 6-11 the to
+ * square and bits 12-15 a flag describing the kind of move (quiet, double
+ * pawn push, castle, capture, en passant, promotion). Promotion flags carry
+ * the promoted piece type in their low two bits.
+ */
+public final class Moves {
+
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EN_PASSANT = 5;
+    public static final int PROMOTION = 8;
+    public static final int PROMOTION_CAPTURE = 12;
+
+    private Moves() {
+    }
+
+    /**
+     * Encodes a move
+     *
+     * @param from The from square
+     * @param to The to square
+     * @param flags The move kind (QUIET, CAPTURE, ...)
+     * @return The encoded move
+     */
+    public static int encode(int from, int to, int flags) {
+        return from | (to << 6) | (flags << 12);
+    }
+
+    /**
+     * Encodes a promotion
+     *
+     * @param from The from square
+     * @param to The to square
+     * @param pieceType The promoted piece type (Position.KNIGHT to Position.QUEEN)
+     * @param capture Whether the promotion captures a piece
+     * @return The encoded move
+     */
+    public static int promotion(int from, int to, int pieceType, boolean capture) {
+        int flags = (capture ? PROMOTION_CAPTURE : PROMOTION) | (pieceType - Position.KNIGHT);
+        return encode(from, to, flags);
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flags(move) & PROMOTION) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    /**
+     * Gets the piece type a pawn promotes to
+     *
+     * @param move A promotion move
+     * @return The promoted piece type (Position.KNIGHT to Position.QUEEN)
+     */
+    public static int promotionType(int move) {
+        return Position.KNIGHT + (flags(move) & 3);
+    }
+
+    /**
+     * Works out the full encoding of a move given only its squares, as
+     * submitted through the row/column API. Pawns reaching the last rank
+     * promote to the given piece type.
+     *
+     * @param position The position the move is played in
+     * @param from The from square
+     * @param to The to square
+     * @param promotionType The piece type to promote to (Position.KNIGHT to Position.QUEEN)
+     * @return The encoded move, or NONE if there is no piece on the from square
+     */
+    public static int infer(Position position, int from, int to, int promotionType) {
+        int piece = position.pieceAt(from);
+        if (piece == Position.NO_PIECE) {
+            return NONE;
+        }
+
+        boolean capture = position.pieceAt(to) != Position.NO_PIECE;
+        int type = Position.typeOf(piece);
+        if (type == Position.PAWN) {
+            int rank = to >>> 3;
+            if (rank == 0 || rank == 7) {
+                return promotion(from, to, promotionType, capture);
+            }
+            if (!capture && to == position.getEnPassantSquare() && ((from ^ to) & 7) != 0) {
+                return encode(from, to, EN_PASSANT);
+            }
+            if (Math.abs(to - from) == 16) {
+                return encode(from, to, DOUBLE_PUSH);
+            }
+        } else if (type == Position.KING && Math.abs((from & 7) - (to & 7)) == 2) {
+            return encode(from, to, to > from ? KING_CASTLE : QUEEN_CASTLE);
+        }
+        return encode(from, to, capture ? CAPTURE : QUIET);
+    }
+
+    /**
+     * Formats a move in long algebraic (UCI) notation, e.g. "e2e4" or "a7a8q"
+     *
+     * @param move The encoded move
+     * @return The move notation
+     */
+    public static String toUci(int move) {
+        StringBuilder notation = new StringBuilder(5);
+        appendSquare(notation, from(move));
+        appendSquare(notation, to(move));
+        if (isPromotion(move)) {
+            notation.append("nbrq".charAt(promotionType(move) - Position.KNIGHT));
+        }
+        return notation.toString();
+    }
+
+    private static void appendSquare(StringBuilder notation, int square) {
+        notation.append((char) ('a' + (square & 7))).append((char) ('1' + (square >>> 3)));
+    }
+}
@@ -0,0 +1,220 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+/**
+ * Material and piece-square values for the engine's evaluation, with a
+ * midgame and an endgame value for every (piece, square).
+ *
+ * Position adds a piece's values as it is placed and subtracts them as it is
+ * removed, the same way it keeps its Zobrist hash, so the sums are always
+ * current after make and unmake. The two values travel packed in one int
+ * (midgame in the low 16 bits, endgame in the high 16 bits, both signed) so
+ * that each update is a single addition; {@link #midgame(int)} and
+ * {@link #endgame(int)} unpack a sum. Values are from white's point of view,
+ * so black pieces count negative. Alongside the scores Position keeps a game
+ * phase: 4 per queen, 2 per rook and 1 per minor piece, {@link #MAX_PHASE}
+ * with all of them on the board.
+ *
+ * The midgame tables are the widely used "simplified evaluation function"
+ * values. In the endgame pawns are worth more the further they have advanced,
+ * rooks lose their seventh-rank bonus and the king heads for the centre.
+ * Tables are written from white's side with the 8th rank first so they read
+ * like a board diagram.
+ */
+public final class PieceSquare {
+
+    /** Phase with all minor and major pieces on the board */
+    public static final int MAX_PHASE = 24;
+
+    private static final int[] MIDGAME_VALUES = {100, 320, 330, 500, 900, 0};
+    private static final int[] ENDGAME_VALUES = {120, 300, 330, 540, 950, 0};
+    private static final int[] PHASE = {0, 1, 1, 2, 4, 0};
+
+    private static final int[] PAWN_MIDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        10, 10, 20, 30, 30, 20, 10, 10,
+         5,  5, 10, 25, 25, 10,  5,  5,
+         0,  0,  0, 20, 20,  0,  0,  0,
+         5, -5,-10,  0,  0,-10, -5,  5,
+         5, 10, 10,-20,-20, 10, 10,  5,
+         0,  0,  0,  0,  0,  0,  0,  0,
+    };
+
+    private static final int[] PAWN_ENDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        80, 80, 80, 80, 80, 80, 80, 80,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        30, 30, 30, 30, 30, 30, 30, 30,
+        15, 15, 15, 15, 15, 15, 15, 15,
+         5,  5,  5,  5,  5,  5,  5,  5,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+    };
+
+    private static final int[] KNIGHT = {
+        -50,-40,-30,-30,-30,-30,-40,-50,
+        -40,-20,  0,  0,  0,  0,-20,-40,
+        -30,  0, 10, 15, 15, 10,  0,-30,
+        -30,  5, 15, 20, 20, 15,  5,-30,
+        -30,  0, 15, 20, 20, 15,  0,-30,
+        -30,  5, 10, 15, 15, 10,  5,-30,
+        -40,-20,  0,  5,  5,  0,-20,-40,
+        -50,-40,-30,-30,-30,-30,-40,-50,
+    };
+
+    private static final int[] BISHOP = {
+        -20,-10,-10,-10,-10,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5, 10, 10,  5,  0,-10,
+        -10,  5,  5, 10, 10,  5,  5,-10,
+        -10,  0, 10, 10, 10, 10,  0,-10,
+        -10, 10, 10, 10, 10, 10, 10,-10,
+        -10,  5,  0,  0,  0,  0,  5,-10,
+        -20,-10,-10,-10,-10,-10,-10,-20,
+    };
+
+    private static final int[] ROOK_MIDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+         5, 10, 10, 10, 10, 10, 10,  5,
+        -5,  0,  0,  0,  0,  0,  0, -5,
+        -5,  0,  0,  0,  0,  0,  0, -5,
+        -5,  0,  0,  0,  0,  0,  0, -5,
+        -5,  0,  0,  0,  0,  0,  0, -5,
+        -5,  0,  0,  0,  0,  0,  0, -5,
+         0,  0,  0,  5,  5,  0,  0,  0,
+    };
+
+    private static final int[] ROOK_ENDGAME = new int[64];
+
+    private static final int[] QUEEN = {
+        -20,-10,-10, -5, -5,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5,  5,  5,  5,  0,-10,
+         -5,  0,  5,  5,  5,  5,  0, -5,
+          0,  0,  5,  5,  5,  5,  0, -5,
+        -10,  5,  5,  5,  5,  5,  0,-10,
+        -10,  0,  5,  0,  0,  0,  0,-10,
+        -20,-10,-10, -5, -5,-10,-10,-20,
+    };
+
+    private static final int[] KING_MIDGAME = {
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -20,-30,-30,-40,-40,-30,-30,-20,
+        -10,-20,-20,-20,-20,-20,-20,-10,
+         20, 20,  0,  0,  0,  0, 20, 20,
+         20, 30, 10,  0,  0, 10, 30, 20,
+    };
+
+    private static final int[] KING_ENDGAME = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50,
+    };
+
+    private static final int[][] MIDGAME_TABLES = {
+        PAWN_MIDGAME, KNIGHT, BISHOP, ROOK_MIDGAME, QUEEN, KING_MIDGAME
+    };
+    private static final int[][] ENDGAME_TABLES = {
+        PAWN_ENDGAME, KNIGHT, BISHOP, ROOK_ENDGAME, QUEEN, KING_ENDGAME
+    };
+
+    private static final int[][] SCORES = new int[12][64];
+
+    static {
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            for (int square = 0; square < 64; square++) {
+                // White reads the diagram upside down (square ^ 56); black reads
+                // it as written, which mirrors it, and counts negative
+                int white = pack(MIDGAME_VALUES[type] + MIDGAME_TABLES[type][square ^ 56],
+                        ENDGAME_VALUES[type] + ENDGAME_TABLES[type][square ^ 56]);
+                int black = pack(MIDGAME_VALUES[type] + MIDGAME_TABLES[type][square],
+                        ENDGAME_VALUES[type] + ENDGAME_TABLES[type][square]);
+                SCORES[Position.pieceCode(Position.WHITE, type)][square] = white;
+                SCORES[Position.pieceCode(Position.BLACK, type)][square] = -black;
+            }
+        }
+    }
+
+    private PieceSquare() {
+    }
+
+    /**
+     * Gets the packed midgame and endgame value of a piece on a square
+     *
+     * @param piece The piece code
+     * @param square The square
+     * @return The packed value, negative for black pieces
+     */
+    public static int score(int piece, int square) {
+        return SCORES[piece][square];
+    }
+
+    /**
+     * Gets the midgame material value of a piece type, the one table of
+     * piece values that the evaluation, capture ordering and
+     * {@link StaticExchange} all use
+     *
+     * @param type Position.PAWN to Position.KING
+     * @return The value in centipawns (0 for the king)
+     */
+    public static int materialValue(int type) {
+        return MIDGAME_VALUES[type];
+    }
+
+    /**
+     * Gets how much a piece counts towards the game phase
+     *
+     * @param piece The piece code
+     * @return 0 for pawns and kings, 1 for minor pieces, 2 for rooks, 4 for queens
+     */
+    public static int phase(int piece) {
+        return PHASE[Position.typeOf(piece)];
+    }
+
+    /**
+     * Gets the midgame part of a packed score
+     */
+    public static int midgame(int score) {
+        return (short) score;
+    }
+
+    /**
+     * Gets the endgame part of a packed score
+     */
+    public static int endgame(int score) {
+        return (score + 0x8000) >> 16;
+    }
+
+    /**
+     * Recomputes a position's packed score from scratch. The search never
+     * needs this; it is a cross-check for the incremental sum.
+     *
+     * @param position The position
+     * @return The packed score
+     */
+    public static int compute(Position position) {
+        int score = 0;
+        for (int piece = 0; piece < 12; piece++) {
+            long bb = position.pieces(Position.colourOf(piece), Position.typeOf(piece));
+            while (bb != 0) {
+                score += SCORES[piece][Long.numberOfTrailingZeros(bb)];
+                bb &= bb - 1;
+            }
+        }
+        return score;
+    }
+
+    private static int pack(int midgame, int endgame) {
+        return (endgame << 16) + midgame;
+    }
+}
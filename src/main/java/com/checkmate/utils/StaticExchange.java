@@ -0,0 +1,199 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+import static com.checkmate.utils.Bitboards.bit;
+
+/**
+ * Static exchange evaluation (SEE): works out what a capture wins or loses
+ * once every piece that attacks the target square has joined in, each side
+ * capturing with its least valuable piece and free to stop when carrying on
+ * would lose material. Only the attack tables are used, nothing is played on
+ * the board, so it is cheap enough to run on every capture in a search.
+ *
+ * Sliders behind the pieces that capture (x-rays) join in as the squares in
+ * front of them empty. Pins are ignored, and a king only captures when the
+ * other side has nothing left that attacks the square.
+ */
+public final class StaticExchange {
+
+    // Material values from the evaluation (see PieceSquare), with the king
+    // worth more than everything else so capturing it ends the exchange
+    private static final int[] VALUES = new int[6];
+
+    static {
+        for (int type = Position.PAWN; type < Position.KING; type++) {
+            VALUES[type] = PieceSquare.materialValue(type);
+        }
+        VALUES[Position.KING] = 20_000;
+    }
+
+    private StaticExchange() {
+    }
+
+    /**
+     * Gets the exchange value of a piece type
+     *
+     * @param type Position.PAWN to Position.KING
+     * @return The value in centipawns
+     */
+    public static int value(int type) {
+        return VALUES[type];
+    }
+
+    /**
+     * Works out the material the side to move gains by playing a move and
+     * letting the exchange on its destination run its course.
+     *
+     * @param position The position the move is played in
+     * @param move The encoded move
+     * @return The gain in centipawns (negative if the move loses material)
+     */
+    public static int evaluate(Position position, int move) {
+        if (Moves.isCastle(move)) {
+            return 0;
+        }
+        int from = Moves.from(move);
+        int to = Moves.to(move);
+        int side = Position.colourOf(position.pieceAt(from));
+        long occupied = occupiedAfter(position, move);
+        long attackers = attackersTo(position, to, occupied) & occupied;
+
+        int[] gain = new int[32];
+        gain[0] = initialGain(position, move);
+        int onSquare = movedValue(position, move);
+        int depth = 0;
+        while (true) {
+            side ^= 1;
+            long own = attackers & position.colour(side);
+            if (own == 0) {
+                break;
+            }
+            int type = leastValuableType(position, side, own);
+            if (type == Position.KING && (attackers & position.colour(side ^ 1)) != 0) {
+                break;
+            }
+            depth++;
+            gain[depth] = onSquare - gain[depth - 1];
+            onSquare = VALUES[type];
+            occupied ^= Long.lowestOneBit(own & position.pieces(side, type));
+            attackers = (attackers | sliderAttackers(position, to, occupied)) & occupied;
+        }
+        // Either side may stop capturing when going on would cost it
+        while (depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+            depth--;
+        }
+        return gain[0];
+    }
+
+    /**
+     * Checks if a move gains at least the given amount once the exchange is
+     * over. Gives the same answer as comparing {@link #evaluate(Position, int)}
+     * with the threshold, but stops as soon as the answer is known and
+     * allocates nothing, which suits move ordering and pruning in a search.
+     *
+     * @param position The position the move is played in
+     * @param move The encoded move
+     * @param threshold The gain to test for, in centipawns
+     * @return true if the move's exchange value is at least the threshold
+     */
+    public static boolean isAtLeast(Position position, int move, int threshold) {
+        if (Moves.isCastle(move)) {
+            return threshold <= 0;
+        }
+        // swap is how far the side to move is ahead of the threshold if the
+        // exchange stops now, from the point of view of the side about to move
+        int swap = initialGain(position, move) - threshold;
+        if (swap < 0) {
+            return false;
+        }
+        swap = movedValue(position, move) - swap;
+        if (swap <= 0) {
+            return true;
+        }
+
+        int to = Moves.to(move);
+        int side = Position.colourOf(position.pieceAt(Moves.from(move)));
+        long occupied = occupiedAfter(position, move);
+        long attackers = attackersTo(position, to, occupied);
+        int result = 1;
+        while (true) {
+            side ^= 1;
+            attackers &= occupied;
+            long own = attackers & position.colour(side);
+            if (own == 0) {
+                break;
+            }
+            result ^= 1;
+
+            int type = leastValuableType(position, side, own);
+            if (type == Position.KING) {
+                // The king can only take if nothing recaptures
+                return ((attackers & ~position.colour(side)) != 0 ? result ^ 1 : result) != 0;
+            }
+            swap = VALUES[type] - swap;
+            if (swap < result) {
+                break;
+            }
+            occupied ^= Long.lowestOneBit(own & position.pieces(side, type));
+            attackers |= sliderAttackers(position, to, occupied);
+        }
+        return result != 0;
+    }
+
+    private static int initialGain(Position position, int move) {
+        int gain = 0;
+        if (Moves.flags(move) == Moves.EN_PASSANT) {
+            gain = VALUES[Position.PAWN];
+        } else if (Moves.isCapture(move)) {
+            gain = VALUES[Position.typeOf(position.pieceAt(Moves.to(move)))];
+        }
+        if (Moves.isPromotion(move)) {
+            gain += VALUES[Moves.promotionType(move)] - VALUES[Position.PAWN];
+        }
+        return gain;
+    }
+
+    // Value of the piece left standing on the destination
+    private static int movedValue(Position position, int move) {
+        return Moves.isPromotion(move) ? VALUES[Moves.promotionType(move)]
+                : VALUES[Position.typeOf(position.pieceAt(Moves.from(move)))];
+    }
+
+    private static long occupiedAfter(Position position, int move) {
+        long occupied = position.getOccupied() ^ bit(Moves.from(move));
+        if (Moves.flags(move) == Moves.EN_PASSANT) {
+            // The captured pawn stands beside the moving pawn's start square
+            occupied ^= bit((Moves.from(move) & ~7) | (Moves.to(move) & 7));
+        }
+        return occupied;
+    }
+
+    private static int leastValuableType(Position position, int side, long attackers) {
+        for (int type = Position.PAWN; type < Position.KING; type++) {
+            if ((attackers & position.pieces(side, type)) != 0) {
+                return type;
+            }
+        }
+        return Position.KING;
+    }
+
+    private static long attackersTo(Position position, int square, long occupied) {
+        return (Attacks.pawn(Position.BLACK, square) & position.pieces(Position.WHITE, Position.PAWN))
+                | (Attacks.pawn(Position.WHITE, square) & position.pieces(Position.BLACK, Position.PAWN))
+                | (Attacks.knight(square) & both(position, Position.KNIGHT))
+                | (Attacks.king(square) & both(position, Position.KING))
+                | sliderAttackers(position, square, occupied);
+    }
+
+    private static long sliderAttackers(Position position, int square, long occupied) {
+        long queens = both(position, Position.QUEEN);
+        return (Attacks.bishop(square, occupied) & (both(position, Position.BISHOP) | queens))
+                | (Attacks.rook(square, occupied) & (both(position, Position.ROOK) | queens));
+    }
+
+    private static long both(Position position, int type) {
+        return position.pieces(Position.WHITE, type) | position.pieces(Position.BLACK, type);
+    }
+}
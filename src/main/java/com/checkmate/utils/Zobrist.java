@@ -0,0 +1,112 @@
+package com.checkmate.utils;
+
+import com.checkmate.model.Position;
+
+/**
+ * Zobrist keys for giving a position a 64-bit identity.
+ *
+ * A position's hash is the XOR of one random key per (piece, square), a key
+ * for the castling rights, a key for the en passant file (only when a pawn of
+ * the side to move can actually capture there) and a key when black is to
+ * move. Position keeps its hash up to date incrementally as moves are made;
+ * {@link #compute(Position)} recomputes it from scratch to check that value.
+ */
+public final class Zobrist {
+
+    private static final long[][] PIECE_SQUARE = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT_FILE = new long[8];
+    private static final long SIDE;
+
+    static {
+        // Fixed seed so hashes are stable across restarts (e.g. for persisted keys)
+        long state = 0x9E3779B97F4A7C15L;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                state = next(state);
+                PIECE_SQUARE[piece][square] = mix(state);
+            }
+        }
+        for (int rights = 0; rights < 16; rights++) {
+            state = next(state);
+            CASTLING[rights] = rights == 0 ? 0L : mix(state);
+        }
+        for (int file = 0; file < 8; file++) {
+            state = next(state);
+            EN_PASSANT_FILE[file] = mix(state);
+        }
+        state = next(state);
+        SIDE = mix(state);
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int piece, int square) {
+        return PIECE_SQUARE[piece][square];
+    }
+
+    public static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    public static long enPassantFile(int file) {
+        return EN_PASSANT_FILE[file];
+    }
+
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Gets the en passant key for a position: the key of the en passant file
+     * if a pawn of the side to move can capture on that square, otherwise 0.
+     *
+     * @param enPassantSquare The en passant square, or -1
+     * @param sideToMove The colour to move
+     * @param position The position (used for its pawns)
+     * @return The en passant key
+     */
+    public static long enPassant(int enPassantSquare, int sideToMove, Position position) {
+        if (enPassantSquare < 0) {
+            return 0L;
+        }
+        // Capturing pawns stand where an enemy pawn on the target square would attack
+        long capturers = Attacks.pawn(sideToMove ^ 1, enPassantSquare) & position.pieces(sideToMove, Position.PAWN);
+        return capturers == 0 ? 0L : EN_PASSANT_FILE[enPassantSquare & 7];
+    }
+
+    /**
+     * Computes a position's hash from scratch.
+     *
+     * @param position The position
+     * @return The Zobrist hash
+     */
+    public static long compute(Position position) {
+        long hash = 0L;
+        for (int piece = 0; piece < 12; piece++) {
+            long bb = position.pieces(Position.colourOf(piece), Position.typeOf(piece));
+            while (bb != 0) {
+                hash ^= PIECE_SQUARE[piece][Long.numberOfTrailingZeros(bb)];
+                bb &= bb - 1;
+            }
+        }
+        hash ^= CASTLING[position.getCastlingRights()];
+        hash ^= enPassant(position.getEnPassantSquare(), position.getSideToMove(), position);
+        if (position.getSideToMove() == Position.BLACK) {
+            hash ^= SIDE;
+        }
+        return hash;
+    }
+
+    private static long next(long state) {
+        return state + 0x9E3779B97F4A7C15L;
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
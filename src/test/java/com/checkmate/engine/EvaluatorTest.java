@@ -0,0 +1,79 @@
+package com.checkmate.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.Fen;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+import com.checkmate.utils.PieceSquare;
+
+@DisplayName("Evaluator tests")
+class EvaluatorTest {
+
+    private final Evaluator evaluator = new Evaluator();
+
+    @Test
+    @DisplayName("The starting position is level with every piece counted in the phase")
+    void testStartingPosition() {
+        Position position = Position.fromFen(Fen.STARTING_POSITION);
+        assertEquals(0, evaluator.evaluate(position));
+        assertEquals(PieceSquare.MAX_PHASE, position.getPhase());
+        assertEquals(8, Position.fromFen("3qk3/pppppppp/8/8/8/8/PPPPPPPP/3QK3 w - - 0 1").getPhase());
+    }
+
+    @Test
+    @DisplayName("Incremental score matches a full recompute through make and unmake")
+    void testIncrementalMatchesRecompute() {
+        String[] fens = {
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        };
+        for (String fen : fens) {
+            Position position = Position.fromFen(fen);
+            int before = evaluator.evaluate(position);
+            walk(position, 3, new int[3][MoveGenerator.MAX_MOVES]);
+            assertEquals(before, evaluator.evaluate(position), fen);
+        }
+    }
+
+    @Test
+    @DisplayName("Mirroring the board and swapping colours gives the same score")
+    void testColourSymmetry() {
+        Position position = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        Position mirrored = Position.fromFen("r3k2r/pppbbppp/2n2q1P/1P2p3/3pn3/BN2PNP1/P1PPQPB1/R3K2R b KQkq - 0 1");
+        assertEquals(evaluator.evaluate(position), evaluator.evaluate(mirrored));
+    }
+
+    @Test
+    @DisplayName("With the pieces gone the king belongs in the centre")
+    void testEndgameTaper() {
+        Position centralised = Position.fromFen("4k3/8/8/8/4K3/8/4P3/8 w - - 0 1");
+        Position cornered = Position.fromFen("4k3/8/8/8/8/8/4P3/K7 w - - 0 1");
+        assertEquals(0, centralised.getPhase());
+        assertTrue(evaluator.evaluate(centralised) > evaluator.evaluate(cornered));
+
+        // With all the pieces on, the same king walk is a liability
+        Position exposed = Position.fromFen("rnbqkbnr/8/8/8/4K3/8/4P3/RNBQ1BNR w - - 0 1");
+        Position sheltered = Position.fromFen("rnbqkbnr/8/8/8/8/8/4P3/RNBQKBNR w - - 0 1");
+        assertTrue(evaluator.evaluate(sheltered) > evaluator.evaluate(exposed));
+    }
+
+    private void walk(Position position, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = MoveGenerator.generateLegalMoves(position, moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            position.makeMove(move);
+            assertEquals(evaluator.evaluateFromScratch(position), evaluator.evaluate(position), "after " + Moves.toUci(move));
+            walk(position, depth - 1, buffers);
+            position.unmakeMove(move);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.checkmate.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.checkmate.model.Position;
+import com.checkmate.utils.Fen;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+@DisplayName("Opening book tests")
+class OpeningBookTest {
+
+    private static final Position START = Position.fromFen(Fen.STARTING_POSITION);
+
+    @Test
+    @DisplayName("Finds the moves played from a position with their points")
+    void testBookMoves() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder()
+                .addGame(START, line(START, "e2e4", "e7e5", "g1f3"), 2)
+                .addGame(START, line(START, "e2e4", "c7c5"), 1)
+                .addGame(START, line(START, "d2d4", "d7d5"), 0);
+        withBook(builder, book -> {
+            // e4 won once and drew once; d4 lost, so it is left out
+            int[] moves = book.moves(START);
+            assertEquals(1, moves.length);
+            assertEquals("e2e4", Moves.toUci(moves[0] >>> 16));
+            assertEquals(3, moves[0] & 0xFFFF);
+
+            Position afterE4 = START.copy();
+            afterE4.makeMove(line(START, "e2e4")[0]);
+            // Black lost with e5 and drew with c5
+            int[] replies = book.moves(afterE4);
+            assertEquals(1, replies.length);
+            assertEquals("c7c5", Moves.toUci(replies[0] >>> 16));
+
+            assertEquals(0, book.moves(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1")).length);
+            assertEquals(Moves.NONE, book.pick(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1"), new Random(1)));
+        });
+    }
+
+    @Test
+    @DisplayName("Picks moves in proportion to their weight")
+    void testWeightedPick() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        for (int i = 0; i < 3; i++) {
+            builder.addGame(START, line(START, "e2e4"), 2);
+        }
+        builder.addGame(START, line(START, "d2d4"), 2);
+        withBook(builder, book -> {
+            Random random = new Random(42);
+            int e4 = 0;
+            for (int i = 0; i < 4000; i++) {
+                String move = Moves.toUci(book.pick(START, random));
+                assertTrue(move.equals("e2e4") || move.equals("d2d4"), move);
+                if (move.equals("e2e4")) {
+                    e4++;
+                }
+            }
+            // Expect three in four
+            assertTrue(e4 > 2800 && e4 < 3200, "e4 picked " + e4 + " times");
+        });
+    }
+
+    @Test
+    @DisplayName("Castling and promotion survive the Polyglot encoding")
+    void testSpecialMoves() throws IOException {
+        Position castling = Position.fromFen("r3k2r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w KQkq - 0 1");
+        Position promotion = Position.fromFen("8/1P2k3/8/8/8/8/8/4K3 w - - 0 1");
+        OpeningBookBuilder builder = new OpeningBookBuilder()
+                .addGame(castling, line(castling, "e1g1"), 2)
+                .addGame(castling, line(castling, "e1c1"), 2)
+                .addGame(promotion, line(promotion, "b7b8n"), 2);
+        withBook(builder, book -> {
+            assertEquals(3, book.size());
+            int[] moves = book.moves(castling);
+            assertEquals(2, moves.length);
+            for (int entry : moves) {
+                int flags = Moves.flags(entry >>> 16);
+                assertTrue(flags == Moves.KING_CASTLE || flags == Moves.QUEEN_CASTLE);
+            }
+            assertEquals("b7b8n", Moves.toUci(book.pick(promotion, new Random(1))));
+        });
+        // Polyglot writes castling as the king taking its rook
+        assertEquals(4 << 6 | 7, OpeningBook.toPolyglot(line(castling, "e1g1")[0]));
+        assertEquals(4 << 6, OpeningBook.toPolyglot(line(castling, "e1c1")[0]));
+    }
+
+    @Test
+    @DisplayName("The engine plays a book move without searching")
+    void testEngineUsesBook() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder().addGame(START, line(START, "g1f3"), 2);
+        withBook(builder, book -> {
+            try (Engine engine = new Engine(1, 1, SearchConfig.DEFAULT, book)) {
+                SearchResult result = engine.search(START, SearchLimits.depth(6));
+                assertEquals("g1f3", Moves.toUci(result.getBestMove()));
+                assertEquals(0, result.getNodes());
+
+                SearchResult async = engine.searchAsync(START, SearchLimits.depth(6), new long[0]).join();
+                assertEquals("g1f3", Moves.toUci(async.getBestMove()));
+
+                // Out of the book the engine searches as usual
+                Position out = START.copy();
+                out.makeMove(line(START, "g1f3")[0]);
+                assertTrue(engine.search(out, SearchLimits.depth(2)).getNodes() > 0);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Reads a book written by other Polyglot tools")
+    void testPolyglotBook() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            // One entry as Polyglot writes it: start position key, e2e4, weight 7, learning data
+            ByteBuffer entry = ByteBuffer.allocate(OpeningBook.ENTRY_BYTES)
+                    .putLong(0x463B96181691FC9CL).putShort((short) (12 << 6 | 28)).putShort((short) 7).putInt(-1);
+            Files.write(file, entry.array());
+            try (OpeningBook book = OpeningBook.open(file)) {
+                int[] moves = book.moves(START);
+                assertEquals(1, moves.length);
+                assertEquals("e2e4", Moves.toUci(moves[0] >>> 16));
+                assertEquals(7, moves[0] & 0xFFFF);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("Can key a book by the project's Zobrist hashes instead")
+    void testZobristKeys() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            new OpeningBookBuilder(OpeningBookBuilder.DEFAULT_MAX_PLY, OpeningBook.Keys.ZOBRIST)
+                    .addGame(START, line(START, "c2c4"), 2)
+                    .write(file);
+            try (OpeningBook book = OpeningBook.open(file, OpeningBook.Keys.ZOBRIST)) {
+                assertEquals("c2c4", Moves.toUci(book.pick(START, new Random(1))));
+            }
+            // Read with Polyglot keys the same file matches nothing
+            try (OpeningBook book = OpeningBook.open(file)) {
+                assertEquals(0, book.moves(START).length);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("Rejects files that are not a whole number of entries")
+    void testRejectsTruncatedFile() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            Files.write(file, new byte[OpeningBook.ENTRY_BYTES + 3]);
+            assertThrows(IllegalArgumentException.class, () -> OpeningBook.open(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private interface BookCheck {
+        void check(OpeningBook book);
+    }
+
+    private static void withBook(OpeningBookBuilder builder, BookCheck check) throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            int entries = builder.write(file);
+            assertEquals(entries * (long) OpeningBook.ENTRY_BYTES, Files.size(file));
+            try (OpeningBook book = OpeningBook.open(file)) {
+                assertEquals(entries, book.size());
+                check.check(book);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Encodes a line of moves given in UCI notation
+    private static int[] line(Position start, String... uci) {
+        Position position = start.copy();
+        int[] line = new int[uci.length];
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < uci.length; i++) {
+            int count = MoveGenerator.generateLegalMoves(position, moves);
+            for (int j = 0; j < count; j++) {
+                if (Moves.toUci(moves[j]).equals(uci[i])) {
+                    line[i] = moves[j];
+                }
+            }
+            assertNotEquals(Moves.NONE, line[i], uci[i]);
+            position.makeMove(line[i]);
+        }
+        return line;
+    }
+}
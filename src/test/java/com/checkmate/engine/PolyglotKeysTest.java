@@ -0,0 +1,29 @@
+package com.checkmate.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Position;
+
+@DisplayName("Polyglot key tests")
+class PolyglotKeysTest {
+
+    @Test
+    @DisplayName("Matches the keys published with the Polyglot book format")
+    void testPublishedKeys() {
+        assertKey(0x463B96181691FC9CL, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        assertKey(0x823C9B50FD114196L, "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+        assertKey(0x0756B94461C50FB0L, "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2");
+        assertKey(0x662FAFB965DB29D4L, "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2");
+        assertKey(0x22A48B5A8E47FF78L, "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+        assertKey(0x652A607CA3F242C1L, "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3");
+        assertKey(0x00FDD303C946BDD9L, "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4");
+        assertKey(0x3C8123EA7B067637L, "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3");
+        assertKey(0x5C3F9B829B279560L, "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4");
+    }
+
+    private static void assertKey(long expected, String fen) {
+        assertEquals(expected, PolyglotKeys.compute(Position.fromFen(fen)), fen);
+    }
+}
@@ -0,0 +1,30 @@
+package com.checkmate.engine;
+
+import com.checkmate.model.Position;
+
+/**
+ * Search tasks that never complete by themselves, for testing callers that
+ * have to give up waiting on a search
+ */
+public final class SearchTasks {
+
+    private SearchTasks() {
+    }
+
+    /**
+     * Makes a task whose search has finished some iterations and then hangs,
+     * so aborting it does not complete it
+     *
+     * @param position The position searched (not modified)
+     * @param depth How many iterations finish (0 for none)
+     * @return The task, never completed
+     */
+    public static SearchTask stalled(Position position, int depth) {
+        Search search = new Search(position.copy(), new TranspositionTable(1), new Evaluator(),
+                SearchLimits.depth(depth), new long[0]);
+        if (depth > 0) {
+            search.run();
+        }
+        return new SearchTask(search);
+    }
+}
@@ -0,0 +1,304 @@
+package com.checkmate.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.Fen;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+@DisplayName("Engine search tests")
+class SearchTest {
+
+    private final Engine engine = new Engine(1, 1);
+
+    @Test
+    @DisplayName("Finds a back rank mate in one")
+    void testMateInOne() {
+        SearchResult result = engine.search(Position.fromFen("6k1/5ppp/8/8/8/8/8/3R2K1 w - - 0 1"), SearchLimits.depth(4));
+        assertEquals("d1d8", Moves.toUci(result.getBestMove()));
+        assertEquals(Search.MATE - 1, result.getScore());
+        assertTrue(result.isMate());
+    }
+
+    @Test
+    @DisplayName("Finds a mate in two with two rooks")
+    void testMateInTwo() {
+        String fen = "7k/8/8/8/8/8/R7/1R4K1 w - - 0 1";
+        SearchResult result = engine.search(Position.fromFen(fen), SearchLimits.depth(6));
+        assertEquals(Search.MATE - 3, result.getScore());
+        assertEquals(3, result.getPrincipalVariation().length);
+        assertLegalLine(fen, result.getPrincipalVariation());
+    }
+
+    @Test
+    @DisplayName("Takes a free queen")
+    void testWinsMaterial() {
+        SearchResult result = engine.search(Position.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1"), SearchLimits.depth(3));
+        assertEquals("d2d5", Moves.toUci(result.getBestMove()));
+        assertTrue(result.getScore() > 300);
+    }
+
+    @Test
+    @DisplayName("Sees the recapture beyond the horizon")
+    void testQuiescenceSeesRecapture() {
+        // At depth 1 only the quiescence search shows that exd5 wins the queen back
+        String fen = "4k3/8/4p3/3p4/8/8/3Q4/4K3 w - - 0 1";
+        SearchResult result = engine.search(Position.fromFen(fen), SearchLimits.depth(1));
+        assertNotEquals("d2d5", Moves.toUci(result.getBestMove()));
+        assertTrue(result.getScore() > 500, "score " + result.getScore());
+    }
+
+    @Test
+    @DisplayName("Returns no move when checkmated or stalemated")
+    void testNoLegalMoves() {
+        SearchResult mated = engine.search(Position.fromFen("3R2k1/5ppp/8/8/8/8/8/6K1 b - - 0 1"), SearchLimits.depth(3));
+        assertEquals(Moves.NONE, mated.getBestMove());
+        assertEquals(-Search.MATE, mated.getScore());
+
+        SearchResult stalemate = engine.search(Position.fromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"), SearchLimits.depth(3));
+        assertEquals(Moves.NONE, stalemate.getBestMove());
+        assertEquals(Search.DRAW, stalemate.getScore());
+    }
+
+    @Test
+    @DisplayName("Stops near the node limit and still returns a legal line")
+    void testNodeLimit() {
+        SearchResult result = engine.search(Position.fromFen(Fen.STARTING_POSITION), SearchLimits.nodes(20_000));
+        assertTrue(result.getNodes() < 20_000 + 1024, "nodes " + result.getNodes());
+        assertTrue(result.getDepth() >= 1);
+        assertLegalLine(Fen.STARTING_POSITION, result.getPrincipalVariation());
+    }
+
+    @Test
+    @DisplayName("Leaves the searched position as it was")
+    void testPositionRestored() {
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        Position position = Position.fromFen(fen);
+        new Search(position, new TranspositionTable(1), new Evaluator(), SearchLimits.depth(3), new long[0]).run();
+        assertEquals(fen, position.toFen());
+        assertEquals(Position.fromFen(fen).getHash(), position.getHash());
+    }
+
+    @Test
+    @DisplayName("Scores repeating an earlier game position as a draw")
+    void testRepetitionIsDraw() {
+        // Black is a queen down, so going back to a position already seen is its best outcome
+        String fen = "4k1n1/8/8/8/8/8/8/3QK1N1 w - - 0 1";
+        Board board = new Board();
+        board.setBoardState(fen);
+        board.setCurrentTurn("WHITE");
+        ChessUtils.makeMove(board, 7, 6, 5, 5);   // Ng1-f3
+        ChessUtils.makeMove(board, 0, 6, 2, 5);   // Ng8-f6
+        ChessUtils.makeMove(board, 5, 5, 7, 6);   // Nf3-g1
+
+        SearchResult withHistory = engine.search(board, SearchLimits.depth(4));
+        assertEquals("f6g8", Moves.toUci(withHistory.getBestMove()));
+        assertEquals(Search.DRAW, withHistory.getScore());
+
+        engine.clear();
+        SearchResult withoutHistory = engine.search(board.getPosition(), SearchLimits.depth(4));
+        assertTrue(withoutHistory.getScore() < -500, "score " + withoutHistory.getScore());
+    }
+
+    @Test
+    @DisplayName("Helper threads share the table and the main search still finds the mate")
+    void testLazySmp() {
+        String fen = "7k/8/8/8/8/8/R7/1R4K1 w - - 0 1";
+        try (Engine smp = new Engine(1, 4)) {
+            SearchResult result = smp.search(Position.fromFen(fen), SearchLimits.depth(6));
+            assertEquals(Search.MATE - 3, result.getScore());
+            assertLegalLine(fen, result.getPrincipalVariation());
+
+            SearchResult deeper = smp.search(Position.fromFen(Fen.STARTING_POSITION), SearchLimits.depth(5));
+            assertEquals(5, deeper.getDepth());
+            assertLegalLine(Fen.STARTING_POSITION, deeper.getPrincipalVariation());
+        }
+    }
+
+    @Test
+    @DisplayName("A search adds all its nodes to the shared counter by the time it returns")
+    void testNodeCounter() {
+        LongAdder counter = new LongAdder();
+        counter.add(10);
+        Search search = new Search(Position.fromFen(Fen.STARTING_POSITION), new TranspositionTable(1), new Evaluator(),
+                SearchLimits.depth(5), new long[0]);
+        search.countNodesIn(counter);
+        SearchResult result = search.run();
+        assertTrue(result.getNodes() > 1024);
+        assertEquals(10 + result.getNodes(), counter.sum());
+    }
+
+    @Test
+    @DisplayName("Killer moves and the history heuristic reach the same depth in fewer nodes")
+    void testMoveOrderingSavesNodes() {
+        String[] fens = {
+            "r1bq1rk1/2p1bppp/p1np1n2/1p2p3/4P3/1BP2N1P/PP1P1PP1/RNBQR1K1 b - - 0 9",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        };
+        SearchConfig plain = SearchConfig.DEFAULT.withKillerMoves(false).withHistoryHeuristic(false);
+        long plainNodes = 0;
+        long orderedNodes = 0;
+        for (String fen : fens) {
+            plainNodes += new Engine(1, 1, plain).search(Position.fromFen(fen), SearchLimits.depth(6)).getNodes();
+            orderedNodes += new Engine(1, 1).search(Position.fromFen(fen), SearchLimits.depth(6)).getNodes();
+        }
+        assertTrue(orderedNodes < plainNodes, orderedNodes + " nodes with ordering, " + plainNodes + " without");
+    }
+
+    @Test
+    @DisplayName("Each selective technique can be switched off by name")
+    void testSearchConfigNames() {
+        SearchConfig config = SearchConfig.DEFAULT.withDisabled(" lmr, null-move ,");
+        assertFalse(config.isLateMoveReductions());
+        assertFalse(config.isNullMove());
+        assertTrue(config.isPrincipalVariationSearch() && config.isFutilityPruning() && config.isAspirationWindows());
+        assertEquals(SearchConfig.DEFAULT.withLateMoveReductions(false).withNullMove(false), config);
+        assertEquals(SearchConfig.DEFAULT, SearchConfig.DEFAULT.withDisabled(""));
+        assertThrows(IllegalArgumentException.class, () -> SearchConfig.DEFAULT.withDisabled("lmr,unknown"));
+    }
+
+    @Test
+    @DisplayName("Pruning and reductions reach the same depth in fewer nodes and keep the tactics")
+    void testSelectiveSearch() {
+        SearchConfig full = SearchConfig.DEFAULT.withDisabled("pvs,aspiration,null-move,lmr,futility");
+        String fen = "r1bq1rk1/2p1bppp/p1np1n2/1p2p3/4P3/1BP2N1P/PP1P1PP1/RNBQR1K1 b - - 0 9";
+        long fullNodes = new Engine(1, 1, full).search(Position.fromFen(fen), SearchLimits.depth(6)).getNodes();
+        long selectiveNodes = engine.search(Position.fromFen(fen), SearchLimits.depth(6)).getNodes();
+        assertTrue(selectiveNodes < fullNodes / 2, selectiveNodes + " nodes selective, " + fullNodes + " full width");
+
+        // Mate in two is still found with every technique on
+        SearchResult mate = engine.search(Position.fromFen("7k/8/8/8/8/8/R7/1R4K1 w - - 0 1"), SearchLimits.depth(6));
+        assertEquals(Search.MATE - 3, mate.getScore());
+    }
+
+    @Test
+    @DisplayName("An aborted background search completes at once with its best move so far")
+    void testAbortAsyncSearch() throws InterruptedException {
+        SearchTask task = engine.searchAsync(Position.fromFen(Fen.STARTING_POSITION), SearchLimits.depth(Search.MAX_PLY), new long[0]);
+        Thread.sleep(200);
+        assertFalse(task.isDone());
+        // Readable without waiting, should the abort itself not complete in time
+        assertNotEquals(Moves.NONE, task.getCompletedMove());
+
+        long start = System.nanoTime();
+        SearchResult result = task.abort().join();
+        long abortMillis = (System.nanoTime() - start) / 1_000_000L;
+        assertTrue(abortMillis < 50, "abort took " + abortMillis + " ms");
+        assertTrue(result.getDepth() >= 1);
+        assertLegalLine(Fen.STARTING_POSITION, result.getPrincipalVariation());
+    }
+
+    @Test
+    @DisplayName("Each search for a move starts a table generation and pondering does not")
+    void testGenerationPerMove() {
+        Position start = Position.fromFen(Fen.STARTING_POSITION);
+        try (Engine pondering = new Engine(1, 2)) {
+            int before = pondering.getTable().generation();
+            SearchResult played = pondering.search(start, SearchLimits.depth(4));
+            int generation = pondering.getTable().generation();
+            assertEquals((before + 1) & 0x3F, generation);
+
+            // The reply the engine would expect; any legal one will do, as
+            // a short principal variation may not name one
+            Position expected = start.copy();
+            expected.makeMove(played.getBestMove());
+            int[] replies = new int[MoveGenerator.MAX_MOVES];
+            MoveGenerator.generateLegalMoves(expected, replies);
+            expected.makeMove(replies[0]);
+            SearchTask ponder = pondering.ponder(expected, SearchLimits.depth(5), new long[0], 0);
+            assertTrue(ponder.ponderHit().join().getDepth() >= 1);
+            assertEquals(generation, pondering.getTable().generation());
+
+            SearchTask missed = pondering.ponder(expected, SearchLimits.depth(5), new long[0], 0);
+            missed.cancel(true);
+            pondering.searchAsync(expected, SearchLimits.depth(2), new long[0]).join();
+            assertEquals((generation + 1) & 0x3F, pondering.getTable().generation());
+        }
+    }
+
+    @Test
+    @DisplayName("Background searches beyond the pool and its queue are turned away at once")
+    void testBoundedSearchPool() {
+        Position start = Position.fromFen(Fen.STARTING_POSITION);
+        try (Engine busy = new Engine(1, 1, SearchConfig.DEFAULT, null, 1)) {
+            SearchTask running = busy.searchAsync(start, SearchLimits.depth(Search.MAX_PLY), new long[0]);
+            List<SearchTask> queued = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queued.add(busy.searchAsync(start, SearchLimits.depth(Search.MAX_PLY), new long[0]));
+            }
+            SearchTask rejected = busy.searchAsync(start, SearchLimits.depth(1), new long[0]);
+            assertTrue(rejected.isCompletedExceptionally());
+            CompletionException failure = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+
+            // Queued searches that are cancelled never start, so the last one runs next
+            queued.subList(0, 3).forEach(task -> task.cancel(true));
+            assertTrue(running.abort().join().getDepth() >= 1);
+            assertNotEquals(Moves.NONE, queued.get(3).abort().join().getBestMove());
+        }
+    }
+
+    @Test
+    @DisplayName("No new iteration starts after the soft time limit")
+    void testSoftTimeLimit() {
+        long start = System.nanoTime();
+        SearchResult result = engine.search(Position.fromFen(Fen.STARTING_POSITION), SearchLimits.moveTime(20, 10_000));
+        long millis = (System.nanoTime() - start) / 1_000_000L;
+        assertTrue(millis < 5_000, "searched for " + millis + " ms");
+        assertTrue(result.getDepth() >= 1);
+
+        SearchLimits sudden = SearchLimits.forClock(60_000, 0);
+        assertEquals(1498, sudden.getSoftTimeMillis());
+        assertEquals(4 * 1498, sudden.getTimeMillis());
+        SearchLimits scramble = SearchLimits.forClock(100, 1_000);
+        assertTrue(scramble.getSoftTimeMillis() <= scramble.getTimeMillis());
+        assertTrue(scramble.getTimeMillis() <= 50, "hard limit " + scramble.getTimeMillis());
+    }
+
+    @Test
+    @DisplayName("Pondering ignores the clock until the expected move is played")
+    void testPonderHit() throws InterruptedException {
+        // Position after 1.e4 e5 2.Nf3, pondered while white "thinks" about 2.Nf3
+        String fen = "rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2";
+        SearchTask task = engine.ponder(Position.fromFen(fen), SearchLimits.moveTime(20), new long[0], 0);
+        Thread.sleep(200);
+        assertFalse(task.isDone(), "pondering stopped at its move time");
+
+        SearchResult result = task.ponderHit().join();
+        assertTrue(result.getDepth() >= 2);
+        assertTrue(result.getTimeMillis() >= 200);
+        assertLegalLine(fen, result.getPrincipalVariation());
+
+        // A cancelled ponder ends without a result
+        SearchTask missed = engine.ponder(Position.fromFen(fen), SearchLimits.moveTime(20), new long[0], 0);
+        assertTrue(missed.cancel(true));
+        assertTrue(missed.isCancelled());
+        SearchTask capped = engine.ponder(Position.fromFen(fen), SearchLimits.moveTime(20), new long[0], 50);
+        assertTrue(capped.join().getDepth() >= 1);
+    }
+
+    private static void assertLegalLine(String fen, int[] line) {
+        Position position = Position.fromFen(fen);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int move : line) {
+            int count = MoveGenerator.generateLegalMoves(position, moves);
+            boolean legal = false;
+            for (int i = 0; i < count; i++) {
+                legal |= moves[i] == move;
+            }
+            assertTrue(legal, Moves.toUci(move) + " in " + position.toFen());
+            position.makeMove(move);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.checkmate.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.utils.Moves;
+
+@DisplayName("Transposition table tests")
+class TranspositionTableTest {
+
+    // Hashes that share a bucket: same low bits, different high bits
+    private static long sameBucket(int n) {
+        return 0x1234L | (long) n << 40;
+    }
+
+    @Test
+    @DisplayName("Stored fields come back from a probe")
+    void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        int move = Moves.encode(12, 28, Moves.DOUBLE_PUSH);
+        table.store(sameBucket(1), move, -Search.MATE + 5, 17, TranspositionTable.LOWER);
+
+        long entry = table.probe(sameBucket(1));
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(-Search.MATE + 5, TranspositionTable.score(entry));
+        assertEquals(17, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+
+        assertEquals(0L, table.probe(sameBucket(2)));
+        assertEquals(1, table.getHits());
+        assertEquals(1, table.getMisses());
+    }
+
+    @Test
+    @DisplayName("Shallow entries and entries from older searches are replaced first")
+    void testReplacement() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(sameBucket(1), 1, 0, 10, TranspositionTable.EXACT);
+        table.store(sameBucket(2), 2, 0, 2, TranspositionTable.EXACT);
+        table.store(sameBucket(3), 3, 0, 5, TranspositionTable.EXACT);
+
+        assertNotEquals(0L, table.probe(sameBucket(1)));
+        assertEquals(0L, table.probe(sameBucket(2)));
+        assertNotEquals(0L, table.probe(sameBucket(3)));
+        assertEquals(1, table.getCollisions());
+
+        // Two searches later even a depth 1 result beats the old entries
+        table.newSearch();
+        table.newSearch();
+        table.store(sameBucket(4), 4, 0, 1, TranspositionTable.EXACT);
+        assertNotEquals(0L, table.probe(sameBucket(1)));
+        assertEquals(0L, table.probe(sameBucket(3)));
+        assertEquals(4, TranspositionTable.move(table.probe(sameBucket(4))));
+        assertEquals(1, table.getCollisions());
+    }
+
+    @Test
+    @DisplayName("Restoring a position without a move keeps the earlier move")
+    void testSamePositionKeepsMove() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(sameBucket(1), 77, 10, 3, TranspositionTable.LOWER);
+        table.store(sameBucket(1), Moves.NONE, -20, 4, TranspositionTable.UPPER);
+
+        long entry = table.probe(sameBucket(1));
+        assertEquals(77, TranspositionTable.move(entry));
+        assertEquals(-20, TranspositionTable.score(entry));
+        assertEquals(4, TranspositionTable.depth(entry));
+    }
+
+    @Test
+    @DisplayName("Size is rounded to a power of two and clear empties the table")
+    void testSizeAndClear() {
+        TranspositionTable table = new TranspositionTable(3);
+        assertEquals(2 * 1024 * 1024 / 16, table.capacity());
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(0));
+
+        table.store(42L, 5, 0, 1, TranspositionTable.EXACT);
+        table.clear();
+        assertEquals(0L, table.probe(42L));
+        assertEquals(0, table.hashfull());
+    }
+}
@@ -0,0 +1,145 @@
+package com.checkmate.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.utils.Bitboards;
+import com.checkmate.utils.ChessUtils;
+
+@DisplayName("Board bitboard position tests")
+class BoardPositionTest {
+
+    @Test
+    @DisplayName("Starting placement round-trips through the position")
+    void testStartingPlacementRoundTrip() {
+        Board board = new Board();
+        Position position = board.getPosition();
+
+        assertEquals(Position.WHITE, position.getSideToMove());
+        assertEquals(0xFFFFL | 0xFFFFL << 48, position.getOccupied());
+        assertEquals(4, position.kingSquare(Position.WHITE));
+        assertEquals(60, position.kingSquare(Position.BLACK));
+        assertEquals(0xF, position.getCastlingRights());
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR", position.toPlacement());
+    }
+
+    @Test
+    @DisplayName("Rule checks do not materialise the Piece view")
+    void testRuleChecksUsePositionOnly() {
+        Board board = new Board();
+        ChessUtils.makeMove(board, 6, 4, 4, 4);
+
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", board.getBoardState());
+        assertEquals("BLACK", board.getCurrentTurn());
+        assertEquals(Position.BLACK, board.getPosition().getSideToMove());
+    }
+
+    @Test
+    @DisplayName("Edits to the Piece view are picked up by the position")
+    void testViewEditsReachPosition() {
+        Board board = new Board();
+        board.getSquares()[4][4] = new Piece("queen", "black", "♛");
+
+        Position position = board.getPosition();
+        int e4 = Bitboards.square(4, 4);
+        assertEquals(Position.pieceCode(Position.BLACK, Position.QUEEN), position.pieceAt(e4));
+    }
+
+    @Test
+    @DisplayName("Moves applied to the position are reflected in the Piece view")
+    void testPositionMovesReachView() {
+        Board board = new Board();
+        Piece[][] squares = board.getSquares();
+        ChessUtils.applyMove(board, 7, 6, 5, 5);
+
+        assertNull(squares[7][6]);
+        assertEquals("knight", squares[5][5].getType());
+        assertEquals("white", squares[5][5].getColor());
+    }
+
+    @Test
+    @DisplayName("Piece codes survive the round trip through the view")
+    void testPieceCodes() {
+        for (int code = 0; code < 12; code++) {
+            Piece piece = new Piece(code);
+            assertEquals(code, piece.getCode());
+            assertEquals(code, new Piece(piece.getType(), piece.getColor(), piece.getSymbol()).getCode());
+        }
+
+        Piece promoted = new Piece("pawn", "black", "♟");
+        assertEquals(Position.pieceCode(Position.BLACK, Position.PAWN), promoted.getCode());
+        promoted.setType("queen");
+        assertEquals(Position.pieceCode(Position.BLACK, Position.QUEEN), promoted.getCode());
+        assertEquals(Position.NO_PIECE, new Piece("dragon", "white", "?").getCode());
+    }
+
+    @Test
+    @DisplayName("Refreshing the view keeps Piece objects that did not move")
+    void testRefreshReusesUnchangedPieces() {
+        Board board = new Board();
+        Piece[][] squares = board.getBoardArray();
+        Piece rook = squares[7][0];
+        Piece knight = squares[7][6];
+
+        ChessUtils.makeMove(board, 7, 6, 5, 5);   // Ng1-f3
+
+        assertSame(rook, squares[7][0]);
+        assertNull(squares[7][6]);
+        assertEquals("knight", squares[5][5].getType());
+        assertNotSame(knight, squares[5][5]);
+        assertEquals(Position.pieceCode(Position.WHITE, Position.KNIGHT), board.getPosition().pieceAt(21));
+    }
+
+    @Test
+    @DisplayName("The position syncs with the view once each time it is handed out")
+    void testViewSyncedOncePerHandOut() {
+        Board board = new Board();
+        board.getBoardArray()[6][4] = null;   // take the e2 pawn off
+        assertEquals(Position.NO_PIECE, board.getPosition().pieceAt(12));
+
+        // Without handing the view out again, the rules code reads only the position
+        Piece[][] squares = board.getSquares();
+        board.getPosition();
+        squares[6][3] = null;
+        assertEquals(Position.pieceCode(Position.WHITE, Position.PAWN), board.getPosition().pieceAt(11));
+        board.getBoardArray();
+        assertEquals(Position.NO_PIECE, board.getPosition().pieceAt(11));
+    }
+
+    @Test
+    @DisplayName("Castling rights and clocks survive saving and reloading the board")
+    void testReloadKeepsFullState() {
+        Board board = new Board();
+        ChessUtils.makeMove(board, 6, 4, 4, 4);   // e2-e4
+        ChessUtils.makeMove(board, 1, 4, 3, 4);   // e7-e5
+        ChessUtils.makeMove(board, 7, 4, 6, 4);   // Ke1-e2
+        ChessUtils.makeMove(board, 0, 6, 2, 5);   // Ng8-f6
+
+        String saved = board.getBoardState();
+        assertEquals("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/8/PPPPKPPP/RNBQ1BNR w kq - 2 3", saved);
+
+        // The king walking back home must not bring its castling rights with it
+        Board reloaded = new Board();
+        reloaded.setBoardState(saved);
+        reloaded.setCurrentTurn("WHITE");
+        ChessUtils.makeMove(reloaded, 6, 4, 7, 4);   // Ke2-e1
+        assertEquals("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/8/PPPP1PPP/RNBQKBNR b kq - 3 3", reloaded.getBoardState());
+        assertTrue(reloaded.getBoardArray()[7][4].getHasMoved());
+    }
+
+    @Test
+    @DisplayName("Boards saved with only the piece placement still load")
+    void testLegacyPlacementLoads() {
+        Board board = new Board();
+        board.setBoardState("r3k2r/8/8/8/8/8/8/R3K2R");
+        board.setCurrentTurn("BLACK");
+
+        Position position = board.getPosition();
+        assertEquals(Position.BLACK, position.getSideToMove());
+        assertEquals(0xF, position.getCastlingRights());
+
+        board.updateBoardState();
+        assertEquals("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1", board.getBoardState());
+    }
+}
@@ -0,0 +1,66 @@
+package com.checkmate.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.utils.Bitboards;
+import com.checkmate.utils.Moves;
+
+@DisplayName("Packed move list tests")
+class MoveListTest {
+
+    @Test
+    @DisplayName("Packs moves two bytes each and reads them back")
+    void testRoundTrip() {
+        MoveList moves = new MoveList();
+        assertTrue(moves.isEmpty());
+        int[] played = new int[100];
+        for (int i = 0; i < played.length; i++) {
+            played[i] = Moves.encode(i % 64, (i * 7) % 64, i % 16);
+            moves.add(played[i]);
+        }
+        assertEquals(100, moves.size());
+        assertEquals(200, moves.toBytes().length);
+        assertArrayEquals(played, moves.toArray());
+
+        MoveList stored = new MoveList(moves.toBytes());
+        assertEquals(100, stored.size());
+        assertEquals(played[37], stored.get(37));
+        stored.add(0xFFFF);
+        assertEquals(0xFFFF, stored.get(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> stored.get(101));
+    }
+
+    @Test
+    @DisplayName("Wraps the stored column without copying it")
+    void testStoredBytes() {
+        int move = Moves.encode(Bitboards.square(6, 4), Bitboards.square(4, 4), Moves.DOUBLE_PUSH);
+        byte[] data = MoveList.pack(move);
+        MoveList moves = new MoveList(data);
+        assertEquals(1, moves.size());
+        // Decoded when read, from the bytes as they are then
+        data[1] = 0;
+        assertEquals(move & 0xFF00, moves.get(0));
+        assertTrue(new MoveList(null).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Derives move rows from encoded moves")
+    void testMoveView() {
+        Game game = new Game("1", "2");
+        game.getMoveList().add(Moves.encode(Bitboards.square(6, 4), Bitboards.square(4, 4), Moves.DOUBLE_PUSH));
+        assertSame(game.getMoveList(), game.getMoveList());
+
+        Move pawn = new Move(game, game.getMoveList().get(0));
+        assertEquals(6, pawn.getFromRow());
+        assertEquals(4, pawn.getFromCol());
+        assertEquals(4, pawn.getToRow());
+        assertEquals(4, pawn.getToCol());
+        assertEquals("e2e4", pawn.getMoveNotation());
+        assertEquals("e2e4", new Move(game, 6, 4, 4, 4).getMoveNotation());
+
+        Move promotion = new Move(game, Moves.promotion(Bitboards.square(1, 0), Bitboards.square(0, 0), Position.QUEEN, false));
+        assertEquals("a7a8q", promotion.getMoveNotation());
+    }
+}
@@ -0,0 +1,77 @@
+package com.checkmate.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+import com.checkmate.utils.Zobrist;
+
+@DisplayName("Position makeMove/unmakeMove tests")
+class PositionMakeUnmakeTest {
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+    };
+
+    @Test
+    @DisplayName("Unmaking every legal move restores the position exactly")
+    void testUnmakeRestoresPosition() {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : POSITIONS) {
+            Position position = Position.fromFen(fen);
+            int count = MoveGenerator.generateLegalMoves(position, moves);
+            for (int i = 0; i < count; i++) {
+                position.makeMove(moves[i]);
+                position.unmakeMove(moves[i]);
+                assertEquals(fen, position.toFen(), "after " + Moves.toUci(moves[i]));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Nested moves unwind in reverse order")
+    void testNestedUnmake() {
+        Position position = Position.fromFen(POSITIONS[3]);
+        int enPassant = Moves.encode(36, 45, Moves.EN_PASSANT);   // e5xf6
+        int recapture = Moves.encode(54, 45, Moves.CAPTURE);      // g7xf6
+        int check = Moves.encode(3, 39, Moves.QUIET);             // Qd1-h5+
+
+        position.makeMove(enPassant);
+        position.makeMove(recapture);
+        position.makeMove(check);
+        assertEquals("rnbqkbnr/ppp1p2p/5p2/3p3Q/8/8/PPPP1PPP/RNB1KBNR b KQkq - 1 4", position.toFen());
+
+        position.unmakeMove(check);
+        position.unmakeMove(recapture);
+        position.unmakeMove(enPassant);
+        assertEquals(POSITIONS[3], position.toFen());
+    }
+
+    @Test
+    @DisplayName("A null move passes the turn and is taken back exactly")
+    void testNullMove() {
+        for (String fen : POSITIONS) {
+            Position position = Position.fromFen(fen);
+            long hash = position.getHash();
+            position.makeNullMove();
+            assertEquals(1 - Position.fromFen(fen).getSideToMove(), position.getSideToMove());
+            assertEquals(-1, position.getEnPassantSquare());
+            assertEquals(Zobrist.compute(position), position.getHash(), fen);
+
+            // Moves made on top of the null move unwind too
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            if (MoveGenerator.generateLegalMoves(position, moves) > 0) {
+                position.makeMove(moves[0]);
+                position.unmakeMove(moves[0]);
+            }
+            position.unmakeNullMove();
+            assertEquals(fen, position.toFen());
+            assertEquals(hash, position.getHash());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.checkmate.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.checkmate.model.Game;
+
+@DisplayName("Active game cache tests")
+class ActiveGameCacheTest {
+
+    private long now;
+
+    @Test
+    @DisplayName("Counts hits and misses")
+    void testHitsAndMisses() {
+        ActiveGameCache cache = new ActiveGameCache(10, 60_000, () -> now);
+        Game game = game(1);
+        assertNull(cache.get(1));
+        cache.put(game);
+        assertSame(game, cache.get(1));
+        assertSame(game, cache.get(1));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+
+        cache.remove(1);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Evicts the least recently used game when full")
+    void testLruEviction() {
+        ActiveGameCache cache = new ActiveGameCache(2, 60_000, () -> now);
+        cache.put(game(1));
+        cache.put(game(2));
+        // Using game 1 makes game 2 the least recently used
+        assertNotNull(cache.get(1));
+        cache.put(game(3));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("Drops games left idle too long")
+    void testIdleEviction() {
+        ActiveGameCache cache = new ActiveGameCache(10, 1_000, () -> now);
+        cache.put(game(1));
+        now += TimeUnit.MILLISECONDS.toNanos(600);
+        cache.put(game(2));
+        now += TimeUnit.MILLISECONDS.toNanos(600);
+        // Game 1 has been idle for 1.2 s, game 2 for 0.6 s
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        now += TimeUnit.MILLISECONDS.toNanos(900);
+        // Reading game 2 reset its idle time
+        assertNotNull(cache.get(2));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("Loads a game on a miss and caches it only while it is in progress")
+    void testGetOrLoad() {
+        ActiveGameCache cache = new ActiveGameCache(10, 60_000, () -> now);
+        AtomicInteger loads = new AtomicInteger();
+        Game active = game(1);
+        assertSame(active, cache.getOrLoad(1, id -> {
+            loads.incrementAndGet();
+            return active;
+        }));
+        assertSame(active, cache.getOrLoad(1, id -> {
+            throw new AssertionError("loaded a cached game");
+        }));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        Game finished = game(2);
+        finished.setStatus("FINISHED");
+        assertSame(finished, cache.getOrLoad(2, id -> finished));
+        assertNull(cache.getOrLoad(3, id -> null));
+        assertEquals(1, cache.size());
+
+        // A failed load is not remembered
+        assertThrows(IllegalStateException.class, () -> cache.getOrLoad(4, id -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertNotNull(cache.getOrLoad(4, ActiveGameCacheTest::game));
+    }
+
+    @Test
+    @DisplayName("Loads a game once when requests for it miss together")
+    void testConcurrentMiss() throws Exception {
+        ActiveGameCache cache = new ActiveGameCache(10, 60_000, () -> now);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Game> first = CompletableFuture.supplyAsync(() -> cache.getOrLoad(1, id -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return game(id);
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread second = new Thread(() -> cache.getOrLoad(1, id -> {
+            loads.incrementAndGet();
+            return game(id);
+        }));
+        Game[] seen = new Game[1];
+        Thread third = new Thread(() -> seen[0] = cache.getOrLoad(1, ActiveGameCacheTest::game));
+        second.start();
+        third.start();
+        // Both wait for the first load rather than loading again
+        awaitWaiting(second);
+        awaitWaiting(third);
+        release.countDown();
+        Game game = first.get(5, TimeUnit.SECONDS);
+        third.join(5_000);
+        second.join(5_000);
+        assertSame(game, seen[0]);
+        assertSame(game, cache.get(1));
+        assertEquals(1, loads.get());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("Does not cache a game removed while it loads")
+    void testRemoveWhileLoading() {
+        ActiveGameCache cache = new ActiveGameCache(10, 60_000, () -> now);
+        Game game = cache.getOrLoad(1, id -> {
+            // Saved with changes meanwhile, so what was read is out of date
+            cache.remove(id);
+            return game(id);
+        });
+        assertNotNull(game);
+        assertEquals(0, cache.size());
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private static Game game(long id) {
+        Game game = new Game("1", Game.COMPUTER_PLAYER);
+        game.setId(id);
+        return game;
+    }
+}
@@ -0,0 +1,141 @@
+package com.checkmate.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+@DisplayName("Journal replay and snapshot tests")
+class JournalReplayTest {
+
+    private static final long GAME = 5;
+    private static final int BOARD = 50;
+    private static final LocalDateTime PLAYED = LocalDateTime.of(2025, 3, 1, 12, 0);
+    private static final String[] LINE = {"e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6"};
+
+    @Test
+    @DisplayName("Counts plies from the move number and side to move")
+    void testPly() {
+        assertEquals(0, BoardSnapshot.plyOf(Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1")));
+        assertEquals(1, BoardSnapshot.plyOf(Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1")));
+        assertEquals(40, BoardSnapshot.plyOf(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 21")));
+    }
+
+    @Test
+    @DisplayName("Snapshots survive a round trip and damaged ones are ignored")
+    void testSnapshotStore() throws IOException {
+        Path directory = Files.createTempDirectory("snapshots");
+        try {
+            SnapshotStore store = new SnapshotStore(directory);
+            assertNull(store.load(GAME));
+            BoardSnapshot saved = snapshotAfter(4);
+            store.save(saved);
+            BoardSnapshot loaded = store.load(GAME);
+            assertEquals(GAME, loaded.getGameId());
+            assertEquals(BOARD, loaded.getBoardId());
+            assertEquals(4, loaded.getPly());
+            assertEquals(saved.getBoardState(), loaded.getBoardState());
+            assertEquals("WHITE", loaded.getCurrentTurn());
+            assertArrayEquals(saved.getRepetitionKeys(), loaded.getRepetitionKeys());
+
+            Path file = directory.resolve("game-" + GAME + ".snap");
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[10] ^= 1;
+            Files.write(file, bytes);
+            assertNull(store.load(GAME));
+
+            store.delete(GAME);
+            assertFalse(Files.exists(file));
+        } finally {
+            MoveJournalTest.delete(directory);
+        }
+    }
+
+    @Test
+    @DisplayName("Replays the journal tail from the stored board")
+    void testReplayFromStoredBoard() {
+        List<MoveRecord> records = JournalReplay.recover(snapshotAfter(2), null, journal(LINE.length));
+        assertEquals(List.of(3, 4, 5, 6), plies(records));
+        assertEquals("g1f3", Moves.toUci(records.get(0).getMove()));
+        MoveRecord last = records.get(records.size() - 1);
+        assertEquals(snapshotAfter(6).getBoardState(), last.getBoardState());
+        assertEquals("WHITE", last.getCurrentTurn());
+        assertArrayEquals(snapshotAfter(6).getRepetitionKeys(), last.getRepetitionKeys());
+    }
+
+    @Test
+    @DisplayName("Starts from a snapshot that is newer than the stored board")
+    void testReplayFromSnapshot() {
+        List<MoveRecord> records = JournalReplay.recover(snapshotAfter(1), snapshotAfter(4), journal(LINE.length));
+        assertEquals(List.of(2, 3, 4, 5, 6), plies(records));
+        // Moves the snapshot already holds only need their rows written
+        assertFalse(records.get(0).hasBoardState());
+        assertFalse(records.get(1).hasBoardState());
+        assertEquals(snapshotAfter(4).getBoardState(), records.get(2).getBoardState());
+        assertEquals(snapshotAfter(6).getBoardState(), records.get(4).getBoardState());
+
+        // An older snapshot is passed over
+        assertEquals(List.of(5, 6), plies(JournalReplay.recover(snapshotAfter(4), snapshotAfter(2), journal(LINE.length))));
+        assertTrue(JournalReplay.recover(snapshotAfter(6), null, journal(LINE.length)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Stops at a gap or a move that does not fit")
+    void testReplayStopsAtBadEntry() {
+        List<MoveJournal.Entry> entries = new ArrayList<>(journal(LINE.length));
+        entries.remove(3);
+        assertEquals(List.of(1, 2, 3), plies(JournalReplay.recover(snapshotAfter(0), null, entries)));
+
+        entries = new ArrayList<>(journal(LINE.length));
+        // Black's reply replaced by a white move
+        entries.set(1, new MoveJournal.Entry(GAME, BOARD, 2, entries.get(2).getMove(), PLAYED));
+        assertEquals(List.of(1), plies(JournalReplay.recover(snapshotAfter(0), null, entries)));
+    }
+
+    private static List<MoveJournal.Entry> journal(int plies) {
+        List<MoveJournal.Entry> entries = new ArrayList<>();
+        Board board = snapshotAfter(0).toBoard();
+        for (int ply = 1; ply <= plies; ply++) {
+            int move = move(board.getPosition(), LINE[ply - 1]);
+            ChessUtils.makeMove(board, move);
+            entries.add(new MoveJournal.Entry(GAME, BOARD, ply, move, PLAYED.plusSeconds(ply)));
+        }
+        return entries;
+    }
+
+    private static BoardSnapshot snapshotAfter(int plies) {
+        Board board = new Board();
+        for (int ply = 0; ply < plies; ply++) {
+            ChessUtils.makeMove(board, move(board.getPosition(), LINE[ply]));
+        }
+        return new BoardSnapshot(GAME, BOARD, plies, board.getBoardState(), board.getCurrentTurn(),
+                board.getRepetitionKeys());
+    }
+
+    private static int move(Position position, String uci) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(position, moves);
+        for (int i = 0; i < count; i++) {
+            if (Moves.toUci(moves[i]).equals(uci)) {
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException(uci);
+    }
+
+    private static List<Integer> plies(List<MoveRecord> records) {
+        return records.stream().map(MoveRecord::getPly).toList();
+    }
+}
@@ -0,0 +1,164 @@
+package com.checkmate.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@DisplayName("Move journal tests")
+class MoveJournalTest {
+
+    private static final LocalDateTime PLAYED = LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123456789);
+
+    @Test
+    @DisplayName("Reads back every record appended, in order")
+    void testRoundTrip() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            try (MoveJournal journal = new MoveJournal(directory, 1 << 16)) {
+                assertEquals(0, journal.append(new MoveJournal.Entry(7, 70, 1, 0x0C1C, PLAYED)));
+                assertEquals(1, journal.append(new MoveJournal.Entry(8, 80, 1, 0xFFFF, PLAYED.plusSeconds(1))));
+                journal.sync(1);
+            }
+            List<MoveJournal.Entry> entries = MoveJournal.readAll(directory);
+            assertEquals(2, entries.size());
+            MoveJournal.Entry first = entries.get(0);
+            assertEquals(7, first.getGameId());
+            assertEquals(70, first.getBoardId());
+            assertEquals(1, first.getPly());
+            assertEquals(0x0C1C, first.getMove());
+            assertEquals(PLAYED, first.getCreatedAt());
+            assertEquals(0xFFFF, entries.get(1).getMove());
+            assertEquals(PLAYED.plusSeconds(1), entries.get(1).getCreatedAt());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    @DisplayName("Moves on to new segments and releases the ones written to the database")
+    void testSegments() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            try (MoveJournal journal = new MoveJournal(directory, 4 * MoveJournal.RECORD_BYTES)) {
+                for (int ply = 1; ply <= 10; ply++) {
+                    assertEquals(ply - 1, journal.append(new MoveJournal.Entry(1, 10, ply, ply, PLAYED)));
+                }
+                assertEquals(3, files(directory).size());
+                assertEquals(10, MoveJournal.readAll(directory).size());
+
+                // Records 0-5 are in the database: only the first segment is wholly covered
+                journal.release(5);
+                assertEquals(2, files(directory).size());
+                assertEquals(5, MoveJournal.readAll(directory).get(0).getPly());
+
+                // The segment still being written is never released
+                journal.release(100);
+                assertEquals(1, files(directory).size());
+                assertEquals(9, MoveJournal.readAll(directory).get(0).getPly());
+            }
+            // A reopened journal starts after the segments left behind
+            try (MoveJournal journal = new MoveJournal(directory, 4 * MoveJournal.RECORD_BYTES)) {
+                journal.append(new MoveJournal.Entry(1, 10, 11, 11, PLAYED));
+            }
+            assertEquals(List.of(9, 10, 11), MoveJournal.readAll(directory).stream().map(MoveJournal.Entry::getPly).toList());
+
+            MoveJournal.clear(directory);
+            assertTrue(MoveJournal.readAll(directory).isEmpty());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    @DisplayName("Stops at a record torn by a crash")
+    void testTornRecord() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            try (MoveJournal journal = new MoveJournal(directory, 1 << 12)) {
+                for (int ply = 1; ply <= 3; ply++) {
+                    journal.append(new MoveJournal.Entry(1, 10, ply, ply, PLAYED));
+                }
+            }
+            // Damage the move of the second record
+            try (FileChannel channel = FileChannel.open(files(directory).get(0), StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {0x7F}), MoveJournal.RECORD_BYTES + 16);
+            }
+            assertEquals(1, MoveJournal.readAll(directory).size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    @DisplayName("Appends and syncs from many threads lose nothing")
+    void testGroupCommit() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            try (MoveJournal journal = new MoveJournal(directory, 64 * MoveJournal.RECORD_BYTES)) {
+                List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    long gameId = t + 1;
+                    writers.add(threads.submit(() -> {
+                        for (int ply = 1; ply <= 100; ply++) {
+                            journal.sync(journal.append(new MoveJournal.Entry(gameId, 1, ply, ply, PLAYED)));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> writer : writers) {
+                    writer.get();
+                }
+            }
+            List<MoveJournal.Entry> entries = MoveJournal.readAll(directory);
+            assertEquals(400, entries.size());
+            for (long gameId = 1; gameId <= 4; gameId++) {
+                long id = gameId;
+                // Each game's moves are in the order they were appended
+                assertEquals(IntStream.rangeClosed(1, 100).boxed().toList(),
+                        entries.stream().filter(e -> e.getGameId() == id).map(MoveJournal.Entry::getPly).toList());
+            }
+        } finally {
+            threads.shutdown();
+            delete(directory);
+        }
+    }
+
+    @Test
+    @DisplayName("Parses durability settings")
+    void testDurability() {
+        assertEquals(Durability.FSYNC, Durability.parse(" fsync"));
+        assertEquals(Durability.MEMORY, Durability.parse("MEMORY"));
+        assertThrows(IllegalArgumentException.class, () -> Durability.parse("sometimes"));
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
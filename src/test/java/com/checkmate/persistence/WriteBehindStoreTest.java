@@ -0,0 +1,329 @@
+package com.checkmate.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Game;
+import com.checkmate.model.Move;
+import com.checkmate.model.MoveList;
+import com.checkmate.repository.BoardRepository;
+import com.checkmate.repository.GameRepository;
+import com.checkmate.repository.MoveRepository;
+import com.checkmate.utils.ChessUtils;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+// H2 in PostgreSQL mode. Each call commits on its own, as in the application,
+// so the flushing thread sees what the test saved.
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:writes;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("Write-behind store tests")
+class WriteBehindStoreTest {
+
+    // Long enough that only a full batch or an explicit flush writes anything
+    private static final long NEVER_MS = 60_000;
+    private static final long WAIT_MS = 5_000;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private MoveRepository moveRepository;
+
+    @Autowired
+    private BoardRepository boardRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private Path journalDirectory;
+    private final List<WriteBehindStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (WriteBehindStore store : stores) {
+            store.stop();
+        }
+        FileSystemUtils.deleteRecursively(journalDirectory);
+    }
+
+    @Test
+    @DisplayName("Writes a batch once it is full")
+    void testBatchSize() throws IOException {
+        WriteBehindStore store = start("memory", 3, 100, NEVER_MS, moveRepository);
+        Game game = newGame();
+        play(store, game, "e2e4", "e7e5");
+        assertEquals(2, store.getPendingCount());
+        assertEquals(List.of(), plies(game));
+
+        play(store, game, "g1f3");
+        awaitPlies(game, 3);
+        assertEquals(0, store.getPendingCount());
+        assertArrayEquals(game.getMoveList().toArray(), stored(game).getMoveList().toArray());
+        Board board = boardRepository.findByGame(game).orElseThrow();
+        assertEquals(game.getBoard().getBoardState(), board.getBoardState());
+        assertEquals("BLACK", board.getCurrentTurn());
+    }
+
+    @Test
+    @DisplayName("Writes what is waiting on the flush interval")
+    void testFlushInterval() throws IOException {
+        WriteBehindStore store = start("memory", 50, 100, 20, moveRepository);
+        Game game = newGame();
+        play(store, game, "e2e4");
+        awaitPlies(game, 1);
+        assertEquals(0, store.getPendingCount());
+    }
+
+    @Test
+    @DisplayName("Appends each batch's moves to the packed column, starting from none")
+    void testAppendsMoveData() throws IOException {
+        WriteBehindStore store = start("memory", 50, 100, NEVER_MS, moveRepository);
+        Game game = newGame();
+        Game other = newGame();
+        assertTrue(stored(game).getMoveList().isEmpty());
+
+        play(store, game, "e2e4", "e7e5");
+        play(store, other, "d2d4");
+        store.flush();
+        play(store, game, "g1f3", "b8c6");
+        store.flush();
+
+        MoveList moves = stored(game).getMoveList();
+        assertEquals(4, moves.size());
+        assertArrayEquals(game.getMoveList().toArray(), moves.toArray());
+        assertEquals("b8c6", Moves.toUci(moves.get(3)));
+        assertArrayEquals(other.getMoveList().toArray(), stored(other).getMoveList().toArray());
+        assertEquals(List.of(1, 2, 3, 4), plies(game));
+    }
+
+    @Test
+    @DisplayName("Writes the journalled moves a stopped process left behind at the next start")
+    void testRecoversAfterRestart() throws IOException {
+        WriteBehindStore crashed = start("log", 50, 100, NEVER_MS, moveRepository);
+        Game game = newGame();
+        play(crashed, game, "e2e4", "e7e5", "g1f3", "b8c6");
+        crashed.abandon();
+        stores.remove(crashed);
+        assertEquals(List.of(), plies(game));
+
+        WriteBehindStore restarted = start("log", 50, 100, NEVER_MS, moveRepository);
+        assertEquals(0, restarted.getPendingCount());
+        assertEquals(List.of(1, 2, 3, 4), plies(game));
+        assertArrayEquals(game.getMoveList().toArray(), stored(game).getMoveList().toArray());
+        Board board = boardRepository.findByGame(game).orElseThrow();
+        assertEquals(game.getBoard().getBoardState(), board.getBoardState());
+        assertArrayEquals(game.getBoard().getRepetitionKeys(), board.getRepetitionKeys());
+    }
+
+    @Test
+    @DisplayName("Snapshots a board before its moves are written and recovers from it and the journal after it")
+    void testRecoversFromSnapshot() throws IOException {
+        WriteBehindStore crashed = start("log", 50, 100, NEVER_MS, moveRepository, 4);
+        Game game = newGame();
+        play(crashed, game, "e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6");
+        BoardSnapshot snapshot = new SnapshotStore(journalDirectory.resolve("snapshots")).load(game.getId());
+        assertEquals(4, snapshot.getPly());
+        assertEquals(List.of(), plies(game));
+        crashed.abandon();
+        stores.remove(crashed);
+
+        // The journal's first moves do not fit the stored board any more, so
+        // only the snapshot can be played on from
+        jdbcTemplate.update("UPDATE boards SET board_state = ? WHERE id = ?", "4k3/8/8/8/8/8/8/4K3 w - - 0 1",
+                game.getBoard().getId());
+        start("log", 50, 100, NEVER_MS, moveRepository, 4);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), plies(game));
+        assertArrayEquals(game.getMoveList().toArray(), stored(game).getMoveList().toArray());
+        Board board = boardRepository.findByGame(game).orElseThrow();
+        assertEquals(game.getBoard().getBoardState(), board.getBoardState());
+        assertEquals("WHITE", board.getCurrentTurn());
+        assertArrayEquals(game.getBoard().getRepetitionKeys(), board.getRepetitionKeys());
+    }
+
+    @Test
+    @DisplayName("Keeps a batch queued after a failure that may pass, and writes it next time")
+    void testRetriesAfterFailure() throws IOException {
+        AtomicInteger failures = new AtomicInteger(1);
+        MoveRepository flaky = (MoveRepository) Proxy.newProxyInstance(MoveRepository.class.getClassLoader(),
+                new Class<?>[] {MoveRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("saveAll") && failures.getAndDecrement() > 0) {
+                        throw new TransientDataAccessResourceException("Connection lost");
+                    }
+                    try {
+                        return method.invoke(moveRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        WriteBehindStore store = start("log", 50, 100, NEVER_MS, flaky);
+        Game game = newGame();
+        play(store, game, "e2e4", "e7e5");
+
+        assertThrows(TransientDataAccessResourceException.class, store::flush);
+        assertEquals(2, store.getPendingCount());
+        assertFalse(store.isQuarantined(game.getId()));
+        assertEquals(List.of(), plies(game));
+        assertTrue(stored(game).getMoveList().isEmpty());
+
+        // Moves accepted meanwhile go after the ones queued again
+        play(store, game, "g1f3");
+        store.flush();
+        assertEquals(0, store.getPendingCount());
+        assertEquals(List.of(1, 2, 3), plies(game));
+        assertArrayEquals(game.getMoveList().toArray(), stored(game).getMoveList().toArray());
+    }
+
+    @Test
+    @DisplayName("Quarantines a game whose moves can never be written and writes the rest")
+    void testQuarantine() throws IOException {
+        WriteBehindStore store = start("memory", 50, 100, NEVER_MS, moveRepository);
+        Game duplicate = newGame();
+        Game oversized = newGame();
+        Game healthy = newGame();
+        // A row already holds the first game's second ply
+        Move stray = new Move(duplicate, 1, 0, 2, 0);
+        stray.setPly(2);
+        moveRepository.save(stray);
+        // Two moves more will not fit in the second game's column
+        jdbcTemplate.update("UPDATE game SET move_data = ? WHERE id = ?", new byte[8190], oversized.getId());
+
+        play(store, duplicate, "e2e4", "e7e5");
+        play(store, healthy, "e2e4", "e7e5");
+        play(store, oversized, "e2e4", "e7e5");
+        store.flush();
+
+        assertTrue(store.isQuarantined(duplicate.getId()));
+        assertTrue(store.isQuarantined(oversized.getId()));
+        assertFalse(store.isQuarantined(healthy.getId()));
+        assertEquals(0, store.getPendingCount());
+        assertEquals(List.of(1, 2), plies(healthy));
+        assertArrayEquals(healthy.getMoveList().toArray(), stored(healthy).getMoveList().toArray());
+        // Nothing of a quarantined game is half written
+        assertEquals(List.of(2), plies(duplicate));
+        assertTrue(stored(duplicate).getMoveList().isEmpty());
+        assertEquals(List.of(), plies(oversized));
+        assertEquals(8190 / MoveList.MOVE_BYTES, stored(oversized).getMoveList().size());
+
+        assertThrows(IllegalStateException.class, () -> play(store, duplicate, "g1f3"));
+        play(store, healthy, "g1f3");
+        store.flush();
+        assertEquals(List.of(1, 2, 3), plies(healthy));
+    }
+
+    @Test
+    @DisplayName("Makes a move wait for a flush while too many are waiting")
+    void testBackpressure() throws IOException {
+        WriteBehindStore store = start("memory", 50, 2, NEVER_MS, moveRepository);
+        Game game = newGame();
+        play(store, game, "e2e4", "e7e5");
+        assertEquals(List.of(), plies(game));
+
+        // Returns only once the first two are written
+        play(store, game, "g1f3");
+        assertEquals(List.of(1, 2), plies(game));
+        assertEquals(1, store.getPendingCount());
+    }
+
+    private WriteBehindStore start(String durability, int batchSize, int maxPending, long flushIntervalMs,
+                                   MoveRepository moves) throws IOException {
+        return start(durability, batchSize, maxPending, flushIntervalMs, moves, 32);
+    }
+
+    private WriteBehindStore start(String durability, int batchSize, int maxPending, long flushIntervalMs,
+                                   MoveRepository moves, int snapshotPlies) throws IOException {
+        WriteBehindStore store = new WriteBehindStore(moves, jdbcTemplate, transactionManager, durability, batchSize,
+                maxPending, true, flushIntervalMs, snapshotPlies, 1 << 16, journalDirectory.toString());
+        context.getAutowireCapableBeanFactory().autowireBean(store);
+        store.start();
+        stores.add(store);
+        return store;
+    }
+
+    private Game newGame() {
+        Game game = gameRepository.save(new Game("1", "2"));
+        game.setBoard(boardRepository.save(new Board(game)));
+        return game;
+    }
+
+    // Plays moves on a game's board and hands each to the store
+    private static void play(WriteBehindStore store, Game game, String... moves) {
+        for (String uci : moves) {
+            Board board = game.getBoard();
+            int move = move(board, uci);
+            ChessUtils.makeMove(board, move);
+            store.accept(game, board, move);
+        }
+    }
+
+    private static int move(Board board, String uci) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(board.getPosition(), moves);
+        for (int i = 0; i < count; i++) {
+            if (Moves.toUci(moves[i]).equals(uci)) {
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException(uci);
+    }
+
+    private Game stored(Game game) {
+        return gameRepository.findById(game.getId().intValue()).orElseThrow();
+    }
+
+    private List<Integer> plies(Game game) {
+        return moveRepository.findByGameOrderByPlyAscIdAsc(game).stream().map(Move::getPly).toList();
+    }
+
+    // Waits for the flushing thread to write a game's moves
+    private void awaitPlies(Game game, int plies) {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (plies(game).size() < plies && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        assertEquals(plies, plies(game).size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.checkmate.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import com.checkmate.model.Game;
+import com.checkmate.model.Move;
+
+// H2 in PostgreSQL mode, with the schema Hibernate generates from the entities
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:moves;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DisplayName("Move repository tests")
+class MoveRepositoryTest {
+
+    @Autowired
+    private MoveRepository moveRepository;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Game game;
+
+    @BeforeEach
+    void setUp() {
+        game = gameRepository.save(new Game("1", "2"));
+        LocalDateTime now = LocalDateTime.of(2025, 3, 1, 12, 0);
+        // Saved out of order, with clocks running backwards
+        for (int ply : new int[] {2, 1, 4, 3, 6, 5, 8, 7, 10, 9}) {
+            Move move = new Move(game, 6, ply % 8, 5, ply % 8);
+            move.setPly(ply);
+            move.setCreatedAt(now.minusSeconds(ply));
+            moveRepository.save(move);
+        }
+        moveRepository.flush();
+    }
+
+    @Test
+    @DisplayName("Returns a game's moves by ply, not by time")
+    void testOrderedByPly() {
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), plies(moveRepository.findByGameOrderByPlyAscIdAsc(game)));
+        assertEquals(List.of(4, 5, 6), plies(moveRepository.findByGameAndPlyBetweenOrderByPlyAsc(game, 4, 6)));
+    }
+
+    @Test
+    @DisplayName("Streams a range of plies in order")
+    void testStreamRange() {
+        try (Stream<Move> moves = moveRepository.streamByGameAndPlyBetweenOrderByPlyAsc(game, 7, 20)) {
+            assertEquals(List.of(7, 8, 9, 10), moves.map(Move::getPly).toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Rejects a second move at the same ply of a game")
+    void testUniquePly() {
+        Move duplicate = new Move(game, 1, 0, 2, 0);
+        duplicate.setPly(5);
+        assertThrows(DataIntegrityViolationException.class, () -> moveRepository.saveAndFlush(duplicate));
+    }
+
+    @Test
+    @DisplayName("Replays a range of plies with an index range scan")
+    void testReplayPlan() {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT id, ply FROM moves WHERE game_id = "
+                + game.getId() + " AND ply BETWEEN 3 AND 6 ORDER BY ply", String.class).toLowerCase(Locale.ROOT);
+        // H2 reports the index it looks up and the conditions it applies there,
+        // e.g. "/* public.idx_moves_game_ply_index_6: game_id = ... and ply >= 3 and ply <= 6 */"
+        String lookup = plan.substring(plan.indexOf("/*"), plan.indexOf("*/"));
+        assertTrue(lookup.contains("idx_moves_game_ply"), plan);
+        assertTrue(lookup.contains("game_id ="), plan);
+        assertTrue(lookup.contains("ply >= 3") && lookup.contains("ply <= 6"), plan);
+        assertFalse(plan.contains("tablescan"), plan);
+    }
+
+    private static List<Integer> plies(List<Move> moves) {
+        return moves.stream().map(Move::getPly).toList();
+    }
+}
@@ -0,0 +1,502 @@
+package com.checkmate.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.checkmate.engine.Engine;
+import com.checkmate.engine.Search;
+import com.checkmate.engine.SearchLimits;
+import com.checkmate.engine.SearchTask;
+import com.checkmate.engine.SearchTasks;
+import com.checkmate.model.Board;
+import com.checkmate.model.Game;
+import com.checkmate.model.Move;
+import com.checkmate.model.MoveList;
+import com.checkmate.model.Position;
+import com.checkmate.persistence.ActiveGameCache;
+import com.checkmate.persistence.BoardSnapshot;
+import com.checkmate.persistence.WriteBehindStore;
+import com.checkmate.repository.BoardRepository;
+import com.checkmate.repository.GameRepository;
+import com.checkmate.repository.MoveRepository;
+import com.checkmate.utils.Bitboards;
+import com.checkmate.utils.MoveGenerator;
+import com.checkmate.utils.Moves;
+
+// H2 in PostgreSQL mode. Each call commits on its own, as in the application,
+// so the write-behind thread and the test's own threads see what was saved.
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:games;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("Game service tests")
+class GameServiceTest {
+
+    private static final long MOVE_TIME_MS = 20;
+    private static final long MAX_MOVE_TIME_MS = 200;
+    private static final long ABORT_GRACE_MS = 50;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private MoveRepository moveRepository;
+
+    @Autowired
+    private BoardRepository boardRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationContext context;
+
+    private Path journalDirectory;
+    private WriteBehindStore writeBehind;
+    private ScriptedEngine engine;
+    private GameService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory("journal");
+        writeBehind = new WriteBehindStore(moveRepository, jdbcTemplate, transactionManager, "memory", 50, 1000, true,
+                50, 32, 1 << 16, journalDirectory.toString());
+        context.getAutowireCapableBeanFactory().autowireBean(writeBehind);
+        writeBehind.start();
+        // No pondering unless a test turns it on
+        startService(0, 0);
+    }
+
+    // Replaces the service (and its engine) with one that ponders on one thread at most
+    private void usePondering(long ponderMaxMs) {
+        service.stopEngine();
+        startService(1, ponderMaxMs);
+    }
+
+    private void startService(int ponderThreads, long ponderMaxMs) {
+        engine = new ScriptedEngine();
+        service = new GameService(gameRepository, moveRepository, boardRepository, writeBehind, engine,
+                MOVE_TIME_MS, MAX_MOVE_TIME_MS, ponderThreads, ponderMaxMs, new ActiveGameCache(100, 60_000));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.stopEngine();
+        writeBehind.stop();
+        FileSystemUtils.deleteRecursively(journalDirectory);
+    }
+
+    @Test
+    @DisplayName("The computer replies with the move its search found")
+    void testComputerReply() {
+        Game game = computerGame();
+        long millis = timeMove(game, "e2e4");
+        assertTrue(millis < MAX_MOVE_TIME_MS + ABORT_GRACE_MS + 500, "move took " + millis + " ms");
+        assertEquals(2, moves(game).size());
+        assertEquals(engine.started.get(0).join().getBestMove(), lastMove(game));
+        assertEquals("WHITE", service.getBoardForGame(game).getCurrentTurn());
+    }
+
+    @Test
+    @DisplayName("A search still running at the hard limit is aborted and its best move so far played")
+    void testHardLimitAbortsSearch() {
+        // Searches until it is stopped, whatever its limits
+        engine.searches.add(board -> engine.ponder(board.getPosition(), SearchLimits.depth(Search.MAX_PLY),
+                board.getPositionHistory(), 0));
+        Game game = computerGame();
+        long millis = timeMove(game, "e2e4");
+        assertTrue(millis >= MAX_MOVE_TIME_MS, "move took " + millis + " ms");
+        SearchTask task = engine.started.get(0);
+        // The abort completed the search within the grace period
+        assertTrue(task.isDone());
+        assertTrue(millis < MAX_MOVE_TIME_MS + ABORT_GRACE_MS + 500, "move took " + millis + " ms");
+        assertEquals(task.join().getBestMove(), lastMove(game));
+    }
+
+    @Test
+    @DisplayName("A search that does not answer the abort in time gives its last finished iteration's move")
+    void testFallbackToCompletedMove() {
+        engine.searches.add(board -> SearchTasks.stalled(board.getPosition(), 3));
+        Game game = computerGame();
+        long millis = timeMove(game, "e2e4");
+        assertTrue(millis >= MAX_MOVE_TIME_MS + ABORT_GRACE_MS, "move took " + millis + " ms");
+        SearchTask task = engine.started.get(0);
+        assertFalse(task.isDone());
+        assertNotEquals(Moves.NONE, task.getCompletedMove());
+        assertEquals(task.getCompletedMove(), lastMove(game));
+    }
+
+    @Test
+    @DisplayName("A search with no finished iteration gives the first legal move")
+    void testFallbackToFirstLegalMove() {
+        Position[] searched = new Position[1];
+        engine.searches.add(board -> {
+            searched[0] = board.getPosition().copy();
+            return SearchTasks.stalled(board.getPosition(), 0);
+        });
+        Game game = computerGame();
+        timeMove(game, "e2e4");
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        assertTrue(MoveGenerator.generateLegalMoves(searched[0], legal) > 0);
+        assertEquals(legal[0], lastMove(game));
+        assertEquals(2, moves(game).size());
+    }
+
+    @Test
+    @DisplayName("When the expected move is played the ponder answers for black and its permit comes back")
+    void testPonderHit() {
+        usePondering(60_000);
+        engine.searches.add(board -> engine.searchAsync(board.getPosition(), SearchLimits.depth(4),
+                board.getPositionHistory()));
+        Game game = computerGame();
+        timeMove(game, "e2e4");
+        int[] line = engine.started.get(0).join().getPrincipalVariation();
+        assertEquals(1, engine.ponders.size());
+        SearchTask ponder = engine.ponders.get(0);
+        assertFalse(ponder.isDone());
+        assertEquals(0, service.availablePonderPermits());
+
+        assertTrue(play(game, line[1]));
+        // No new search: the ponder became the search for black's reply
+        assertEquals(1, engine.started.size());
+        assertTrue(ponder.isDone() && !ponder.isCancelled());
+        assertEquals(ponder.join().getBestMove(), lastMove(game));
+        assertEquals(4, moves(game).size());
+        // The permit was free again in time to ponder on the new reply
+        assertEquals(ponder.join().getPrincipalVariation().length >= 2 ? 2 : 1, engine.ponders.size());
+        assertPermitsBalanced();
+    }
+
+    @Test
+    @DisplayName("Any other move cancels the ponder, searches afresh and gives the permit back")
+    void testPonderMiss() {
+        usePondering(60_000);
+        engine.searches.add(board -> engine.searchAsync(board.getPosition(), SearchLimits.depth(4),
+                board.getPositionHistory()));
+        Game game = computerGame();
+        timeMove(game, "e2e4");
+        int expected = engine.started.get(0).join().getPrincipalVariation()[1];
+        SearchTask ponder = engine.ponders.get(0);
+
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(service.getBoardForGame(game).getPosition(), legal);
+        int other = legal[0] != expected ? legal[0] : legal[count - 1];
+        assertTrue(play(game, other));
+        assertTrue(ponder.isCancelled());
+        assertEquals(2, engine.started.size());
+        assertEquals(engine.started.get(1).join().getBestMove(), lastMove(game));
+        assertPermitsBalanced();
+    }
+
+    @Test
+    @DisplayName("A ponder that runs out of time gives its permit back and is not used")
+    void testPonderRunsOut() {
+        usePondering(100);
+        engine.searches.add(board -> engine.searchAsync(board.getPosition(), SearchLimits.depth(4),
+                board.getPositionHistory()));
+        Game game = computerGame();
+        timeMove(game, "e2e4");
+        int expected = engine.started.get(0).join().getPrincipalVariation()[1];
+        SearchTask ponder = engine.ponders.get(0);
+        assertNotEquals(Moves.NONE, ponder.join().getBestMove());
+        assertPermitsBalanced();
+        assertEquals(1, service.availablePonderPermits());
+
+        assertTrue(play(game, expected));
+        // Searched afresh
+        assertEquals(2, engine.started.size());
+        assertPermitsBalanced();
+    }
+
+    @Test
+    @DisplayName("A ponder the engine turns away gives its permit back at once")
+    void testPonderRejected() {
+        usePondering(60_000);
+        engine.rejectPonders = true;
+        engine.searches.add(board -> engine.searchAsync(board.getPosition(), SearchLimits.depth(4),
+                board.getPositionHistory()));
+        Game game = computerGame();
+        timeMove(game, "e2e4");
+        assertEquals(1, engine.ponders.size());
+        assertTrue(engine.ponders.get(0).isCompletedExceptionally());
+        assertEquals(1, service.availablePonderPermits());
+
+        // Stopping the service cancels a running ponder and frees its permit too
+        engine.rejectPonders = false;
+        engine.searches.add(board -> engine.searchAsync(board.getPosition(), SearchLimits.depth(4),
+                board.getPositionHistory()));
+        assertTrue(play(game, engine.started.get(0).join().getPrincipalVariation()[1]));
+        SearchTask running = engine.ponders.get(engine.ponders.size() - 1);
+        service.stopEngine();
+        assertTrue(running.isDone());
+        assertEquals(1, service.availablePonderPermits());
+    }
+
+    @Test
+    @DisplayName("Serves a game in progress from the cache, and loads and caches it again after a miss")
+    void testCacheHitAndMiss() {
+        ActiveGameCache cache = service.getActiveGameCache();
+        Game game = computerGame();
+        assertSame(game, service.getGameById(game.getId().intValue()).orElseThrow());
+        assertEquals(1, cache.getHits());
+        timeMove(game, "e2e4");
+        assertEquals(0, cache.getMisses());
+
+        // Dropped from the cache, as an idle game would be
+        cache.remove(game.getId());
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        MoveGenerator.generateLegalMoves(service.getBoardForGame(game).getPosition(), legal);
+        assertTrue(play(game, legal[0]));
+        assertEquals(1, cache.getMisses());
+        Game loaded = service.getGameById(game.getId().intValue()).orElseThrow();
+        assertNotSame(game, loaded);
+        assertEquals(4, loaded.getMoveList().size());
+        assertEquals(legal[0], loaded.getMoveList().get(2));
+        assertEquals("WHITE", loaded.getBoard().getCurrentTurn());
+        assertEquals(1, cache.size());
+
+        // A finished game is read but not cached
+        loaded.setStatus("FINISHED");
+        service.saveGame(loaded);
+        assertEquals("FINISHED", service.getGameById(game.getId().intValue()).orElseThrow().getStatus());
+        assertEquals(0, cache.size());
+        assertFalse(play(game, "d2d4"));
+    }
+
+    @Test
+    @DisplayName("Requests that miss on the same game together load it once and share it")
+    void testConcurrentMiss() throws Exception {
+        Game game = computerGame();
+        // Reads a game slowly enough for the requests to pile up behind it
+        AtomicInteger reads = new AtomicInteger();
+        GameRepository slowGames = (GameRepository) Proxy.newProxyInstance(GameRepository.class.getClassLoader(),
+                new Class<?>[] {GameRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findById")) {
+                        reads.incrementAndGet();
+                        Thread.sleep(100);
+                    }
+                    try {
+                        return method.invoke(gameRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        GameService cold = new GameService(slowGames, moveRepository, boardRepository, writeBehind,
+                new ScriptedEngine(), MOVE_TIME_MS, MAX_MOVE_TIME_MS, 0, 0, new ActiveGameCache(100, 60_000));
+        int requests = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Game>> found = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                found.add(pool.submit(() -> {
+                    start.await();
+                    return cold.getGameById(game.getId().intValue()).orElseThrow();
+                }));
+            }
+            start.countDown();
+            Game shared = found.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Game> request : found) {
+                assertSame(shared, request.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, reads.get());
+            assertEquals(requests, cold.getActiveGameCache().getMisses());
+            assertEquals(1, cold.getActiveGameCache().size());
+            // Later moves go to the shared copy: e2e4 and the computer's reply
+            assertTrue(cold.makeMove(game.getId(), 6, 4, 4, 4));
+            assertEquals(2, shared.getMoveList().size());
+            assertSame(shared, cold.getGameById(game.getId().intValue()).orElseThrow());
+        } finally {
+            pool.shutdownNow();
+            cold.stopEngine();
+        }
+    }
+
+    @Test
+    @DisplayName("A game played before moves were packed keeps its history as play goes on")
+    void testLegacyGameHistory() throws IOException {
+        Game game = service.saveGame(new Game("1", "2"));
+        // As stored before: move rows with no plies, and a board with only the piece placement
+        moveRepository.save(new Move(game, 6, 4, 4, 4));
+        moveRepository.save(new Move(game, 1, 4, 3, 4));
+        Board board = boardRepository.findByGame(game).orElseThrow();
+        board.setBoardState("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR");
+        board.setCurrentTurn("WHITE");
+        boardRepository.save(board);
+        service.getActiveGameCache().remove(game.getId());
+
+        assertTrue(play(game, "g1f3"));
+        Game loaded = service.getGameById(game.getId().intValue()).orElseThrow();
+        assertEquals(List.of("e2e4", "e7e5", "g1f3"),
+                service.getMoves(loaded).stream().map(Move::getMoveNotation).toList());
+
+        writeBehind.flush();
+        MoveList stored = gameRepository.findById(game.getId().intValue()).orElseThrow().getMoveList();
+        assertArrayEquals(loaded.getMoveList().toArray(), stored.toArray());
+        // The new row and the stored board count plies from the start of the game
+        assertEquals(Arrays.asList(3, null, null),
+                moveRepository.findByGameOrderByPlyAscIdAsc(game).stream().map(Move::getPly).toList());
+        assertEquals(3, BoardSnapshot.plyOf(boardRepository.findByGame(game).orElseThrow().getPosition()));
+    }
+
+    @Test
+    @DisplayName("Checkmate finishes the game with the winner, and stores its last moves")
+    void testCheckmate() throws IOException {
+        Game game = service.saveGame(new Game("1", "2"));
+        for (String uci : List.of("f2f3", "e7e5", "g2g4", "d8h4")) {
+            assertTrue(play(game, uci), uci);
+        }
+        assertFinished(game, "black", 4);
+    }
+
+    @Test
+    @DisplayName("A threefold repetition finishes the game as a draw")
+    void testDrawByRepetition() throws IOException {
+        Game game = service.saveGame(new Game("1", "2"));
+        for (int i = 0; i < 2; i++) {
+            for (String uci : List.of("g1f3", "g8f6", "f3g1", "f6g8")) {
+                assertTrue(play(game, uci), uci);
+            }
+        }
+        assertFinished(game, "draw", 8);
+    }
+
+    // Checks a game that just ended is stored as finished with all its moves,
+    // has left the cache, and takes no more moves
+    private void assertFinished(Game game, String winner, int plies) throws IOException {
+        assertEquals(0, service.getActiveGameCache().size());
+        // Read again from the database, and not cached again
+        assertFalse(play(game, "a2a3"));
+        assertEquals(0, service.getActiveGameCache().size());
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getPendingCount());
+        Game stored = gameRepository.findById(game.getId().intValue()).orElseThrow();
+        assertEquals("FINISHED", stored.getStatus());
+        assertEquals(winner, stored.getWinner());
+        assertEquals(plies, stored.getMoveList().size());
+        assertEquals(plies, moveRepository.findByGameOrderByPlyAscIdAsc(game).size());
+        assertEquals(plies, BoardSnapshot.plyOf(boardRepository.findByGame(game).orElseThrow().getPosition()));
+    }
+
+    private Game computerGame() {
+        return service.saveGame(new Game("1", Game.COMPUTER_PLAYER));
+    }
+
+    // Plays a move given in UCI notation and returns how long the call took
+    private long timeMove(Game game, String uci) {
+        long start = System.nanoTime();
+        assertTrue(play(game, uci), uci);
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+
+    private boolean play(Game game, String uci) {
+        int fromCol = uci.charAt(0) - 'a';
+        int fromRow = '8' - uci.charAt(1);
+        int toCol = uci.charAt(2) - 'a';
+        int toRow = '8' - uci.charAt(3);
+        return service.makeMove(game.getId(), fromRow, fromCol, toRow, toCol);
+    }
+
+    private boolean play(Game game, int move) {
+        return service.makeMove(game.getId(), Bitboards.row(Moves.from(move)), Bitboards.col(Moves.from(move)),
+                Bitboards.row(Moves.to(move)), Bitboards.col(Moves.to(move)));
+    }
+
+    // Each ponder still running holds the one permit; a finished ponder gives
+    // it back as it completes, so this waits a little for that
+    private void assertPermitsBalanced() {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (true) {
+            long running = engine.ponders.stream().filter(task -> !task.isDone()).count();
+            if (service.availablePonderPermits() + running == 1 || System.nanoTime() > deadline) {
+                assertEquals(1, service.availablePonderPermits() + running);
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private MoveList moves(Game game) {
+        return service.getGameById(game.getId().intValue()).orElseThrow().getMoveList();
+    }
+
+    private int lastMove(Game game) {
+        MoveList moves = moves(game);
+        return moves.get(moves.size() - 1);
+    }
+
+    /**
+     * An engine whose searches for the computer's reply can be replaced by
+     * tasks a test makes, and which can turn ponders away as a busy engine
+     * would; the tasks it hands out are kept in order
+     */
+    private static final class ScriptedEngine extends Engine {
+        private final Queue<Function<Board, SearchTask>> searches = new ConcurrentLinkedQueue<>();
+        private final List<SearchTask> started = new CopyOnWriteArrayList<>();
+        private final List<SearchTask> ponders = new CopyOnWriteArrayList<>();
+        private volatile boolean rejectPonders;
+
+        ScriptedEngine() {
+            super(1, 1);
+        }
+
+        @Override
+        public SearchTask searchAsync(Board board, SearchLimits limits) {
+            Function<Board, SearchTask> search = searches.poll();
+            SearchTask task = search != null ? search.apply(board) : super.searchAsync(board, limits);
+            started.add(task);
+            return task;
+        }
+
+        @Override
+        public SearchTask ponder(Position position, SearchLimits limits, long[] history, long maxPonderMillis) {
+            SearchTask task;
+            if (rejectPonders) {
+                // A closed engine fails the task at once, as a full one does
+                Engine closed = new Engine(1, 1);
+                closed.close();
+                task = closed.ponder(position, limits, history, maxPonderMillis);
+            } else {
+                task = super.ponder(position, limits, history, maxPonderMillis);
+            }
+            ponders.add(task);
+            return task;
+        }
+    }
+}
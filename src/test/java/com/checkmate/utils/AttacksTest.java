@@ -0,0 +1,53 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.Random;
+
+@DisplayName("Attacks lookup table tests")
+class AttacksTest {
+
+    @Test
+    @DisplayName("Magic slider lookups match ray walking for random occupancies")
+    void testSliderLookupsMatchRayWalking() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int square = random.nextInt(64);
+            long occupied = random.nextLong() & random.nextLong();
+            assertEquals(Bitboards.rookAttacks(square, occupied), Attacks.rook(square, occupied));
+            assertEquals(Bitboards.bishopAttacks(square, occupied), Attacks.bishop(square, occupied));
+        }
+    }
+
+    @Test
+    @DisplayName("Leaper tables match the set-wise shifts")
+    void testLeaperTables() {
+        for (int square = 0; square < 64; square++) {
+            long b = Bitboards.bit(square);
+            assertEquals(Bitboards.knightAttacks(b), Attacks.knight(square));
+            assertEquals(Bitboards.kingAttacks(b), Attacks.king(square));
+            assertEquals(Bitboards.pawnAttacks(b, true), Attacks.pawn(0, square));
+            assertEquals(Bitboards.pawnAttacks(b, false), Attacks.pawn(1, square));
+        }
+    }
+
+    @Test
+    @DisplayName("Between and line masks")
+    void testBetweenAndLine() {
+        int a1 = 0;
+        int h8 = 63;
+        int e1 = 4;
+        int e8 = 60;
+        int b3 = 17;
+        int b2 = 9;
+        int g7 = 54;
+
+        assertEquals(0x0040201008040200L, Attacks.between(a1, h8));
+        assertEquals(0x8040201008040201L, Attacks.line(b2, g7));
+        assertEquals(Bitboards.FILE_A << 4, Attacks.line(e1, e8));
+        assertEquals(0L, Attacks.between(a1, b3));
+        assertEquals(0L, Attacks.line(a1, b3));
+    }
+}
@@ -0,0 +1,144 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+
+@DisplayName("ChessUtils game result tests")
+class ChessUtilsGameResultTest {
+
+    private static Board boardFromFen(String fen) {
+        Board board = new Board();
+        board.setBoardState(fen);
+        board.setCurrentTurn(fen.contains(" b ") ? "BLACK" : "WHITE");
+        return board;
+    }
+
+    @Nested
+    @DisplayName("Checkmate and stalemate tests")
+    class MateTests {
+
+        @Test
+        @DisplayName("Fool's mate ends the game in checkmate")
+        void testFoolsMate() {
+            Board board = new Board();
+            ChessUtils.makeMove(board, 6, 5, 5, 5);   // f2-f3
+            ChessUtils.makeMove(board, 1, 4, 3, 4);   // e7-e5
+            ChessUtils.makeMove(board, 6, 6, 4, 6);   // g2-g4
+            assertEquals(GameResult.IN_PROGRESS, ChessUtils.getGameResult(board));
+
+            ChessUtils.makeMove(board, 0, 3, 4, 7);   // Qd8-h4#
+            assertEquals(GameResult.CHECKMATE, ChessUtils.getGameResult(board));
+            assertTrue(GameResult.CHECKMATE.isDecisive());
+        }
+
+        @Test
+        @DisplayName("A king with no moves that is not in check is stalemated")
+        void testStalemate() {
+            Board board = boardFromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1");
+            assertEquals(GameResult.STALEMATE, ChessUtils.getGameResult(board));
+        }
+
+        @Test
+        @DisplayName("Blocking a check or capturing the checker avoids mate")
+        void testCheckThatCanBeAnswered() {
+            // Back rank check that the bishop can block on f8
+            assertEquals(GameResult.IN_PROGRESS,
+                ChessUtils.getGameResult(boardFromFen("3R2k1/5ppp/3b4/8/8/8/8/6K1 b - - 0 1")));
+            // Same check with nothing to block it
+            assertEquals(GameResult.CHECKMATE,
+                ChessUtils.getGameResult(boardFromFen("3R2k1/5ppp/8/8/8/8/8/6K1 b - - 0 1")));
+            // Only en passant answers the check from the pawn on c4
+            assertEquals(GameResult.IN_PROGRESS,
+                ChessUtils.getGameResult(boardFromFen("8/8/4Q3/1k6/1pP1N3/3P4/8/R6K b - c3 0 1")));
+            assertEquals(GameResult.CHECKMATE,
+                ChessUtils.getGameResult(boardFromFen("8/8/4Q3/1k6/1pP1N3/3P4/8/R6K b - - 0 1")));
+        }
+
+        @Test
+        @DisplayName("hasLegalMove agrees with the full move generator")
+        void testHasLegalMoveMatchesGenerator() {
+            String[] fens = {
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            };
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int[] replies = new int[MoveGenerator.MAX_MOVES];
+            for (String fen : fens) {
+                Position position = Position.fromFen(fen);
+                int count = MoveGenerator.generateLegalMoves(position, moves);
+                for (int i = 0; i < count; i++) {
+                    position.makeMove(moves[i]);
+                    assertEquals(MoveGenerator.generateLegalMoves(position, replies) > 0,
+                        MoveGenerator.hasLegalMove(position), Moves.toUci(moves[i]));
+                    position.unmakeMove(moves[i]);
+                }
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Draw tests")
+    class DrawTests {
+
+        @Test
+        @DisplayName("Bare kings and a single minor piece cannot mate")
+        void testInsufficientMaterial() {
+            assertTrue(ChessUtils.isInsufficientMaterial(Position.fromFen("8/8/4k3/8/8/3K4/8/8 w - - 0 1")));
+            assertTrue(ChessUtils.isInsufficientMaterial(Position.fromFen("8/8/4k3/8/8/3KN3/8/8 w - - 0 1")));
+            assertTrue(ChessUtils.isInsufficientMaterial(Position.fromFen("8/8/4k3/8/8/3KB3/8/8 w - - 0 1")));
+            // Bishops on c1 and f8 both stand on dark squares
+            assertTrue(ChessUtils.isInsufficientMaterial(Position.fromFen("5b2/8/4k3/8/8/3K4/8/2B5 w - - 0 1")));
+
+            assertFalse(ChessUtils.isInsufficientMaterial(Position.fromFen("5b2/8/4k3/8/8/3K4/8/1B6 w - - 0 1")));
+            assertFalse(ChessUtils.isInsufficientMaterial(Position.fromFen("8/8/4k3/8/8/3KNN2/8/8 w - - 0 1")));
+            assertFalse(ChessUtils.isInsufficientMaterial(Position.fromFen("8/8/4k3/8/8/3K4/4P3/8 w - - 0 1")));
+
+            assertEquals(GameResult.INSUFFICIENT_MATERIAL,
+                ChessUtils.getGameResult(boardFromFen("8/8/4k3/8/8/3KB3/8/8 b - - 0 1")));
+        }
+
+        @Test
+        @DisplayName("Fifty moves without a capture or pawn move is a draw")
+        void testFiftyMoveRule() {
+            assertEquals(GameResult.IN_PROGRESS,
+                ChessUtils.getGameResult(boardFromFen("4k3/8/8/8/8/8/8/R3K3 w - - 99 80")));
+            assertEquals(GameResult.FIFTY_MOVE_RULE,
+                ChessUtils.getGameResult(boardFromFen("4k3/8/8/8/8/8/8/R3K3 b - - 100 80")));
+        }
+
+        @Test
+        @DisplayName("The same position occurring three times is a draw")
+        void testThreefoldRepetition() {
+            Board board = new Board();
+            for (int cycle = 0; cycle < 2; cycle++) {
+                assertEquals(GameResult.IN_PROGRESS, ChessUtils.getGameResult(board));
+                ChessUtils.makeMove(board, 7, 6, 5, 5);   // Ng1-f3
+                ChessUtils.makeMove(board, 0, 6, 2, 5);   // Ng8-f6
+                ChessUtils.makeMove(board, 5, 5, 7, 6);   // Nf3-g1
+                ChessUtils.makeMove(board, 2, 5, 0, 6);   // Nf6-g8
+            }
+            assertEquals(3, board.countRepetitions());
+            assertEquals(GameResult.THREEFOLD_REPETITION, ChessUtils.getGameResult(board));
+        }
+
+        @Test
+        @DisplayName("A pawn move wipes out earlier positions")
+        void testPawnMoveResetsRepetitions() {
+            Board board = new Board();
+            ChessUtils.makeMove(board, 7, 6, 5, 5);   // Ng1-f3
+            ChessUtils.makeMove(board, 0, 6, 2, 5);   // Ng8-f6
+            ChessUtils.makeMove(board, 5, 5, 7, 6);   // Nf3-g1
+            ChessUtils.makeMove(board, 2, 5, 0, 6);   // Nf6-g8
+            assertEquals(2, board.countRepetitions());
+
+            ChessUtils.makeMove(board, 6, 4, 4, 4);   // e2-e4
+            assertEquals(1, board.countRepetitions());
+        }
+    }
+}
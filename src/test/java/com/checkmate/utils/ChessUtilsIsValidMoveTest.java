@@ -1323,7 +1323,30 @@ class ChessUtilsIsValidMoveTest {
         @Test
         @DisplayName("En passant capture cannot expose king to check")
         void testEnPassantCannotExposeKingToCheck() {
-            // TODO: Implement this test when en passant is implemented
+            board.getSquares()[3][0] = new Piece("king", "white", "♔");  // White king at a5
+            board.getSquares()[3][1] = new Piece("pawn", "white", "♙");  // White pawn at b5
+            board.getSquares()[1][2] = new Piece("pawn", "black", "♟");  // Black pawn at c7
+            board.getSquares()[3][7] = new Piece("rook", "black", "♜");  // Black rook at h5
+            board.setCurrentTurn("BLACK");
+            ChessUtils.makeMove(board, 1, 2, 3, 2);                      // c7-c5
+            
+            // bxc6 e.p. would take both pawns off the fifth rank and expose the king
+            assertFalse(ChessUtils.isValidMove(board, 3, 1, 2, 2, "white"));
+        }
+        
+        @Test
+        @DisplayName("En passant capture is valid right after a double step")
+        void testEnPassantCapture() {
+            board.getSquares()[7][4] = new Piece("king", "white", "♔");  // White king at e1
+            board.getSquares()[3][1] = new Piece("pawn", "white", "♙");  // White pawn at b5
+            board.getSquares()[1][2] = new Piece("pawn", "black", "♟");  // Black pawn at c7
+            board.setCurrentTurn("BLACK");
+            ChessUtils.makeMove(board, 1, 2, 3, 2);                      // c7-c5
+            
+            assertTrue(ChessUtils.isValidMove(board, 3, 1, 2, 2, "white"));
+            ChessUtils.makeMove(board, 3, 1, 2, 2);
+            assertNull(board.getSquares()[3][2]);
+            assertEquals("pawn", board.getSquares()[2][2].getType());
         }
     }
 }
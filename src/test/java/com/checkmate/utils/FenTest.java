@@ -0,0 +1,96 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Position;
+
+@DisplayName("FEN codec tests")
+class FenTest {
+
+    private static final String[] POSITIONS = {
+        Fen.STARTING_POSITION,
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "4k3/8/8/8/8/8/8/4K2R b K - 49 117",
+        "8/8/8/8/8/8/8/8 w - - 65535 999999999",
+    };
+
+    @Test
+    @DisplayName("Every field round-trips through parse and write")
+    void testRoundTrip() {
+        char[] buffer = new char[Fen.MAX_LENGTH];
+        Position position = new Position();
+        for (String fen : POSITIONS) {
+            assertEquals(6, Fen.parse(fen, position));
+            assertEquals(fen, new String(buffer, 0, Fen.write(position, buffer)));
+            assertEquals(Zobrist.compute(position), position.getHash(), fen);
+        }
+    }
+
+    @Test
+    @DisplayName("Parsing reads each field into the position")
+    void testParseFields() {
+        Position position = new Position();
+        Fen.parse("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w Kq f6 0 3", position);
+
+        assertEquals(Position.WHITE, position.getSideToMove());
+        assertEquals(Position.WHITE_KINGSIDE | Position.BLACK_QUEENSIDE, position.getCastlingRights());
+        assertEquals(45, position.getEnPassantSquare());
+        assertEquals(0, position.getHalfmoveClock());
+        assertEquals(3, position.getFullmoveNumber());
+        assertEquals(Position.pieceCode(Position.WHITE, Position.PAWN), position.pieceAt(36));
+    }
+
+    @Test
+    @DisplayName("Missing trailing fields take their defaults")
+    void testMissingFields() {
+        Position position = new Position();
+        assertEquals(1, Fen.parse("r3k3/8/8/8/8/8/8/4K2R", position));
+        assertEquals(Position.WHITE, position.getSideToMove());
+        assertEquals(Position.WHITE_KINGSIDE | Position.BLACK_QUEENSIDE, position.getCastlingRights());
+        assertEquals(-1, position.getEnPassantSquare());
+        assertEquals(0, position.getHalfmoveClock());
+        assertEquals(1, position.getFullmoveNumber());
+
+        assertEquals(4, Fen.parse("r3k3/8/8/8/8/8/8/4K2R b - -", position));
+        assertEquals(Position.BLACK, position.getSideToMove());
+        assertEquals(0, position.getCastlingRights());
+    }
+
+    @Test
+    @DisplayName("Parsing replaces everything the position held before")
+    void testParseResetsPosition() {
+        Position position = Position.fromFen(POSITIONS[2]);
+        position.makeMove(Moves.encode(12, 28, Moves.DOUBLE_PUSH));
+        Fen.parse(POSITIONS[3], position);
+
+        assertEquals(POSITIONS[3], position.toFen());
+        assertEquals(Position.fromFen(POSITIONS[3]).getHash(), position.getHash());
+    }
+
+    @Test
+    @DisplayName("Malformed strings are rejected")
+    void testRejectsMalformed() {
+        Position position = new Position();
+        String[] bad = {
+            "",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP",
+            "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/ppppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQxq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e4 0 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 extra",
+        };
+        for (String fen : bad) {
+            assertThrows(IllegalArgumentException.class, () -> Fen.parse(fen, position), fen);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Position;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Perft counts for the standard reference positions
+ * (https://www.chessprogramming.org/Perft_Results). Each test also prints the
+ * generator throughput so it can be compared release over release.
+ */
+@DisplayName("MoveGenerator perft tests")
+class MoveGeneratorPerftTest {
+
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String POSITION_3 = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    private static final String POSITION_4 = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    private static final String POSITION_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+    private static final String POSITION_6 = "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+
+    @Test
+    @DisplayName("Starting position")
+    void testStartingPosition() {
+        assertPerft(START, 1, 20);
+        assertPerft(START, 2, 400);
+        assertPerft(START, 3, 8902);
+        assertPerft(START, 4, 197281);
+    }
+
+    @Test
+    @DisplayName("Kiwipete (castling, en passant, promotions, pins)")
+    void testKiwipete() {
+        assertPerft(KIWIPETE, 1, 48);
+        assertPerft(KIWIPETE, 2, 2039);
+        assertPerft(KIWIPETE, 3, 97862);
+    }
+
+    @Test
+    @DisplayName("Rook and pawn endgame (en passant discovered checks)")
+    void testPosition3() {
+        assertPerft(POSITION_3, 1, 14);
+        assertPerft(POSITION_3, 2, 191);
+        assertPerft(POSITION_3, 3, 2812);
+        assertPerft(POSITION_3, 4, 43238);
+    }
+
+    @Test
+    @DisplayName("Promotions and castling with black to defend")
+    void testPosition4() {
+        assertPerft(POSITION_4, 1, 6);
+        assertPerft(POSITION_4, 2, 264);
+        assertPerft(POSITION_4, 3, 9467);
+    }
+
+    @Test
+    @DisplayName("Promotion with capture on the back rank")
+    void testPosition5() {
+        assertPerft(POSITION_5, 1, 44);
+        assertPerft(POSITION_5, 2, 1486);
+        assertPerft(POSITION_5, 3, 62379);
+    }
+
+    @Test
+    @DisplayName("Symmetrical middlegame")
+    void testPosition6() {
+        assertPerft(POSITION_6, 1, 46);
+        assertPerft(POSITION_6, 2, 2079);
+        assertPerft(POSITION_6, 3, 89890);
+    }
+
+    @Test
+    @DisplayName("FEN round-trips through the position")
+    void testFenRoundTrip() {
+        for (String fen : new String[] {START, KIWIPETE, POSITION_3, POSITION_4, POSITION_5, POSITION_6}) {
+            assertEquals(fen, Position.fromFen(fen).toFen());
+        }
+    }
+
+    @Test
+    @DisplayName("Noisy and quiet moves split the legal moves, and isLegalMove agrees with them")
+    void testStagedGenerationAndLegality() {
+        int[] all = new int[MoveGenerator.MAX_MOVES];
+        int[] replies = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : new String[] {START, KIWIPETE, POSITION_3, POSITION_4, POSITION_5, POSITION_6}) {
+            Position position = Position.fromFen(fen);
+            int count = MoveGenerator.generateLegalMoves(position, all);
+            assertStagedSplit(position);
+            for (int i = 0; i < count; i++) {
+                position.makeMove(all[i]);
+                assertStagedSplit(position);
+                int replyCount = MoveGenerator.generateLegalMoves(position, replies);
+                Set<Integer> legal = new HashSet<>();
+                for (int j = 0; j < replyCount; j++) {
+                    legal.add(replies[j]);
+                    assertTrue(ChessUtils.isLegalMove(position, replies[j]), Moves.toUci(replies[j]));
+                }
+                for (int from = 0; from < 64; from++) {
+                    for (int to = 0; to < 64; to++) {
+                        int move = Moves.infer(position, from, to, Position.QUEEN);
+                        if (move != Moves.NONE) {
+                            assertEquals(legal.contains(move), ChessUtils.isLegalMove(position, move),
+                                Moves.toUci(move) + " in " + position.toFen());
+                        }
+                    }
+                }
+                position.unmakeMove(all[i]);
+            }
+        }
+    }
+
+    private static void assertStagedSplit(Position position) {
+        int[] all = new int[MoveGenerator.MAX_MOVES];
+        int[] noisy = new int[MoveGenerator.MAX_MOVES];
+        int[] quiet = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(position, all);
+        int noisyCount = MoveGenerator.generateNoisyMoves(position, noisy);
+        int quietCount = MoveGenerator.generateQuietMoves(position, quiet);
+
+        int[] combined = new int[noisyCount + quietCount];
+        System.arraycopy(noisy, 0, combined, 0, noisyCount);
+        System.arraycopy(quiet, 0, combined, noisyCount, quietCount);
+        Arrays.sort(combined);
+        int[] expected = Arrays.copyOf(all, count);
+        Arrays.sort(expected);
+        assertArrayEquals(expected, combined, position.toFen());
+
+        for (int i = 0; i < noisyCount; i++) {
+            assertTrue(Moves.isCapture(noisy[i]) || Moves.isPromotion(noisy[i]), Moves.toUci(noisy[i]));
+        }
+    }
+
+    private void assertPerft(String fen, int depth, long expected) {
+        Position position = Position.fromFen(fen);
+        long start = System.nanoTime();
+        long nodes = MoveGenerator.perft(position, depth);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+
+        System.out.printf("perft(%d) %s: %d nodes, %.0f nodes/s%n", depth, fen, nodes, nodes * 1e9 / elapsed);
+        assertEquals(expected, nodes, "perft(" + depth + ") of " + fen);
+    }
+}
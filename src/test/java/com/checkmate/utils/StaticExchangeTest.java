@@ -0,0 +1,94 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Position;
+
+@DisplayName("Static exchange evaluation tests")
+class StaticExchangeTest {
+
+    @Test
+    @DisplayName("Taking an undefended pawn wins it")
+    void testUndefendedPawn() {
+        Position position = Position.fromFen("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+        int move = Moves.encode(4, 36, Moves.CAPTURE);   // Re1xe5
+        assertEquals(100, StaticExchange.evaluate(position, move));
+        assertTrue(StaticExchange.isAtLeast(position, move, 100));
+        assertFalse(StaticExchange.isAtLeast(position, move, 101));
+    }
+
+    @Test
+    @DisplayName("X-ray attackers join the exchange")
+    void testExchangeWithXrays() {
+        // Nxe5 Nxe5 Rxe5 Bxe5 Qxe5 Qxe5: the queens behind the rook and bishop decide it
+        Position position = Position.fromFen("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+        int move = Moves.encode(19, 36, Moves.CAPTURE);  // Nd3xe5
+        assertEquals(-220, StaticExchange.evaluate(position, move));
+        assertFalse(StaticExchange.isAtLeast(position, move, 0));
+    }
+
+    @Test
+    @DisplayName("A defended queen is not worth a rook, and a king cannot recapture into a guarded square")
+    void testDefendersAndKing() {
+        // Rxd5 cxd5 wins the queen for the rook
+        Position queenTrade = Position.fromFen("4k3/8/2p5/3q4/8/8/8/3RK3 w - - 0 1");
+        int rookTakesQueen = Moves.encode(3, 35, Moves.CAPTURE);
+        assertEquals(400, StaticExchange.evaluate(queenTrade, rookTakesQueen));
+
+        // The black king on e6 may not take back on d5 while the bishop on b3 guards it
+        Position guarded = Position.fromFen("8/8/4k3/3p4/8/1B6/8/3RK3 w - - 0 1");
+        int rookTakesPawn = Moves.encode(3, 35, Moves.CAPTURE);
+        assertEquals(100, StaticExchange.evaluate(guarded, rookTakesPawn));
+        assertTrue(StaticExchange.isAtLeast(guarded, rookTakesPawn, 100));
+
+        // Without the bishop the king takes the rook
+        Position unguarded = Position.fromFen("8/8/4k3/3p4/8/8/8/3RK3 w - - 0 1");
+        assertEquals(-400, StaticExchange.evaluate(unguarded, rookTakesPawn));
+    }
+
+    @Test
+    @DisplayName("En passant and quiet moves onto attacked squares")
+    void testEnPassantAndQuietMoves() {
+        // exf6 wins a pawn, but either black pawn takes back
+        Position position = Position.fromFen("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+        assertEquals(0, StaticExchange.evaluate(position, Moves.encode(36, 45, Moves.EN_PASSANT)));
+        Position undefended = Position.fromFen("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+        assertEquals(100, StaticExchange.evaluate(undefended, Moves.encode(36, 43, Moves.EN_PASSANT)));
+
+        // Qc4 puts the queen en prise to the pawn, Qd4 does not
+        Position hanging = Position.fromFen("4k3/8/8/3p4/8/8/8/3QK3 w - - 0 1");
+        assertEquals(-900, StaticExchange.evaluate(hanging, Moves.encode(3, 26, Moves.QUIET)));
+        assertEquals(0, StaticExchange.evaluate(hanging, Moves.encode(3, 27, Moves.QUIET)));
+    }
+
+    @Test
+    @DisplayName("isAtLeast agrees with evaluate for every capture")
+    void testThresholdMatchesEvaluate() {
+        String[] fens = {
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        };
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] replies = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : fens) {
+            Position position = Position.fromFen(fen);
+            int count = MoveGenerator.generateLegalMoves(position, moves);
+            for (int i = 0; i < count; i++) {
+                position.makeMove(moves[i]);
+                int replyCount = MoveGenerator.generateNoisyMoves(position, replies);
+                for (int j = 0; j < replyCount; j++) {
+                    int value = StaticExchange.evaluate(position, replies[j]);
+                    for (int threshold = -1000; threshold <= 1000; threshold += 10) {
+                        assertEquals(value >= threshold, StaticExchange.isAtLeast(position, replies[j], threshold),
+                            Moves.toUci(replies[j]) + " >= " + threshold + " in " + position.toFen());
+                    }
+                }
+                position.unmakeMove(moves[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.checkmate.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.checkmate.model.Board;
+import com.checkmate.model.Position;
+
+@DisplayName("Zobrist hashing tests")
+class ZobristTest {
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+    };
+
+    @Test
+    @DisplayName("Incremental hash matches a full recompute through make and unmake")
+    void testIncrementalMatchesRecompute() {
+        for (String fen : POSITIONS) {
+            Position position = Position.fromFen(fen);
+            assertEquals(Zobrist.compute(position), position.getHash(), fen);
+            walk(position, 3, new int[3][MoveGenerator.MAX_MOVES]);
+            assertEquals(Position.fromFen(fen).getHash(), position.getHash(), fen);
+        }
+    }
+
+    @Test
+    @DisplayName("Transposed move orders reach the same hash")
+    void testTranspositionsShareHash() {
+        Position first = Position.fromFen(POSITIONS[0]);
+        first.makeMove(Moves.encode(6, 21, Moves.QUIET));    // Ng1-f3
+        first.makeMove(Moves.encode(62, 45, Moves.QUIET));   // Ng8-f6
+        first.makeMove(Moves.encode(1, 18, Moves.QUIET));    // Nb1-c3
+
+        Position second = Position.fromFen(POSITIONS[0]);
+        second.makeMove(Moves.encode(1, 18, Moves.QUIET));   // Nb1-c3
+        second.makeMove(Moves.encode(62, 45, Moves.QUIET));  // Ng8-f6
+        second.makeMove(Moves.encode(6, 21, Moves.QUIET));   // Ng1-f3
+
+        assertEquals(first.getHash(), second.getHash());
+
+        // Knights out and back gives the starting position with the same side to move
+        Position shuffled = Position.fromFen(POSITIONS[0]);
+        shuffled.makeMove(Moves.encode(6, 21, Moves.QUIET));
+        shuffled.makeMove(Moves.encode(62, 45, Moves.QUIET));
+        shuffled.makeMove(Moves.encode(21, 6, Moves.QUIET));
+        shuffled.makeMove(Moves.encode(45, 62, Moves.QUIET));
+        assertEquals(Position.fromFen(POSITIONS[0]).getHash(), shuffled.getHash());
+    }
+
+    @Test
+    @DisplayName("Side to move, castling rights and en passant change the hash")
+    void testStateOutsidePiecesIsHashed() {
+        long start = Position.fromFen(POSITIONS[0]).getHash();
+        assertNotEquals(start, Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR b KQkq - 0 1").getHash());
+        assertNotEquals(start, Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w Kkq - 0 1").getHash());
+
+        // The en passant file only counts when a capture is actually possible
+        Position capturable = Position.fromFen(POSITIONS[4]);
+        Position noSquare = Position.fromFen("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 3");
+        assertNotEquals(noSquare.getHash(), capturable.getHash());
+
+        Position uncapturable = Position.fromFen("rnbqkbnr/ppp1pppp/8/3p4/8/8/PPPPPPPP/RNBQKBNR w KQkq d6 0 2");
+        Position plain = Position.fromFen("rnbqkbnr/ppp1pppp/8/3p4/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 2");
+        assertEquals(plain.getHash(), uncapturable.getHash());
+    }
+
+    @Test
+    @DisplayName("ChessUtils.makeMove keeps the board's hash in step")
+    void testChessUtilsMakeMoveUpdatesHash() {
+        Board board = new Board();
+        board.setCurrentTurn("WHITE");
+        ChessUtils.makeMove(board, 6, 4, 4, 4);   // e2-e4
+        ChessUtils.makeMove(board, 1, 2, 3, 2);   // c7-c5
+
+        Position position = board.getPosition();
+        assertEquals(Zobrist.compute(position), position.getHash());
+        assertEquals(
+            Position.fromFen("rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2").getHash(),
+            position.getHash());
+    }
+
+    private static void walk(Position position, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = MoveGenerator.generateLegalMoves(position, moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            long before = position.getHash();
+            position.makeMove(move);
+            assertEquals(Zobrist.compute(position), position.getHash(), "after " + Moves.toUci(move));
+            walk(position, depth - 1, buffers);
+            position.unmakeMove(move);
+            assertEquals(before, position.getHash(), "undo " + Moves.toUci(move));
+        }
+    }
+}